@@ -0,0 +1,83 @@
+package se233.audioconverter.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import se233.audioconverter.Converter.AudioConverter;
+import se233.audioconverter.Converter.FormatProfile;
+import se233.audioconverter.Converter.TargetProfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * End-to-end {@link AudioConverter#convert} cost for every target format
+ * over generated mono 44.1 kHz inputs of several lengths, encoded to stereo.
+ * No target matches the input, so the passthrough never replaces the
+ * encode, the wav case included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ConvertBenchmark {
+
+    @Param({"mp3", "wav", "m4a", "flac", "opus", "ogg", "alac"})
+    public String format;
+
+    @Param({"1", "10", "60"})
+    public int seconds;
+
+    private Path workDirectory;
+    private File source;
+    private TargetProfile target;
+    private AudioConverter converter;
+
+    @Setup(Level.Trial)
+    public void createFixture() throws IOException {
+        converter = new AudioConverter();
+        int formatIndex = converter.getFormats().indexOf(format);
+        if (formatIndex < 0) {
+            throw new IllegalStateException("Unknown format " + format);
+        }
+        FormatProfile profile = converter.getFormats().get(formatIndex);
+        // opus has no 44.1 kHz mode, so it is measured with the resample it always needs
+        int sampleRate = profile.supportsSampleRate(44100) ? 44100 : profile.sampleRates().get(0).hertz();
+        target = new TargetProfile(formatIndex, profile.defaultBitrate(), sampleRate, 1);
+
+        workDirectory = Files.createTempDirectory("convert-bench");
+        // ffmpeg detects WAV from the header; a non-.wav extension keeps the wav target from overwriting its input
+        source = PcmFixtures.writeWav(workDirectory.resolve("fixture-" + seconds + "s.riff"), seconds, 44100, 1).toFile();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFixture() throws IOException {
+        try (Stream<Path> files = Files.walk(workDirectory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public void convert() {
+        converter.convert(source, target);
+    }
+}
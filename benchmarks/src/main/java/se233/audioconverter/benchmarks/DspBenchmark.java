@@ -0,0 +1,133 @@
+package se233.audioconverter.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import se233.audioconverter.Converter.Dsp.BitDepthConverter;
+import se233.audioconverter.Converter.Dsp.ChannelMixer;
+import se233.audioconverter.Converter.Dsp.PolyphaseResampler;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The DSP kernels over one second of 44.1 kHz stereo, in the blocks the WAV
+ * fast path uses. Every kernel runs once in a plain fork, which gets the
+ * scalar loops, and once in a fork with the Vector API module added.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DspBenchmark {
+    private static final String VECTOR = "--add-modules=jdk.incubator.vector";
+    private static final int SOURCE_RATE = 44100;
+    private static final int BLOCK_FRAMES = 4096;
+
+    @Param({"48000", "22050"})
+    public int targetRate;
+
+    private float[] stereo;
+    private float[] left;
+    private float[] right;
+    private float[] mono;
+    private float[] resampled;
+    private short[] pcm;
+    private int[] widePcm;
+    private PolyphaseResampler leftResampler;
+    private PolyphaseResampler rightResampler;
+    private BitDepthConverter quantizer;
+    private BitDepthConverter wideQuantizer;
+
+    @Setup(Level.Trial)
+    public void createBuffers() {
+        stereo = new float[SOURCE_RATE * 2];
+        double phase = 0;
+        for (int i = 0; i < SOURCE_RATE; i++) {
+            phase += 2 * Math.PI * (220 + 660.0 * i / SOURCE_RATE) / SOURCE_RATE;
+            stereo[2 * i] = (float) (Math.sin(phase) * 0.4);
+            stereo[2 * i + 1] = (float) (Math.cos(phase) * 0.4);
+        }
+        left = new float[SOURCE_RATE];
+        right = new float[SOURCE_RATE];
+        mono = new float[SOURCE_RATE];
+        ChannelMixer.split(stereo, 0, left, right, 0, SOURCE_RATE);
+        leftResampler = new PolyphaseResampler(SOURCE_RATE, targetRate, BLOCK_FRAMES);
+        rightResampler = new PolyphaseResampler(SOURCE_RATE, targetRate, BLOCK_FRAMES);
+        resampled = new float[leftResampler.maxOutput(BLOCK_FRAMES)];
+        pcm = new short[stereo.length];
+        widePcm = new int[stereo.length];
+        quantizer = new BitDepthConverter(16, true);
+        wideQuantizer = new BitDepthConverter(24, true);
+    }
+
+    @Benchmark
+    public void resample(Blackhole blackhole) {
+        resampleBoth(blackhole);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = VECTOR)
+    public void resampleVector(Blackhole blackhole) {
+        resampleBoth(blackhole);
+    }
+
+    @Benchmark
+    public float[] downmix() {
+        ChannelMixer.toMono(stereo, 0, 2, mono, 0, SOURCE_RATE);
+        return mono;
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = VECTOR)
+    public float[] downmixVector() {
+        return downmix();
+    }
+
+    @Benchmark
+    public short[] ditherTo16Bit() {
+        quantizer.quantize(stereo, 0, pcm, 0, stereo.length);
+        return pcm;
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = VECTOR)
+    public short[] ditherTo16BitVector() {
+        return ditherTo16Bit();
+    }
+
+    @Benchmark
+    public int[] ditherTo24Bit() {
+        wideQuantizer.quantize(stereo, 0, widePcm, 0, stereo.length);
+        return widePcm;
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = VECTOR)
+    public int[] ditherTo24BitVector() {
+        return ditherTo24Bit();
+    }
+
+    private void resampleBoth(Blackhole blackhole) {
+        resampleChannel(leftResampler, left, blackhole);
+        resampleChannel(rightResampler, right, blackhole);
+    }
+
+    private void resampleChannel(PolyphaseResampler resampler, float[] channel, Blackhole blackhole) {
+        for (int offset = 0; offset < SOURCE_RATE; offset += BLOCK_FRAMES) {
+            int count = Math.min(BLOCK_FRAMES, SOURCE_RATE - offset);
+            blackhole.consume(resampler.process(channel, offset, count, resampled, 0));
+        }
+    }
+}
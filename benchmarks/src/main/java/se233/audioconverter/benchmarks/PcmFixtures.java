@@ -0,0 +1,51 @@
+package se233.audioconverter.benchmarks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes 16-bit PCM WAV files filled with a sine sweep, used as benchmark
+ * inputs so no audio has to be checked into the repository.
+ */
+final class PcmFixtures {
+
+    private PcmFixtures() {
+    }
+
+    static Path writeWav(Path file, int seconds, int sampleRate, int channels) throws IOException {
+        int frames = seconds * sampleRate;
+        int dataBytes = frames * channels * 2;
+        ByteBuffer buffer = ByteBuffer.allocate(44 + dataBytes).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put("RIFF".getBytes()).putInt(36 + dataBytes).put("WAVE".getBytes());
+        buffer.put("fmt ".getBytes()).putInt(16)
+                .putShort((short) 1)
+                .putShort((short) channels)
+                .putInt(sampleRate)
+                .putInt(sampleRate * channels * 2)
+                .putShort((short) (channels * 2))
+                .putShort((short) 16);
+        buffer.put("data".getBytes()).putInt(dataBytes);
+
+        double phase = 0;
+        for (int i = 0; i < frames; i++) {
+            double frequency = 220 + 660.0 * i / frames;
+            phase += 2 * Math.PI * frequency / sampleRate;
+            short sample = (short) (Math.sin(phase) * 12000);
+            for (int c = 0; c < channels; c++) {
+                buffer.putShort(sample);
+            }
+        }
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        return file;
+    }
+}
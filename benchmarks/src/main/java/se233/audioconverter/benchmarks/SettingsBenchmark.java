@@ -0,0 +1,47 @@
+package se233.audioconverter.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import se233.audioconverter.Converter.FileNameManager;
+import se233.audioconverter.Converter.FormatRegistry;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The small per-file helpers that run once for every entry in a batch.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SettingsBenchmark {
+
+    private final FormatRegistry formats = FormatRegistry.defaults();
+    private final FileNameManager fileNameManager = new FileNameManager(formats);
+    private final String sourcePath = "/music/albums/Some Artist/01 - A Rather Long Track Name.flac";
+
+    @Benchmark
+    public File chname() {
+        return fileNameManager.chname(sourcePath, 0);
+    }
+
+    @Benchmark
+    public int lookupFormat() {
+        return formats.indexOf("flac");
+    }
+
+    @Benchmark
+    public boolean validateSettings() {
+        return formats.get(0).isValid(192000, 44100);
+    }
+}
@@ -0,0 +1,123 @@
+package se233.audioconverter.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import se233.audioconverter.Converter.AudioConverter;
+import se233.audioconverter.Converter.FormatProfile;
+import se233.audioconverter.Converter.TargetProfile;
+import ws.schild.jave.Encoder;
+import ws.schild.jave.EncoderException;
+import ws.schild.jave.MultimediaObject;
+import ws.schild.jave.encode.AudioAttributes;
+import ws.schild.jave.encode.EncodingAttributes;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 44.1 kHz 16-bit stereo WAV through the in-process fast path, with and
+ * without the Vector API, against the same job handed to ffmpeg. The jobs
+ * are a mixdown to mono, resampling to 48 kHz and widening to 24 bits.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WavFastPathBenchmark {
+    private static final int SOURCE_RATE = 44100;
+    private static final int[] CHANNEL_COUNTS = {1, 2};
+
+    @Param({"10", "60"})
+    public int seconds;
+
+    @Param({"mono", "48k", "24-bit"})
+    public String job;
+
+    private Path workDirectory;
+    private File source;
+    private File ffmpegTarget;
+    private TargetProfile target;
+    private String codec;
+    private AudioConverter converter;
+
+    @Setup(Level.Trial)
+    public void createFixture() throws IOException {
+        converter = new AudioConverter();
+        int formatIndex = converter.getFormats().indexOf("wav");
+        if (formatIndex < 0) {
+            throw new IllegalStateException("Unknown format wav");
+        }
+        FormatProfile wav = converter.getFormats().get(formatIndex);
+        target = switch (job) {
+            case "mono" -> new TargetProfile(formatIndex, 0, SOURCE_RATE, 0);
+            case "48k" -> new TargetProfile(formatIndex, 0, 48000, 1);
+            case "24-bit" -> new TargetProfile(formatIndex, bitDepthChoice(wav, "24-bit"), SOURCE_RATE, 1);
+            default -> throw new IllegalArgumentException("Unknown job " + job);
+        };
+        codec = wav.codecFor(target.bitrate());
+
+        workDirectory = Files.createTempDirectory("wav-fast-path-bench");
+        source = PcmFixtures.writeWav(workDirectory.resolve("fixture-" + seconds + "s.riff"), seconds, SOURCE_RATE, 2)
+                .toFile();
+        ffmpegTarget = workDirectory.resolve("ffmpeg.wav").toFile();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFixture() throws IOException {
+        try (Stream<Path> files = Files.walk(workDirectory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public void fastPath() {
+        converter.convert(source, target);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+    public void fastPathVector() {
+        converter.convert(source, target);
+    }
+
+    @Benchmark
+    public void ffmpeg() throws EncoderException {
+        AudioAttributes audio = new AudioAttributes();
+        audio.setCodec(codec);
+        audio.setSamplingRate(target.sampleRate());
+        audio.setChannels(CHANNEL_COUNTS[target.channelIndex()]);
+        EncodingAttributes attributes = new EncodingAttributes();
+        attributes.setOutputFormat("wav");
+        attributes.setAudioAttributes(audio);
+        new Encoder().encode(new MultimediaObject(source), ffmpegTarget, attributes);
+    }
+
+    private static int bitDepthChoice(FormatProfile format, String label) {
+        for (FormatProfile.Bitrate choice : format.bitrates()) {
+            if (choice.label().equals(label)) {
+                return choice.value();
+            }
+        }
+        throw new IllegalStateException(format + " offers no " + label + " choice");
+    }
+}
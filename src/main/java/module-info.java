@@ -3,8 +3,12 @@ module se233.audioconverter {
     requires javafx.fxml;
     requires jave.core;
     requires java.desktop;
+    requires java.net.http;
+    requires java.management;
 
 
     opens se233.audioconverter to javafx.fxml;
     exports se233.audioconverter;
+    // the metrics MXBean interface has to be visible to the MBean server
+    exports se233.audioconverter.Converter to java.management;
 }
\ No newline at end of file
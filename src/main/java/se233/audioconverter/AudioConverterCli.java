@@ -0,0 +1,592 @@
+package se233.audioconverter;
+
+import se233.audioconverter.Converter.AudioConverter;
+import se233.audioconverter.Converter.BatchConverter;
+import se233.audioconverter.Converter.ConversionCache;
+import se233.audioconverter.Converter.ConversionJob;
+import se233.audioconverter.Converter.ConversionMetrics;
+import se233.audioconverter.Converter.FfmpegStartup;
+import se233.audioconverter.Converter.FolderScanner;
+import se233.audioconverter.Converter.FolderWatcher;
+import se233.audioconverter.Converter.FormatProfile;
+import se233.audioconverter.Converter.FormatRegistry;
+import se233.audioconverter.Converter.JobJournal;
+import se233.audioconverter.Converter.JobStatus;
+import se233.audioconverter.Converter.MediaProbe;
+import se233.audioconverter.Converter.TargetProfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Headless entry point for batch conversion. This class must only depend on
+ * the converter package so that running it never loads JavaFX.
+ *
+ * <pre>
+ * java -cp ... se233.audioconverter.AudioConverterCli -f flac -r 48000 -c stereo music/ "takes/*.wav"
+ * </pre>
+ */
+public class AudioConverterCli {
+    static final int EXIT_OK = 0;
+    static final int EXIT_FAILED = 1;
+    static final int EXIT_USAGE = 2;
+    static final int EXIT_NO_INPUT = 3;
+
+    private static final FormatRegistry FORMATS = FormatRegistry.defaults();
+
+    private List<Integer> formatIndexes = List.of(0);
+    private int bitrate = -1;
+    private int bitDepth = 16;
+    private int sampleRate = -1;
+    private int channelIndex = 1;
+    private int jobs = Runtime.getRuntime().availableProcessors();
+    private boolean adaptiveJobs;
+    private boolean useCache = true;
+    private Path cacheDirectory = ConversionCache.defaultDirectory();
+    private long cacheMaxBytes = ConversionCache.DEFAULT_MAX_BYTES;
+    private double timeoutFactor = BatchConverter.DEFAULT_TIMEOUT_FACTOR;
+    private Path outputDirectory;
+    private Path journalFile = JobJournal.defaultFile();
+    private boolean resume = true;
+    private Path watchFolder;
+    private Duration settleTime = FolderWatcher.DEFAULT_SETTLE_TIME;
+    private Duration segmentThreshold = AudioConverter.DEFAULT_SEGMENT_THRESHOLD;
+    private final List<String> inputs = new ArrayList<>();
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    static int run(String[] args) {
+        AudioConverterCli cli = new AudioConverterCli();
+        try {
+            if (!cli.parseArguments(args)) {
+                printUsage();
+                return EXIT_OK;
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            printUsage();
+            return EXIT_USAGE;
+        }
+        // find and check ffmpeg while the inputs are expanded; the first job warms it up
+        FfmpegStartup.begin();
+        return cli.convertAll();
+    }
+
+    /**
+     * @return false when only the help text was requested
+     */
+    private boolean parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "-h":
+                case "--help":
+                    return false;
+                case "-f":
+                case "--format":
+                    formatIndexes = parseFormats(requireValue(args, ++i, arg));
+                    break;
+                case "-b":
+                case "--bitrate":
+                    bitrate = parseBitrate(requireValue(args, ++i, arg));
+                    break;
+                case "--bit-depth":
+                    bitDepth = parseBitDepth(requireValue(args, ++i, arg));
+                    break;
+                case "-r":
+                case "--sample-rate":
+                    sampleRate = parsePositiveInt(requireValue(args, ++i, arg), arg);
+                    break;
+                case "-c":
+                case "--channels":
+                    channelIndex = parseChannels(requireValue(args, ++i, arg));
+                    break;
+                case "-j":
+                case "--jobs":
+                    jobs = parsePositiveInt(requireValue(args, ++i, arg), arg);
+                    break;
+                case "--adaptive":
+                    adaptiveJobs = true;
+                    break;
+                case "--timeout-factor":
+                    timeoutFactor = parseTimeoutFactor(requireValue(args, ++i, arg));
+                    break;
+                case "--no-timeout":
+                    timeoutFactor = 0;
+                    break;
+                case "--no-cache":
+                    useCache = false;
+                    break;
+                case "--cache-dir":
+                    cacheDirectory = Paths.get(requireValue(args, ++i, arg));
+                    break;
+                case "--cache-size":
+                    cacheMaxBytes = parsePositiveInt(requireValue(args, ++i, arg), arg) * 1024L * 1024L;
+                    break;
+                case "-o":
+                case "--output-dir":
+                    outputDirectory = Paths.get(requireValue(args, ++i, arg));
+                    break;
+                case "--journal":
+                    journalFile = Paths.get(requireValue(args, ++i, arg));
+                    break;
+                case "--no-resume":
+                    resume = false;
+                    break;
+                case "--watch":
+                    watchFolder = Paths.get(requireValue(args, ++i, arg));
+                    break;
+                case "--settle":
+                    settleTime = Duration.ofSeconds(parsePositiveInt(requireValue(args, ++i, arg), arg));
+                    break;
+                case "--segment-threshold":
+                    segmentThreshold = Duration.ofMinutes(parsePositiveInt(requireValue(args, ++i, arg), arg));
+                    break;
+                case "--no-segments":
+                    segmentThreshold = null;
+                    break;
+                default:
+                    if (arg.startsWith("-") && arg.length() > 1) {
+                        throw new IllegalArgumentException("Unknown option " + arg);
+                    }
+                    inputs.add(arg);
+            }
+        }
+        if (watchFolder != null) {
+            if (!inputs.isEmpty()) {
+                throw new IllegalArgumentException("--watch does not take input files.");
+            }
+            if (outputDirectory == null) {
+                throw new IllegalArgumentException("--watch needs an --output-dir.");
+            }
+        } else if (inputs.isEmpty()) {
+            throw new IllegalArgumentException("No input files given.");
+        }
+        return true;
+    }
+
+    private int convertAll() {
+        AudioConverter converter = new AudioConverter();
+        converter.setSegmentThreshold(segmentThreshold);
+        List<TargetProfile> targets = new ArrayList<>();
+        for (int formatIndex : formatIndexes) {
+            FormatProfile format = FORMATS.get(formatIndex);
+            int formatBitrate = !format.hasBitrate() ? bitDepthChoice(format) : bitrate < 0 ? format.defaultBitrate() : bitrate;
+            int formatSampleRate = sampleRate > 0 ? sampleRate
+                    : format.supportsSampleRate(44100) ? 44100 : format.sampleRates().get(0).hertz();
+            TargetProfile target = new TargetProfile(formatIndex, formatBitrate, formatSampleRate, channelIndex);
+            if (!converter.isValid(target)) {
+                System.err.println("Error: invalid settings for " + format.name()
+                        + " - Bitrate: " + formatBitrate + " bps, Sample Rate: " + formatSampleRate + " Hz.");
+                return EXIT_USAGE;
+            }
+            targets.add(target);
+        }
+        if (useCache) {
+            try {
+                converter.setCache(new ConversionCache(cacheDirectory, cacheMaxBytes));
+            } catch (IOException e) {
+                System.err.println("Warning: conversion cache disabled: " + e.getMessage());
+            }
+        }
+        if (watchFolder != null) {
+            return watch(converter, targets);
+        }
+        if (outputDirectory != null) {
+            try {
+                Files.createDirectories(outputDirectory);
+            } catch (IOException e) {
+                System.err.println("Error: cannot create " + outputDirectory + ": " + e.getMessage());
+                return EXIT_NO_INPUT;
+            }
+            converter.setOutputDirectory(outputDirectory.toFile());
+        }
+
+        Set<File> files = new LinkedHashSet<>();
+        for (String input : inputs) {
+            try {
+                files.addAll(expandInput(input));
+            } catch (IOException e) {
+                System.err.println("Error: cannot read " + input + ": " + e.getMessage());
+                return EXIT_NO_INPUT;
+            }
+        }
+        if (files.isEmpty()) {
+            System.err.println("Error: no audio files matched the given inputs.");
+            return EXIT_NO_INPUT;
+        }
+
+        List<ConversionJob> batch = new ArrayList<>();
+        for (File file : files) {
+            batch.add(new ConversionJob(file, targets));
+        }
+        // each job probes its own source; files probed by an earlier run are started longest first
+        MediaProbe probe = new MediaProbe(MediaProbe.defaultStoreFile());
+        converter.setMediaProbe(probe);
+
+        BatchConverter batchConverter = new BatchConverter(converter, jobs);
+        // a long file only splits over the cores the other running files leave idle
+        converter.setSegmentSlots(() -> Runtime.getRuntime().availableProcessors() - batchConverter.getRunningJobs() + 1);
+        batchConverter.setTimeout(timeoutFactor, BatchConverter.DEFAULT_MINIMUM_TIMEOUT_SECONDS);
+        batchConverter.setMediaProbe(probe);
+        batchConverter.setAdaptiveConcurrency(adaptiveJobs);
+        ConversionMetrics metrics = new ConversionMetrics(ConversionMetrics.defaultLogFile());
+        batchConverter.setMetrics(metrics);
+        JobJournal journal = null;
+        if (resume) {
+            try {
+                journal = new JobJournal(journalFile);
+                batchConverter.setJournal(journal);
+            } catch (IOException e) {
+                System.err.println("Warning: cannot open the job journal, finished files will be converted again: "
+                        + e.getMessage());
+            }
+        }
+        CountDownLatch finished = new CountDownLatch(1);
+        // on Ctrl-C, stop the encoders and give the workers a moment to delete partial outputs
+        Thread interruptHook = new Thread(() -> {
+            batchConverter.cancelAll();
+            try {
+                finished.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+        }, "cli-cancel");
+        Runtime.getRuntime().addShutdownHook(interruptHook);
+
+        try {
+            batchConverter.run(batch, new BatchConverter.Listener() {
+                @Override
+                public void jobStarted(ConversionJob job, int completed, int total) {
+                }
+
+                @Override
+                public void jobFinished(ConversionJob job, int completed, int total) {
+                    if (job.isResumed()) {
+                        System.out.println("[" + completed + "/" + total + "] SKIP   " + job.getSource()
+                                + " (finished in an earlier run)");
+                    } else if (job.getStatus() == JobStatus.DONE) {
+                        System.out.println("[" + completed + "/" + total + "] OK     " + job.getSource());
+                    } else {
+                        System.err.println("[" + completed + "/" + total + "] " + job.getStatus() + " " + job.getSource()
+                                + ": " + job.getError().getMessage());
+                    }
+                }
+
+                @Override
+                public void concurrencyChanged(int level) {
+                    System.out.println("Converting " + level + " file(s) at a time.");
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return EXIT_FAILED;
+        } finally {
+            finished.countDown();
+            closeQuietly(journal);
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(interruptHook);
+        } catch (IllegalStateException alreadyShuttingDown) {
+            // the hook is running, nothing to remove
+        }
+
+        long failed = batch.stream().filter(job -> job.getStatus() != JobStatus.DONE).count();
+        System.out.println("Converted " + (batch.size() - failed) + " of " + batch.size() + " file(s).");
+        if (metrics.getTimeToFirstConversionMillis() >= 0) {
+            System.out.println("First file done " + metrics.getTimeToFirstConversionMillis() + " ms after start-up"
+                    + " (ffmpeg ready after " + metrics.getFfmpegReadyMillis() + " ms).");
+        }
+        ConversionCache cache = converter.getCache();
+        if (cache != null) {
+            System.out.println("Cache: " + cache.getHits() + " hit(s), " + cache.getMisses() + " miss(es), "
+                    + cache.getEntryCount() + " entries, " + cache.getSizeBytes() / (1024 * 1024) + " MB used.");
+        }
+        return failed == 0 ? EXIT_OK : EXIT_FAILED;
+    }
+
+    /**
+     * Converts whatever lands in the watched folder until the process is
+     * stopped, for example with Ctrl-C or by the service manager.
+     */
+    private int watch(AudioConverter converter, List<TargetProfile> targets) {
+        if (!Files.isDirectory(watchFolder)) {
+            System.err.println("Error: " + watchFolder + " is not a directory.");
+            return EXIT_NO_INPUT;
+        }
+        FolderWatcher watcher;
+        try {
+            watcher = new FolderWatcher(converter, targets, watchFolder, outputDirectory,
+                    FolderWatcher.defaultQueueFile(watchFolder), jobs);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            return EXIT_USAGE;
+        }
+        watcher.setSettleTime(settleTime);
+        converter.setMediaProbe(new MediaProbe(MediaProbe.defaultStoreFile()));
+
+        CountDownLatch finished = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            watcher.stop();
+            try {
+                finished.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+        }, "cli-cancel"));
+
+        System.out.println("Watching " + watchFolder.toAbsolutePath() + ", writing to " + outputDirectory.toAbsolutePath());
+        try {
+            watcher.run(new FolderWatcher.Listener() {
+                @Override
+                public void converted(File source) {
+                    System.out.println("OK     " + source);
+                }
+
+                @Override
+                public void failed(File source, Exception error) {
+                    System.err.println("FAILED " + source + ": " + error.getMessage());
+                }
+            });
+            return EXIT_OK;
+        } catch (IOException e) {
+            System.err.println("Error: cannot watch " + watchFolder + ": " + e.getMessage());
+            return EXIT_NO_INPUT;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return EXIT_FAILED;
+        } finally {
+            finished.countDown();
+        }
+    }
+
+    /**
+     * Turns one command-line input into files: a plain file is used as is, a
+     * directory is searched recursively for files whose content is audio, and anything with
+     * glob characters is matched relative to its non-glob prefix.
+     */
+    static List<File> expandInput(String input) throws IOException {
+        if (!isGlob(input)) {
+            Path path = Paths.get(input).toAbsolutePath().normalize();
+            if (Files.isDirectory(path)) {
+                return scanFolder(path);
+            }
+            if (Files.isRegularFile(path)) {
+                return List.of(path.toFile());
+            }
+            System.err.println("Warning: " + input + " does not exist, skipping.");
+            return List.of();
+        }
+
+        String normalized = input.replace('\\', '/');
+        int firstGlobChar = indexOfGlobChar(normalized);
+        int baseEnd = normalized.lastIndexOf('/', firstGlobChar);
+        Path base = baseEnd < 0 ? Paths.get("") : Paths.get(normalized.substring(0, Math.max(baseEnd, 1)));
+        base = base.toAbsolutePath().normalize();
+        if (!Files.isDirectory(base)) {
+            return List.of();
+        }
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + normalized.substring(baseEnd + 1));
+        Path root = base;
+        return walk(base, file -> matcher.matches(root.relativize(file)));
+    }
+
+    private static List<File> scanFolder(Path root) {
+        List<File> found = Collections.synchronizedList(new ArrayList<>());
+        try (ExecutorService scanners = Executors.newVirtualThreadPerTaskExecutor()) {
+            new FolderScanner(scanners).scan(List.of(root), found::addAll).join();
+        }
+        List<File> files = new ArrayList<>(found);
+        files.sort(null);
+        return files;
+    }
+
+    private static List<File> walk(Path root, Predicate<Path> filter) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            return paths.filter(Files::isRegularFile)
+                    .filter(filter)
+                    .sorted()
+                    .map(Path::toFile)
+                    .toList();
+        }
+    }
+
+    private static boolean isGlob(String input) {
+        return indexOfGlobChar(input) >= 0;
+    }
+
+    private static int indexOfGlobChar(String input) {
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == '{') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void closeQuietly(JobJournal journal) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (IOException ignored) {
+            // every entry was already forced to disk
+        }
+    }
+
+    private static String requireValue(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[index];
+    }
+
+    private static List<Integer> parseFormats(String value) {
+        Set<Integer> formats = new LinkedHashSet<>();
+        for (String format : value.split(",")) {
+            formats.add(parseFormat(format.trim()));
+        }
+        return List.copyOf(formats);
+    }
+
+    private static int parseFormat(String value) {
+        String format = switch (value.toLowerCase(Locale.ROOT)) {
+            case "ipod", "aac" -> "m4a";
+            case "vorbis" -> "ogg";
+            default -> value;
+        };
+        int index = FORMATS.indexOf(format);
+        if (index < 0) {
+            throw new IllegalArgumentException("Unknown format " + value + ", expected one of "
+                    + String.join(", ", FORMATS.names()));
+        }
+        return index;
+    }
+
+    private static int parseBitrate(String value) {
+        String lower = value.toLowerCase(Locale.ROOT);
+        if (lower.endsWith("kbps")) {
+            return parsePositiveInt(lower.substring(0, lower.length() - 4), "--bitrate") * 1000;
+        }
+        if (lower.endsWith("k")) {
+            return parsePositiveInt(lower.substring(0, lower.length() - 1), "--bitrate") * 1000;
+        }
+        return parsePositiveInt(lower, "--bitrate");
+    }
+
+    private static int parseBitDepth(String value) {
+        int bits = parsePositiveInt(value, "--bit-depth");
+        if (bits != 16 && bits != 24 && bits != 32) {
+            throw new IllegalArgumentException("--bit-depth must be 16, 24 or 32, was " + value);
+        }
+        return bits;
+    }
+
+    /**
+     * The choice labelled with {@link #bitDepth} for formats that offer one,
+     * such as WAV, otherwise the format's first choice.
+     */
+    private int bitDepthChoice(FormatProfile format) {
+        for (FormatProfile.Bitrate choice : format.bitrates()) {
+            if (choice.label().equals(bitDepth + "-bit")) {
+                return choice.value();
+            }
+        }
+        return 0;
+    }
+
+    private static double parseTimeoutFactor(String value) {
+        try {
+            double factor = Double.parseDouble(value);
+            if (factor <= 0) {
+                throw new IllegalArgumentException("--timeout-factor must be positive, was " + value);
+            }
+            return factor;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for --timeout-factor: " + value);
+        }
+    }
+
+    private static int parseChannels(String value) {
+        switch (value.toLowerCase(Locale.ROOT)) {
+            case "1":
+            case "mono":
+                return 0;
+            case "2":
+            case "stereo":
+                return 1;
+            default:
+                throw new IllegalArgumentException("Unknown channel layout " + value + ", expected mono or stereo");
+        }
+    }
+
+    private static int parsePositiveInt(String value, String option) {
+        try {
+            int parsed = Integer.parseInt(value.trim());
+            if (parsed <= 0) {
+                throw new IllegalArgumentException(option + " must be positive, was " + value);
+            }
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for " + option + ": " + value);
+        }
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: AudioConverterCli [options] <file|directory|glob>...");
+        System.out.println("       AudioConverterCli [options] --watch <dir> --output-dir <dir>");
+        System.out.println();
+        System.out.println("Options:");
+        System.out.println("  -f, --format <format>             target format, or a comma-separated list to encode");
+        System.out.println("                                    several formats from one decode (default mp3), one of");
+        System.out.println("                                    " + String.join(", ", FORMATS.names()));
+        System.out.println("  -b, --bitrate <bps|NNNk>          bitrate for lossy formats (default 192k for mp3/m4a,");
+        System.out.println("                                    96k for opus, 160k for ogg)");
+        System.out.println("  --bit-depth <16|24|32>            sample width for wav (default 16)");
+        System.out.println("  -r, --sample-rate <Hz>            sample rate (default 44100, 48000 for opus)");
+        System.out.println("  -c, --channels <mono|stereo>      channel layout (default stereo)");
+        System.out.println("  -j, --jobs <n>                    parallel conversions (default: number of cores)");
+        System.out.println("  --adaptive                        tune the parallel conversions between 1 and --jobs");
+        System.out.println("                                    to the measured throughput and system load");
+        System.out.println("  --segment-threshold <minutes>     encode files at least this long as parallel segments (default "
+                + AudioConverter.DEFAULT_SEGMENT_THRESHOLD.toMinutes() + ")");
+        System.out.println("  --no-segments                     always encode each file in one piece");
+        System.out.println("  --timeout-factor <x>              abort a file after x seconds per second of audio");
+        System.out.println("                                    (default 2, at least 60 s per file)");
+        System.out.println("  --no-timeout                      never abort slow files");
+        System.out.println("  --no-cache                        always encode, never reuse cached outputs");
+        System.out.println("  --cache-dir <dir>                 conversion cache location (default ~/.audioconverter/cache)");
+        System.out.println("  --cache-size <MB>                 conversion cache size bound (default 2048)");
+        System.out.println("  -o, --output-dir <dir>            write outputs here instead of next to the sources");
+        System.out.println("  --journal <file>                  job journal for resuming batches (default ~/.audioconverter/journal.log)");
+        System.out.println("  --no-resume                       convert every file even if an earlier run finished it");
+        System.out.println("  --watch <dir>                     keep converting every audio file that lands in <dir>");
+        System.out.println("  --settle <seconds>                how long a watched file must stay unchanged (default "
+                + FolderWatcher.DEFAULT_SETTLE_TIME.toSeconds() + ")");
+        System.out.println("  -h, --help                        show this help");
+        System.out.println();
+        System.out.println("Exit status: 0 all converted, 1 some files failed, 2 bad arguments, 3 no input files.");
+    }
+}
@@ -0,0 +1,167 @@
+package se233.audioconverter.Converter;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Decides how many encodes of a batch run at once by hill climbing on the
+ * measured throughput, in seconds of audio encoded per second. Starting
+ * from half the maximum, the level is raised one step at a time while each
+ * step raises throughput noticeably. When a step brings no gain, the level
+ * goes back down and stays there for a while before probing upwards again.
+ * The level is lowered whenever the machine is overloaded, either by a load
+ * average above the core count (other services count too) or by the CPUs
+ * spending much of their time waiting for the disk.
+ *
+ * <p>{@link BatchConverter} calls {@link #acquire()} before starting a job,
+ * {@link #release()} after it and {@link #adjust(long)} periodically.
+ */
+public class AdaptiveConcurrency {
+    public static final long DEFAULT_PERIOD_MILLIS = 5000;
+    // a step must raise throughput by this much to count as a gain
+    private static final double MIN_GAIN = 0.05;
+    private static final double MAX_LOAD_PER_CORE = 1.5;
+    private static final double MAX_IO_WAIT_SHARE = 0.3;
+    // periods to keep the level after backing off before probing again
+    private static final int HOLD_PERIODS = 4;
+    private static final Path PROC_STAT = Paths.get("/proc/stat");
+
+    private final int minimum;
+    private final int maximum;
+    private final int cores = Runtime.getRuntime().availableProcessors();
+    private int level;
+    private int running;
+    private boolean probingUp = true;
+    private int holdPeriods;
+    private double lastThroughput;
+    private long lastAudioMillis;
+    private long lastSampleNanos = System.nanoTime();
+    private long[] lastCpuTimes;
+
+    public AdaptiveConcurrency(int maximum) {
+        this(1, maximum);
+    }
+
+    public AdaptiveConcurrency(int minimum, int maximum) {
+        if (minimum < 1 || maximum < minimum) {
+            throw new IllegalArgumentException("Invalid concurrency range " + minimum + ".." + maximum);
+        }
+        this.minimum = minimum;
+        this.maximum = maximum;
+        this.level = Math.max(minimum, maximum / 2);
+        this.lastCpuTimes = readCpuTimes();
+    }
+
+    public synchronized int getLevel() {
+        return level;
+    }
+
+    /**
+     * Blocks until fewer than {@link #getLevel()} jobs are running, then
+     * counts the caller as running.
+     */
+    public synchronized void acquire() throws InterruptedException {
+        while (running >= level) {
+            wait();
+        }
+        running++;
+    }
+
+    public synchronized void release() {
+        running--;
+        notifyAll();
+    }
+
+    /**
+     * Takes one measurement and moves the level if it calls for it.
+     *
+     * @param audioMillisDone total milliseconds of audio encoded so far, including partly encoded files
+     * @return the level after the adjustment
+     */
+    public synchronized int adjust(long audioMillisDone) {
+        long now = System.nanoTime();
+        double seconds = (now - lastSampleNanos) / 1e9;
+        double throughput = seconds <= 0 ? 0 : (audioMillisDone - lastAudioMillis) / 1000.0 / seconds;
+        lastAudioMillis = audioMillisDone;
+        lastSampleNanos = now;
+        if (running == 0) {
+            // nothing was encoding, so the sample says nothing about the level
+            return level;
+        }
+
+        if (isOverloaded()) {
+            setLevel(level - 1);
+            probingUp = false;
+            holdPeriods = HOLD_PERIODS;
+        } else if (holdPeriods > 0) {
+            if (--holdPeriods == 0) {
+                probingUp = true;
+                setLevel(level + 1);
+            }
+        } else if (probingUp) {
+            if (throughput > lastThroughput * (1 + MIN_GAIN) && level < maximum) {
+                setLevel(level + 1);
+            } else if (lastThroughput > 0 && throughput <= lastThroughput * (1 + MIN_GAIN)) {
+                // the last step brought nothing, so give it back
+                setLevel(level - 1);
+                probingUp = false;
+                holdPeriods = HOLD_PERIODS;
+            }
+        }
+        lastThroughput = throughput;
+        return level;
+    }
+
+    private void setLevel(int newLevel) {
+        level = Math.max(minimum, Math.min(maximum, newLevel));
+        notifyAll();
+    }
+
+    private boolean isOverloaded() {
+        double load = ManagementFactory.getOperatingSystemMXBean().getSystemLoadAverage();
+        if (load >= 0 && load / cores > MAX_LOAD_PER_CORE) {
+            return true;
+        }
+        return ioWaitShare() > MAX_IO_WAIT_SHARE;
+    }
+
+    /**
+     * The share of CPU time spent waiting for I/O since the last call, from
+     * the first line of /proc/stat. Always 0 where that file does not exist.
+     */
+    private double ioWaitShare() {
+        long[] times = readCpuTimes();
+        long[] previous = lastCpuTimes;
+        lastCpuTimes = times;
+        if (times == null || previous == null) {
+            return 0;
+        }
+        long total = 0;
+        for (int i = 0; i < times.length; i++) {
+            total += times[i] - previous[i];
+        }
+        // user nice system idle iowait ...
+        return total <= 0 ? 0 : (times[4] - previous[4]) / (double) total;
+    }
+
+    private static long[] readCpuTimes() {
+        try {
+            List<String> lines = Files.readAllLines(PROC_STAT);
+            String[] fields = lines.get(0).trim().split("\\s+");
+            if (!fields[0].equals("cpu") || fields.length < 6) {
+                return null;
+            }
+            long[] times = new long[Math.min(fields.length - 1, 8)];
+            for (int i = 0; i < times.length; i++) {
+                times[i] = Long.parseLong(fields[i + 1]);
+            }
+            return times;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -4,84 +4,556 @@ import ws.schild.jave.Encoder;
 import ws.schild.jave.MultimediaObject;
 import ws.schild.jave.encode.AudioAttributes;
 import ws.schild.jave.encode.EncodingAttributes;
+import ws.schild.jave.info.MultimediaInfo;
+import ws.schild.jave.progress.EncoderProgressListener;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntSupplier;
 
 public class AudioConverter {
-    String[] codecNames = {"libmp3lame", "pcm_s16le", "aac", "flac"};
-    String[] formatNames = {"mp3", "wav", "ipod", "flac"};
+    public static final Duration DEFAULT_SEGMENT_THRESHOLD = Duration.ofMinutes(30);
+    private final FormatRegistry formats;
     int[] channels = {1, 2};
-    FileNameManager fileNameManager = new FileNameManager();
+    FileNameManager fileNameManager;
+    private ConversionCache cache;
+    private MediaProbe mediaProbe;
+    private File outputDirectory;
+    private Duration segmentThreshold = DEFAULT_SEGMENT_THRESHOLD;
+    private IntSupplier segmentSlots = () -> Runtime.getRuntime().availableProcessors();
+    // how far a lossy source's bitrate may be from the requested one and still be kept
+    private static final double PASSTHROUGH_BITRATE_TOLERANCE = 0.05;
+    static final String SAME_NAME_SUFFIX = "-converted";
+
+    public AudioConverter() {
+        this(FormatRegistry.defaults());
+    }
+
+    /**
+     * @param formats the formats that {@code formatIndex} arguments refer to
+     */
+    public AudioConverter(FormatRegistry formats) {
+        this.formats = formats;
+        this.fileNameManager = new FileNameManager(formats);
+    }
+
+    /**
+     * Enables reuse of earlier outputs for identical source content and
+     * settings. Pass null to always encode.
+     */
+    public void setCache(ConversionCache cache) {
+        this.cache = cache;
+    }
+
+    public ConversionCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Source metadata for the passthrough check is read from {@code probe}
+     * when set, otherwise ffmpeg is run on each source.
+     */
+    public void setMediaProbe(MediaProbe probe) {
+        this.mediaProbe = probe;
+    }
+
+    public MediaProbe getMediaProbe() {
+        return mediaProbe;
+    }
+
+    /**
+     * Writes outputs to {@code outputDirectory} instead of next to their
+     * sources. Pass null to go back to the source's directory.
+     */
+    public void setOutputDirectory(File outputDirectory) {
+        this.outputDirectory = outputDirectory;
+    }
+
+    public File getOutputDirectory() {
+        return outputDirectory;
+    }
+
+    /**
+     * Sources at least this long are split into time segments that are
+     * encoded in parallel and joined, when there are cores to spare. Pass
+     * null to always encode in one piece.
+     */
+    public void setSegmentThreshold(Duration threshold) {
+        this.segmentThreshold = threshold;
+    }
+
+    public Duration getSegmentThreshold() {
+        return segmentThreshold;
+    }
+
+    /**
+     * How many ffmpeg processes a segmented encode may run, asked when each
+     * long source starts. Defaults to the core count; a batch running
+     * several files at once should pass the CPU slots its workers leave
+     * free, counting the asking job's own.
+     */
+    public void setSegmentSlots(IntSupplier freeSlots) {
+        this.segmentSlots = freeSlots;
+    }
+
+    public void convert(File sourceAudio, TargetProfile target) {
+        convert(sourceAudio, target, null);
+    }
+
+    public void convert(File sourceAudio, TargetProfile target, EncoderProgressListener progressListener) {
+        convert(sourceAudio, target, progressListener, null);
+    }
+
+    public void convert(File sourceAudio, TargetProfile target, EncoderProgressListener progressListener, CancelSignal cancelSignal) {
+        convert(sourceAudio, target.formatIndex(), target.bitrate(), target.sampleRate(), target.channelIndex(),
+                progressListener, cancelSignal);
+    }
 
     public void convert(File sourceAudio, int formatIndex, int bitrateValue, int sampleRateValue, int channelIndex) {
-        String targetFormat = formatNames[formatIndex];
+        convert(sourceAudio, formatIndex, bitrateValue, sampleRateValue, channelIndex, null, null);
+    }
 
-        if (!areParametersValid(targetFormat, bitrateValue, sampleRateValue)) {
-            throw new IllegalArgumentException("Invalid settings for " + targetFormat +
-                    " - Bitrate: " + bitrateValue + " bps, Sample Rate: " + sampleRateValue + " Hz."
-            );
+    /**
+     * @param bitrateValue bits per second, or for formats without a bitrate setting the position of the
+     *                     chosen label, such as 1 for 24-bit WAV
+     * @param progressListener receives ffmpeg's per-mille progress for this file, may be null
+     * @param cancelSignal aborts the encode and deletes the partial output when cancelled, may be null
+     * @throws ConversionCancelledException if the signal was cancelled before the output was complete
+     */
+    public void convert(File sourceAudio, int formatIndex, int bitrateValue, int sampleRateValue, int channelIndex,
+                        EncoderProgressListener progressListener, CancelSignal cancelSignal) {
+        CancelSignal signal = cancelSignal != null ? cancelSignal : new CancelSignal();
+        if (!isValid(new TargetProfile(formatIndex, bitrateValue, sampleRateValue, channelIndex))) {
+            throw invalidSettings(formatIndex, bitrateValue, sampleRateValue);
         }
-
-        String sourceCodec = codecNames[formatIndex];
-        File targetAudio = fileNameManager.chname(sourceAudio.getPath(), formatIndex);
+        FormatProfile targetFormat = formats.get(formatIndex);
+        File targetAudio = targetFileFor(sourceAudio, formatIndex);
+        File partAudio = OutputFiles.partFileFor(targetAudio);
         System.out.println("Starting to convert file: " + sourceAudio.getName());
 
         try {
+            if (convertByPassthrough(sourceAudio, targetAudio, formatIndex, bitrateValue, sampleRateValue,
+                    this.channels[channelIndex], signal)) {
+                if (progressListener != null) {
+                    progressListener.progress(1000);
+                }
+                return;
+            }
+            String cacheKey = null;
+            if (cache != null) {
+                cacheKey = cache.keyFor(sourceAudio, cacheSettings(formatIndex, bitrateValue, sampleRateValue, channelIndex));
+                if (cache.restore(cacheKey, targetAudio)) {
+                    System.out.println("Reused cached conversion -> " + targetAudio.getName());
+                    if (progressListener != null) {
+                        progressListener.progress(1000);
+                    }
+                    return;
+                }
+            }
+
             AudioAttributes audio = new AudioAttributes();
-            audio.setCodec(sourceCodec);
+            audio.setCodec(targetFormat.codecFor(bitrateValue));
             audio.setChannels(this.channels[channelIndex]);
             audio.setSamplingRate(sampleRateValue);
 
 
-            if (!targetFormat.equals("wav") && !targetFormat.equals("flac")) {
+            if (targetFormat.usedBitrate(bitrateValue) > 0) {
                 audio.setBitRate(bitrateValue);
             }
 
             EncodingAttributes attrs = new EncodingAttributes();
-            attrs.setOutputFormat(targetFormat);
+            attrs.setOutputFormat(targetFormat.muxer());
             attrs.setAudioAttributes(audio);
 
-            Encoder encoder = new Encoder();
-            encoder.encode(new MultimediaObject(sourceAudio), targetAudio, attrs);
+            signal.throwIfCancelled();
+            // encode next to the target and rename, so a failed encode never leaves a truncated output behind
+            if (!convertWithFastPath(sourceAudio, partAudio, targetFormat, bitrateValue, sampleRateValue,
+                    this.channels[channelIndex], progressListener, signal)
+                    && !convertInSegments(sourceAudio, partAudio, formatIndex, bitrateValue, sampleRateValue,
+                    this.channels[channelIndex], progressListener, signal)) {
+                FfmpegLocator ffmpeg = FfmpegStartup.ffmpeg();
+                Encoder encoder = new Encoder(ffmpeg);
+                signal.onCancel(encoder::abortEncoding);
+                try {
+                    encoder.encode(new MultimediaObject(sourceAudio, ffmpeg), partAudio, attrs,
+                            abortingListener(encoder, signal, progressListener));
+                } finally {
+                    signal.onCancel(null);
+                }
+            }
+            signal.throwIfCancelled();
+            OutputFiles.commit(partAudio, targetAudio);
 
             System.out.println("Successfully converted to " + targetFormat + " -> " + targetAudio.getName());
 
+            if (cacheKey != null) {
+                try {
+                    cache.store(cacheKey, targetAudio, fileNameManager.extensionOf(formatIndex));
+                } catch (Exception cacheError) {
+                    System.err.println("Could not add " + targetAudio.getName() + " to the cache: " + cacheError.getMessage());
+                }
+            }
+
         } catch (Exception ex) {
+            OutputFiles.deleteQuietly(partAudio);
+            if (signal.isCancelled()) {
+                System.out.println("Conversion of " + sourceAudio.getName() + " stopped: " + signal.getReason());
+                throw new ConversionCancelledException(signal.getReason());
+            }
             System.err.println("Conversion failed!");
             ex.printStackTrace();
+            throw new ConversionException("Failed to convert " + sourceAudio.getName(), ex);
         }
     }
 
-    private boolean areParametersValid(String formatName, int bitrate, int sampleRate) {
-        if (formatName == null) {
-            return false;
+    /**
+     * JAVE only starts ffmpeg inside encode(), so an abort requested just
+     * before that is missed. Checking again on every progress tick closes the gap.
+     */
+    private static EncoderProgressListener abortingListener(Encoder encoder, CancelSignal signal, EncoderProgressListener delegate) {
+        return new EncoderProgressListener() {
+            @Override
+            public void sourceInfo(MultimediaInfo info) {
+                if (delegate != null) {
+                    delegate.sourceInfo(info);
+                }
+            }
+
+            @Override
+            public void progress(int permil) {
+                if (signal.isCancelled()) {
+                    encoder.abortEncoding();
+                } else if (delegate != null) {
+                    delegate.progress(permil);
+                }
+            }
+
+            @Override
+            public void message(String message) {
+                if (delegate != null) {
+                    delegate.message(message);
+                }
+            }
+        };
+    }
+
+    /**
+     * Produces every target from a single ffmpeg run, so the source is read
+     * and decoded once no matter how many formats are requested. Targets
+     * already in the cache are restored instead of encoded.
+     *
+     * @param targets at most one profile per file extension, since the output name only depends on it
+     */
+    public void convertToMany(File sourceAudio, List<TargetProfile> targets, EncoderProgressListener progressListener) {
+        convertToMany(sourceAudio, targets, progressListener, null);
+    }
+
+    public void convertToMany(File sourceAudio, List<TargetProfile> targets, EncoderProgressListener progressListener,
+                              CancelSignal cancelSignal) {
+        CancelSignal signal = cancelSignal != null ? cancelSignal : new CancelSignal();
+        Set<String> suffixes = new HashSet<>();
+        for (TargetProfile target : targets) {
+            if (!isValid(target)) {
+                throw invalidSettings(target.formatIndex(), target.bitrate(), target.sampleRate());
+            }
+            String suffix = fileNameManager.suffixOf(target.formatIndex());
+            if (!suffixes.add(suffix)) {
+                throw new IllegalArgumentException("More than one target writes " + suffix + " files");
+            }
+        }
+        if (targets.size() == 1) {
+            convert(sourceAudio, targets.get(0), progressListener, signal);
+            return;
         }
 
-        switch (formatName) {
-            case "mp3":
-                boolean isValidMp3SampleRate = (sampleRate == 32000 || sampleRate == 44100 || sampleRate == 48000);
-                boolean isValidMp3Bitrate = (bitrate >= 64000 && bitrate <= 320000);
-                System.out.println("MP3 Validation: " + isValidMp3SampleRate + " " + isValidMp3Bitrate);
-                return isValidMp3SampleRate && isValidMp3Bitrate;
+        System.out.println("Starting to convert file: " + sourceAudio.getName() + " into " + targets.size() + " formats");
+        try {
+            List<TargetProfile> toEncode = new ArrayList<>();
+            List<String> cacheKeys = new ArrayList<>();
+            String sourceDigest = null;
+            for (TargetProfile target : targets) {
+                File targetAudio = targetFileFor(sourceAudio, target.formatIndex());
+                if (convertByPassthrough(sourceAudio, targetAudio, target.formatIndex(), target.bitrate(),
+                        target.sampleRate(), channels[target.channelIndex()], signal)) {
+                    continue;
+                }
+                String cacheKey = null;
+                if (cache != null) {
+                    if (sourceDigest == null) {
+                        sourceDigest = cache.digestOf(sourceAudio);
+                    }
+                    cacheKey = cache.keyFor(sourceDigest, cacheSettings(target.formatIndex(), target.bitrate(),
+                            target.sampleRate(), target.channelIndex()));
+                    if (cache.restore(cacheKey, targetAudio)) {
+                        System.out.println("Reused cached conversion -> " + targetAudio.getName());
+                        continue;
+                    }
+                }
+                toEncode.add(target);
+                cacheKeys.add(cacheKey);
+            }
+            if (toEncode.isEmpty()) {
+                if (progressListener != null) {
+                    progressListener.progress(1000);
+                }
+                return;
+            }
 
-            case "wav":
-                boolean isValidWavSampleRate = (sampleRate == 44100 || sampleRate == 48000 || sampleRate == 96000);
-                return isValidWavSampleRate;
+            FfmpegCommand command = new FfmpegCommand().add("-y", "-i", sourceAudio.getAbsolutePath());
+            for (TargetProfile target : toEncode) {
+                FormatProfile format = formats.get(target.formatIndex());
+                command.addAudioOutput(format.codecFor(target.bitrate()), format.usedBitrate(target.bitrate()),
+                        target.sampleRate(), channels[target.channelIndex()], format.muxer(),
+                        OutputFiles.partFileFor(targetFileFor(sourceAudio, target.formatIndex())));
+            }
+            try {
+                signal.throwIfCancelled();
+                command.run(progressListener, signal);
+                signal.throwIfCancelled();
+                for (TargetProfile target : toEncode) {
+                    File targetAudio = targetFileFor(sourceAudio, target.formatIndex());
+                    OutputFiles.commit(OutputFiles.partFileFor(targetAudio), targetAudio);
+                }
+            } catch (Exception ex) {
+                for (TargetProfile target : toEncode) {
+                    OutputFiles.deleteQuietly(OutputFiles.partFileFor(targetFileFor(sourceAudio, target.formatIndex())));
+                }
+                throw ex;
+            }
 
-            case "ipod":
-                boolean isValidAacSampleRate = (sampleRate == 44100 || sampleRate == 48000);
-                boolean isValidAacBitrate = (bitrate >= 96000 && bitrate <= 256000);
-                return isValidAacSampleRate && isValidAacBitrate;
+            for (int i = 0; i < toEncode.size(); i++) {
+                TargetProfile target = toEncode.get(i);
+                File targetAudio = targetFileFor(sourceAudio, target.formatIndex());
+                System.out.println("Successfully converted to " + formats.get(target.formatIndex()) + " -> " + targetAudio.getName());
+                if (cacheKeys.get(i) != null) {
+                    try {
+                        cache.store(cacheKeys.get(i), targetAudio, fileNameManager.extensionOf(target.formatIndex()));
+                    } catch (Exception cacheError) {
+                        System.err.println("Could not add " + targetAudio.getName() + " to the cache: " + cacheError.getMessage());
+                    }
+                }
+            }
+        } catch (IllegalArgumentException | ConversionCancelledException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            if (signal.isCancelled()) {
+                throw new ConversionCancelledException(signal.getReason());
+            }
+            System.err.println("Conversion failed!");
+            ex.printStackTrace();
+            throw new ConversionException("Failed to convert " + sourceAudio.getName(), ex);
+        }
+    }
+
+    /**
+     * Encodes audio read from a stream, such as an HTTP response body, while
+     * it is still arriving. Nothing is written besides {@code targetAudio}, and
+     * a failed or cancelled run leaves no partial file behind. Progress is up
+     * to the caller, since ffmpeg rarely knows the length of a piped input.
+     */
+    public void convertStream(InputStream sourceStream, String sourceName, File targetAudio, TargetProfile target,
+                              CancelSignal cancelSignal) {
+        CancelSignal signal = cancelSignal != null ? cancelSignal : new CancelSignal();
+        if (!isValid(target)) {
+            throw invalidSettings(target.formatIndex(), target.bitrate(), target.sampleRate());
+        }
+        FormatProfile format = formats.get(target.formatIndex());
+        File partAudio = OutputFiles.partFileFor(targetAudio);
+        System.out.println("Starting to stream " + sourceName + " into " + format);
+        try {
+            FfmpegCommand command = new FfmpegCommand().add("-y", "-i", "pipe:0")
+                    .addAudioOutput(format.codecFor(target.bitrate()), format.usedBitrate(target.bitrate()),
+                            target.sampleRate(), channels[target.channelIndex()], format.muxer(), partAudio);
+            signal.throwIfCancelled();
+            command.run(sourceStream, null, signal);
+            signal.throwIfCancelled();
+            OutputFiles.commit(partAudio, targetAudio);
+            System.out.println("Successfully converted to " + format + " -> " + targetAudio.getName());
+        } catch (ConversionCancelledException ex) {
+            OutputFiles.deleteQuietly(partAudio);
+            throw ex;
+        } catch (Exception ex) {
+            OutputFiles.deleteQuietly(partAudio);
+            if (signal.isCancelled()) {
+                throw new ConversionCancelledException(signal.getReason());
+            }
+            System.err.println("Conversion failed!");
+            ex.printStackTrace();
+            throw new ConversionException("Failed to convert " + sourceName, ex);
+        }
+    }
+
+    private String cacheSettings(int formatIndex, int bitrateValue, int sampleRateValue, int channelIndex) {
+        FormatProfile format = formats.get(formatIndex);
+        return format.codecFor(bitrateValue) + "|" + format.muxer() + "|" + format.usedBitrate(bitrateValue)
+                + "|" + sampleRateValue + "|" + channels[channelIndex];
+    }
+
+    /**
+     * Skips the transcode when the source already holds the target's codec at
+     * the requested sample rate, channel count and (for lossy formats)
+     * bitrate. A source in the target's container is copied, never linked,
+     * so editing or re-tagging the output cannot change the source; otherwise
+     * the stream is remuxed without re-encoding. Both are written to a part
+     * file and committed.
+     *
+     * @return false if the source has to be encoded
+     */
+    private boolean convertByPassthrough(File sourceAudio, File targetAudio, int formatIndex, int bitrateValue,
+                                         int sampleRate, int channelCount, CancelSignal signal) throws IOException {
+        AudioMetadata metadata;
+        try {
+            metadata = mediaProbe != null ? mediaProbe.probe(sourceAudio) : MediaProbe.read(sourceAudio);
+        } catch (IOException e) {
+            return false;
+        }
+        if (!satisfies(metadata, formatIndex, bitrateValue, sampleRate, channelCount)) {
+            return false;
+        }
+        signal.throwIfCancelled();
+
+        String sourceName = sourceAudio.getName();
+        String sourceExtension = sourceName.substring(sourceName.lastIndexOf('.') + 1);
+        if (sourceExtension.equalsIgnoreCase(fileNameManager.extensionOf(formatIndex))) {
+            OutputFiles.copy(sourceAudio.toPath(), targetAudio);
+            System.out.println("Source already matches, copied " + sourceName + " -> " + targetAudio.getName());
+        } else {
+            File partAudio = OutputFiles.partFileFor(targetAudio);
+            try {
+                new FfmpegCommand().add("-y", "-i", sourceAudio.getAbsolutePath())
+                        .addAudioOutput("copy", 0, 0, 0, formats.get(formatIndex).muxer(), partAudio)
+                        .run(null, signal);
+                signal.throwIfCancelled();
+                OutputFiles.commit(partAudio, targetAudio);
+            } finally {
+                OutputFiles.deleteQuietly(partAudio);
+            }
+            System.out.println("Source codec already matches, remuxed " + sourceName + " -> " + targetAudio.getName());
+        }
+        return true;
+    }
+
+    private boolean satisfies(AudioMetadata source, int formatIndex, int bitrateValue, int sampleRate, int channelCount) {
+        FormatProfile format = formats.get(formatIndex);
+        if (!source.codec().startsWith(format.streamCodecFor(bitrateValue))
+                || source.sampleRate() != sampleRate || source.channels() != channelCount) {
+            return false;
+        }
+        int bitrate = format.usedBitrate(bitrateValue);
+        return bitrate <= 0 || Math.abs(source.bitRate() - bitrate) <= bitrate * PASSTHROUGH_BITRATE_TOLERANCE;
+    }
 
-            case "flac":
-                boolean isValidFlacSampleRate = (sampleRate == 44100 || sampleRate == 48000 || sampleRate == 96000 || sampleRate == 192000);
-                return isValidFlacSampleRate;
+    /**
+     * Handles WAV to WAV jobs in-process when the source is plain 16-, 24- or
+     * 32-bit PCM and the target is one of the pcm_s16le, pcm_s24le and
+     * pcm_s32le WAV choices.
+     *
+     * @return false if the job has to go through ffmpeg
+     */
+    private boolean convertWithFastPath(File sourceAudio, File targetAudio, FormatProfile targetFormat, int bitrateValue,
+                                        int sampleRate, int channelCount, EncoderProgressListener progressListener,
+                                        CancelSignal signal) throws IOException {
+        int targetBits = switch (targetFormat.codecFor(bitrateValue)) {
+            case "pcm_s16le" -> 16;
+            case "pcm_s24le" -> 24;
+            case "pcm_s32le" -> 32;
+            default -> 0;
+        };
+        if (targetBits == 0 || !targetFormat.muxer().equals("wav")) {
+            return false;
+        }
+        PcmWavFile pcmSource = PcmWavFile.read(sourceAudio);
+        if (pcmSource == null) {
+            return false;
+        }
+        if (!WavFastPath.convert(pcmSource, targetAudio, sampleRate, channelCount, targetBits, progressListener, signal)) {
+            return false;
+        }
+        System.out.println("Converted in-process (PCM WAV fast path): " + sourceAudio.getName());
+        return true;
+    }
 
-            default:
-                return false;
+    /**
+     * Encodes sources longer than the segment threshold as parallel segments.
+     *
+     * @return false if the source is too short, its length is unknown or the
+     * machine has a single core, in which case nothing has been written
+     */
+    private boolean convertInSegments(File sourceAudio, File targetAudio, int formatIndex, int bitrateValue, int sampleRate,
+                                      int channelCount, EncoderProgressListener progressListener, CancelSignal signal)
+            throws IOException {
+        FormatProfile targetFormat = formats.get(formatIndex);
+        if (segmentThreshold == null || !SegmentedEncoder.supports(targetFormat.codecFor(bitrateValue))) {
+            return false;
+        }
+        AudioMetadata metadata;
+        try {
+            metadata = mediaProbe != null ? mediaProbe.probe(sourceAudio) : MediaProbe.read(sourceAudio);
+        } catch (IOException e) {
+            return false;
+        }
+        if (metadata.durationMillis() < segmentThreshold.toMillis() || metadata.sampleRate() <= 0) {
+            return false;
+        }
+        int segments = SegmentedEncoder.segmentCount(metadata.durationMillis(), segmentSlots.getAsInt());
+        if (segments < 2) {
+            return false;
         }
+        SegmentedEncoder.encode(sourceAudio, metadata, targetAudio, targetFormat, bitrateValue, sampleRate,
+                channelCount, segments, progressListener, signal);
+        System.out.println("Converted in " + segments + " parallel segments: " + sourceAudio.getName());
+        return true;
+    }
+
+    /**
+     * The registry key of the format, such as "mp3" or "m4a".
+     */
+    public String getFormatName(int formatIndex) {
+        return formats.get(formatIndex).name();
+    }
+
+    public FormatRegistry getFormats() {
+        return formats;
     }
 
+    /**
+     * The file {@code convert} writes for {@code sourceAudio} in the given
+     * format. A source that would be its own target, such as a WAV converted
+     * to WAV without an output directory, gets {@value #SAME_NAME_SUFFIX}
+     * added to the name so it is never overwritten.
+     */
+    File targetFileFor(File sourceAudio, int formatIndex) {
+        File target = fileNameManager.chname(sourceAudio.getPath(), formatIndex, outputDirectory);
+        if (!target.getAbsoluteFile().equals(sourceAudio.getAbsoluteFile())) {
+            return target;
+        }
+        String suffix = fileNameManager.suffixOf(formatIndex);
+        String name = target.getName();
+        String baseName = name.substring(0, name.length() - suffix.length());
+        return new File(target.getParentFile(), baseName + SAME_NAME_SUFFIX + suffix);
+    }
 
+    public int getFormatCount() {
+        return formats.size();
+    }
 
+    public boolean isValid(TargetProfile target) {
+        if (!formats.contains(target.formatIndex())
+                || target.channelIndex() < 0 || target.channelIndex() >= channels.length) {
+            return false;
+        }
+        return formats.get(target.formatIndex()).isValid(target.bitrate(), target.sampleRate());
+    }
 
-}
\ No newline at end of file
+    private IllegalArgumentException invalidSettings(int formatIndex, int bitrate, int sampleRate) {
+        String format = formats.contains(formatIndex) ? formats.get(formatIndex).name() : "format " + formatIndex;
+        return new IllegalArgumentException("Invalid settings for " + format +
+                " - Bitrate: " + bitrate + " bps, Sample Rate: " + sampleRate + " Hz.");
+    }
+}
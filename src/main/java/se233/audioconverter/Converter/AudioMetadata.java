@@ -0,0 +1,34 @@
+package se233.audioconverter.Converter;
+
+/**
+ * What ffmpeg reports about an input's audio stream. Numbers ffmpeg could
+ * not determine are 0 or less.
+ *
+ * @param sampleFormat the decoded sample format, such as "s16" or "fltp",
+ *                     or "" when ffmpeg's report did not say
+ */
+public record AudioMetadata(long durationMillis, String codec, int sampleRate, int channels, int bitRate,
+                            String sampleFormat) {
+
+    /**
+     * A short line for the file list, such as "3:25 · mp3 · 44100 Hz · stereo".
+     */
+    public String describe() {
+        StringBuilder text = new StringBuilder();
+        if (durationMillis > 0) {
+            long seconds = durationMillis / 1000;
+            text.append(seconds / 60).append(':').append(String.format("%02d", seconds % 60)).append(" · ");
+        }
+        text.append(codec);
+        if (sampleRate > 0) {
+            text.append(" · ").append(sampleRate).append(" Hz");
+        }
+        if (channels > 0) {
+            text.append(" · ").append(channels == 1 ? "mono" : channels == 2 ? "stereo" : channels + " ch");
+        }
+        if (bitRate > 0) {
+            text.append(" · ").append(bitRate / 1000).append(" kbps");
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,116 @@
+package se233.audioconverter.Converter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+/**
+ * Recognizes audio files by their first bytes rather than by their name.
+ */
+public final class AudioSniffer {
+    // enough for the ftyp box's major brand and a dozen compatible brands
+    private static final int HEADER_BYTES = 64;
+    /**
+     * ISO base media brands of audio files, and the generic ones that audio
+     * files are written with too. Image and QuickTime brands such as heic,
+     * avif or qt are not among them.
+     */
+    private static final Set<String> AUDIO_BRANDS = Set.of(
+            "M4A ", "M4B ", "M4P ", "F4A ", "F4B ", "isom", "iso2", "mp41", "mp42", "dash");
+
+    private AudioSniffer() {
+    }
+
+    /**
+     * @return "wav", "mp3", "aac", "flac", "m4a", "aiff", "ogg" or "wma", or null if
+     * the file does not start like any of them or cannot be read
+     */
+    public static String sniff(Path file) {
+        byte[] header = new byte[HEADER_BYTES];
+        int length;
+        try (InputStream in = Files.newInputStream(file)) {
+            length = in.readNBytes(header, 0, HEADER_BYTES);
+        } catch (IOException e) {
+            return null;
+        }
+        return sniff(header, length);
+    }
+
+    public static boolean isAudio(Path file) {
+        return sniff(file) != null;
+    }
+
+    static String sniff(byte[] header, int length) {
+        if (length >= 12 && startsWith(header, 0, "RIFF") && startsWith(header, 8, "WAVE")) {
+            return "wav";
+        }
+        if (length >= 12 && startsWith(header, 0, "FORM")
+                && (startsWith(header, 8, "AIFF") || startsWith(header, 8, "AIFC"))) {
+            return "aiff";
+        }
+        if (length >= 4 && startsWith(header, 0, "fLaC")) {
+            return "flac";
+        }
+        if (length >= 4 && startsWith(header, 0, "OggS")) {
+            return "ogg";
+        }
+        // ISO base media: a box size followed by the file type box
+        if (length >= 12 && startsWith(header, 4, "ftyp")) {
+            return hasAudioBrand(header, length) ? "m4a" : null;
+        }
+        // first bytes of the ASF header object GUID
+        if (length >= 4 && (header[0] & 0xFF) == 0x30 && (header[1] & 0xFF) == 0x26
+                && (header[2] & 0xFF) == 0xB2 && (header[3] & 0xFF) == 0x75) {
+            return "wma";
+        }
+        if (length >= 3 && startsWith(header, 0, "ID3")) {
+            return "mp3";
+        }
+        if (length >= 2 && (header[0] & 0xFF) == 0xFF && (header[1] & 0xE0) == 0xE0) {
+            int layer = (header[1] >> 1) & 0x3;
+            // ADTS AAC shares the sync word but has layer bits 00; MPEG audio never does
+            if (layer == 0) {
+                return (header[1] & 0xF0) == 0xF0 ? "aac" : null;
+            }
+            int version = (header[1] >> 3) & 0x3;
+            return version != 1 ? "mp3" : null;
+        }
+        return null;
+    }
+
+    /**
+     * Looks at the major brand and every compatible brand of the ftyp box
+     * that fits in the header.
+     */
+    private static boolean hasAudioBrand(byte[] header, int length) {
+        if (AUDIO_BRANDS.contains(brandAt(header, 8))) {
+            return true;
+        }
+        long boxSize = ((header[0] & 0xFFL) << 24) | ((header[1] & 0xFF) << 16) | ((header[2] & 0xFF) << 8)
+                | (header[3] & 0xFF);
+        long end = Math.min(length, boxSize);
+        // compatible brands follow the major brand and the minor version
+        for (int offset = 16; offset + 4 <= end; offset += 4) {
+            if (AUDIO_BRANDS.contains(brandAt(header, offset))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String brandAt(byte[] header, int offset) {
+        return new String(header, offset, 4, StandardCharsets.ISO_8859_1);
+    }
+
+    private static boolean startsWith(byte[] header, int offset, String magic) {
+        for (int i = 0; i < magic.length(); i++) {
+            if (header[offset + i] != (byte) magic.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,561 @@
+package se233.audioconverter.Converter;
+
+import ws.schild.jave.info.MultimediaInfo;
+import ws.schild.jave.progress.EncoderProgressListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongConsumer;
+
+/**
+ * Runs a list of {@link ConversionJob}s on a fixed number of worker threads,
+ * so several ffmpeg processes encode at the same time.
+ *
+ * <p>Each job gets a wall-clock timeout derived from its input duration;
+ * a job that exceeds it is aborted like a cancelled one and counted as failed.
+ * With a {@link MediaProbe} set, the longest inputs are started first so a
+ * long file does not end up running alone at the end of the batch.
+ * With adaptive concurrency, the number of jobs running at once is tuned
+ * during the batch by an {@link AdaptiveConcurrency} fed with the seconds of
+ * audio encoded per second.
+ */
+public class BatchConverter {
+
+    public interface Listener {
+        void jobStarted(ConversionJob job, int completed, int total);
+
+        void jobFinished(ConversionJob job, int completed, int total);
+
+        /**
+         * Called from the worker threads as ffmpeg reports progress, possibly
+         * many times per second per file. Both values are between 0 and 1.
+         */
+        default void progress(ConversionJob job, double fileProgress, double batchProgress) {
+        }
+
+        /**
+         * Called with the number of jobs allowed to run at once when an
+         * adaptive batch starts and whenever that number changes.
+         */
+        default void concurrencyChanged(int level) {
+        }
+    }
+
+    public static final double DEFAULT_TIMEOUT_FACTOR = 2.0;
+    public static final long DEFAULT_MINIMUM_TIMEOUT_SECONDS = 60;
+    public static final long UNKNOWN_DURATION_TIMEOUT_SECONDS = 30 * 60;
+    private static final int PERMIL_DONE = 1000;
+
+    private final AudioConverter converter;
+    private final int concurrency;
+    private double timeoutFactor = DEFAULT_TIMEOUT_FACTOR;
+    private long minimumTimeoutSeconds = DEFAULT_MINIMUM_TIMEOUT_SECONDS;
+    private volatile List<ConversionJob> activeJobs = List.of();
+    private final AtomicInteger runningJobs = new AtomicInteger();
+    private MediaProbe mediaProbe;
+    private Executor workerExecutor;
+    private ConversionMetrics metrics;
+    private JobJournal journal;
+    private boolean adaptiveConcurrency;
+
+    public BatchConverter(AudioConverter converter) {
+        this(converter, Runtime.getRuntime().availableProcessors());
+    }
+
+    public BatchConverter(AudioConverter converter, int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Concurrency must be at least 1, was " + concurrency);
+        }
+        this.converter = converter;
+        this.concurrency = concurrency;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * The jobs encoding right now, for sizing work that runs beside them.
+     */
+    public int getRunningJobs() {
+        return runningJobs.get();
+    }
+
+    /**
+     * A job may run for {@code factor} seconds per second of input audio,
+     * but never less than {@code minimumSeconds}. A factor of 0 disables
+     * timeouts.
+     */
+    public void setTimeout(double factor, long minimumSeconds) {
+        if (factor < 0 || minimumSeconds < 0) {
+            throw new IllegalArgumentException("Timeout settings must not be negative");
+        }
+        this.timeoutFactor = factor;
+        this.minimumTimeoutSeconds = minimumSeconds;
+    }
+
+    /**
+     * Lets the batch read input durations from {@code probe} instead of
+     * running ffmpeg on every file first. Pass null to use the converter's
+     * probe, or one kept in memory for the batch when it has none.
+     */
+    public void setMediaProbe(MediaProbe probe) {
+        this.mediaProbe = probe;
+    }
+
+    /**
+     * Runs the conversions on {@code executor} instead of a pool owned by
+     * each {@link #run} call; the executor then decides how many run at once.
+     * Pass null to go back to the owned pool.
+     */
+    public void setWorkerExecutor(Executor executor) {
+        this.workerExecutor = executor;
+    }
+
+    /**
+     * Records queue wait, probe and encode time, sizes and failure causes of
+     * every job to {@code metrics}. Pass null to stop recording.
+     */
+    public void setMetrics(ConversionMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Records every job's progress in {@code journal} and skips the jobs it
+     * shows as finished by an earlier run whose outputs are still there.
+     * Pass null to convert everything and keep no record.
+     */
+    public void setJournal(JobJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Lets the batch start with fewer than {@link #getConcurrency()} jobs at
+     * once and move between one and that number as throughput and system
+     * load change. With a {@link #setWorkerExecutor worker executor}, the
+     * executor may still run fewer.
+     */
+    public void setAdaptiveConcurrency(boolean adaptive) {
+        this.adaptiveConcurrency = adaptive;
+    }
+
+    /**
+     * Cancels one job of the running batch.
+     */
+    public void cancel(ConversionJob job) {
+        job.cancel();
+    }
+
+    /**
+     * Cancels every job of the running batch: queued jobs are skipped and
+     * running encodes are aborted.
+     */
+    public void cancelAll() {
+        for (ConversionJob job : activeJobs) {
+            job.cancel();
+        }
+    }
+
+    /**
+     * Converts every job and blocks until all of them have finished. A failing
+     * job is marked {@link JobStatus#FAILED} and does not stop the others.
+     */
+    public void run(List<ConversionJob> jobs, Listener listener) throws InterruptedException {
+        int total = jobs.size();
+        AtomicInteger completed = new AtomicInteger();
+        BatchProgress batchProgress = new BatchProgress(total);
+        int maximumRunning = Math.min(concurrency, Math.max(total, 1));
+        ExecutorService ownPool = workerExecutor == null
+                ? Executors.newFixedThreadPool(maximumRunning, workerThreads("convert-worker-"))
+                : null;
+        Executor workers = ownPool != null ? ownPool : workerExecutor;
+        CountDownLatch allFinished = new CountDownLatch(total);
+        ScheduledExecutorService timeouts = Executors.newSingleThreadScheduledExecutor(workerThreads("convert-timeout-"));
+        AdaptiveConcurrency limit = adaptiveConcurrency && maximumRunning > 1
+                ? new AdaptiveConcurrency(maximumRunning)
+                : null;
+        if (limit != null) {
+            concurrencyChanged(listener, limit.getLevel());
+            AtomicInteger lastLevel = new AtomicInteger(limit.getLevel());
+            timeouts.scheduleAtFixedRate(() -> {
+                int level = limit.adjust(batchProgress.audioMillisDone());
+                if (lastLevel.getAndSet(level) != level) {
+                    concurrencyChanged(listener, level);
+                }
+            }, AdaptiveConcurrency.DEFAULT_PERIOD_MILLIS, AdaptiveConcurrency.DEFAULT_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        activeJobs = jobs;
+        // one probe per job, shared with the converter's own checks
+        boolean lendProbe = mediaProbe == null && converter.getMediaProbe() == null;
+        if (lendProbe) {
+            converter.setMediaProbe(new MediaProbe(null, Runnable::run));
+        }
+
+        try {
+            List<Integer> toRun = new ArrayList<>();
+            List<String> queuedKeys = new ArrayList<>();
+            for (int index : startOrder(jobs)) {
+                ConversionJob job = jobs.get(index);
+                if (journal != null && finishedEarlier(job)) {
+                    job.resumedAsDone();
+                    batchProgress.set(index, PERMIL_DONE);
+                    listener.jobFinished(job, completed.incrementAndGet(), total);
+                    allFinished.countDown();
+                } else {
+                    toRun.add(index);
+                    queuedKeys.add(journalKey(job));
+                }
+            }
+            journalAppend(JobJournal.Event.QUEUED, queuedKeys);
+
+            for (int index : toRun) {
+                ConversionJob job = jobs.get(index);
+                long queuedAt = System.nanoTime();
+                AtomicBoolean reported = new AtomicBoolean();
+                Runnable convertJob = () -> {
+                    if (job.getCancelSignal().isCancelled()) {
+                        job.cancelled(new ConversionCancelledException(job.getCancelSignal().getReason()));
+                        record(job, -1, -1, -1, -1, null);
+                    } else {
+                        job.setStatus(JobStatus.RUNNING);
+                        listener.jobStarted(job, completed.get(), total);
+                        EncoderProgressListener progress = new EncoderProgressListener() {
+                            @Override
+                            public void sourceInfo(MultimediaInfo info) {
+                            }
+
+                            @Override
+                            public void progress(int permil) {
+                                int clamped = Math.max(0, Math.min(PERMIL_DONE, permil));
+                                double batch = batchProgress.set(index, clamped);
+                                listener.progress(job, clamped / (double) PERMIL_DONE, batch);
+                            }
+
+                            @Override
+                            public void message(String message) {
+                            }
+                        };
+                        runningJobs.incrementAndGet();
+                        try {
+                            runJob(job, progress, timeouts, System.nanoTime() - queuedAt,
+                                    durationMillis -> batchProgress.setDuration(index, durationMillis));
+                        } finally {
+                            runningJobs.decrementAndGet();
+                        }
+                    }
+                    if (job.getStatus() != JobStatus.DONE) {
+                        // a failed or cancelled job encoded nothing that counts as throughput
+                        batchProgress.setDuration(index, 0);
+                    }
+                    reported.set(true);
+                    listener.progress(job, 1.0, batchProgress.set(index, PERMIL_DONE));
+                    listener.jobFinished(job, completed.incrementAndGet(), total);
+                };
+                // done() runs whether the job ran or was dropped by the executor, so the batch never waits forever
+                FutureTask<Void> task = new FutureTask<>(convertJob, null) {
+                    @Override
+                    protected void done() {
+                        try {
+                            switch (state()) {
+                                case CANCELLED -> {
+                                    job.cancelled(new ConversionCancelledException("Dropped before it started"));
+                                    record(job, -1, -1, -1, -1, null);
+                                    reportFinished();
+                                }
+                                case FAILED -> {
+                                    Throwable error = exceptionNow();
+                                    System.err.println("Batch job for " + job.getSource().getName() + " failed: " + error);
+                                    if (reported.get()) {
+                                        // the listener threw after the job was already counted
+                                        return;
+                                    }
+                                    // thrown outside runJob's own handling, so nothing recorded it yet
+                                    job.fail(error);
+                                    journalAppend(JobJournal.Event.FAILED, List.of(journalKey(job)));
+                                    record(job, -1, -1, -1, -1, rootCauseName(error));
+                                    reportFinished();
+                                }
+                                default -> {
+                                }
+                            }
+                        } finally {
+                            if (limit != null) {
+                                limit.release();
+                            }
+                            allFinished.countDown();
+                        }
+                    }
+
+                    private void reportFinished() {
+                        batchProgress.setDuration(index, 0);
+                        listener.progress(job, 1.0, batchProgress.set(index, PERMIL_DONE));
+                        listener.jobFinished(job, completed.incrementAndGet(), total);
+                    }
+                };
+                if (limit != null) {
+                    limit.acquire();
+                }
+                try {
+                    workers.execute(task);
+                } catch (RejectedExecutionException shutDown) {
+                    task.cancel(false);
+                }
+            }
+            allFinished.await();
+        } catch (InterruptedException e) {
+            // the caller gave up on the batch, so stop the encodes rather than leave them running
+            cancelAll();
+            throw e;
+        } finally {
+            if (ownPool != null) {
+                ownPool.shutdownNow();
+            }
+            timeouts.shutdownNow();
+            activeJobs = List.of();
+            if (lendProbe) {
+                converter.setMediaProbe(null);
+            }
+        }
+    }
+
+    private void runJob(ConversionJob job, EncoderProgressListener progress, ScheduledExecutorService timeouts,
+                        long queueWaitNanos, LongConsumer durationKnown) {
+        CancelSignal signal = job.getCancelSignal();
+        journalAppend(JobJournal.Event.STARTED, List.of(journalKey(job)));
+        long probeStart = System.nanoTime();
+        long durationMillis = timeoutFactor > 0 || metrics != null || adaptiveConcurrency ? durationMillisOf(job) : -1;
+        long probeNanos = System.nanoTime() - probeStart;
+        durationKnown.accept(durationMillis);
+
+        ScheduledFuture<?> timeout = null;
+        long timeoutSeconds = timeoutSecondsFor(durationMillis);
+        if (timeoutSeconds > 0) {
+            timeout = timeouts.schedule(() -> signal.cancel("Timed out after " + timeoutSeconds + " s"),
+                    timeoutSeconds, TimeUnit.SECONDS);
+        }
+        long encodeStart = System.nanoTime();
+        String failureCause = null;
+        try {
+            if (job.getTargets().size() > 1) {
+                converter.convertToMany(job.getSource(), job.getTargets(), progress, signal);
+            } else {
+                converter.convert(job.getSource(), job.getTarget(), progress, signal);
+            }
+            job.setStatus(JobStatus.DONE);
+        } catch (ConversionCancelledException e) {
+            boolean timedOut = timeout != null && timeout.isDone();
+            if (timedOut) {
+                job.fail(e);
+                failureCause = "Timeout";
+            } else {
+                job.cancelled(e);
+            }
+        } catch (Exception e) {
+            job.fail(e);
+            failureCause = rootCauseName(e);
+        } finally {
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+        }
+        journalAppend(switch (job.getStatus()) {
+            case DONE -> JobJournal.Event.DONE;
+            case CANCELLED -> JobJournal.Event.CANCELLED;
+            default -> JobJournal.Event.FAILED;
+        }, List.of(journalKey(job)));
+        record(job, queueWaitNanos / 1_000_000, probeNanos / 1_000_000, (System.nanoTime() - encodeStart) / 1_000_000,
+                durationMillis, failureCause);
+    }
+
+    private void concurrencyChanged(Listener listener, int level) {
+        if (metrics != null) {
+            metrics.setConcurrencyLevel(level);
+        }
+        listener.concurrencyChanged(level);
+    }
+
+    /**
+     * Identifies a job across runs by its source, the source's size and
+     * modification time, and its output files and settings, so that a changed
+     * source or different settings are converted again.
+     */
+    private String journalKey(ConversionJob job) {
+        File source = job.getSource().getAbsoluteFile();
+        StringBuilder key = new StringBuilder(source.getPath())
+                .append('|').append(source.length()).append('|').append(source.lastModified());
+        for (TargetProfile target : job.getTargets()) {
+            key.append('|').append(converter.targetFileFor(source, target.formatIndex()).getAbsolutePath())
+                    .append(':').append(target.bitrate()).append(':').append(target.sampleRate())
+                    .append(':').append(target.channelIndex());
+        }
+        return key.toString();
+    }
+
+    private boolean finishedEarlier(ConversionJob job) {
+        if (!journal.isDone(journalKey(job))) {
+            return false;
+        }
+        for (TargetProfile target : job.getTargets()) {
+            if (!converter.targetFileFor(job.getSource(), target.formatIndex()).isFile()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A journal that cannot be written only costs the ability to resume, so
+     * the batch carries on.
+     */
+    private void journalAppend(JobJournal.Event event, List<String> keys) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.append(event, keys);
+        } catch (IOException e) {
+            System.err.println("Could not write to the job journal: " + e.getMessage());
+        }
+    }
+
+    private void record(ConversionJob job, long queueWaitMillis, long probeMillis, long encodeMillis, long audioMillis,
+                        String failureCause) {
+        if (metrics == null) {
+            return;
+        }
+        List<String> formats = new ArrayList<>();
+        long bytesWritten = 0;
+        for (TargetProfile target : job.getTargets()) {
+            formats.add(converter.getFormatName(target.formatIndex()));
+            if (job.getStatus() == JobStatus.DONE) {
+                bytesWritten += converter.targetFileFor(job.getSource(), target.formatIndex()).length();
+            }
+        }
+        long bytesRead = encodeMillis >= 0 ? job.getSource().length() : 0;
+        metrics.record(new ConversionMetrics.JobRecord(job.getSource(), String.join("+", formats), job.getStatus(),
+                queueWaitMillis, probeMillis, encodeMillis, audioMillis, bytesRead, bytesWritten, failureCause));
+    }
+
+    private static String rootCauseName(Throwable error) {
+        Throwable root = error;
+        while (root.getCause() != null && root.getCause() != root) {
+            root = root.getCause();
+        }
+        return root.getClass().getSimpleName();
+    }
+
+    /**
+     * Job indexes, longest input first when durations are known from the
+     * probe cache, otherwise in list order.
+     */
+    private List<Integer> startOrder(List<ConversionJob> jobs) {
+        List<Integer> order = new ArrayList<>();
+        long[] durations = new long[jobs.size()];
+        for (int i = 0; i < jobs.size(); i++) {
+            order.add(i);
+            AudioMetadata metadata = mediaProbe != null ? mediaProbe.cached(jobs.get(i).getSource()) : null;
+            durations[i] = metadata != null ? metadata.durationMillis() : 0;
+        }
+        order.sort(Comparator.comparingLong(i -> -durations[i]));
+        return order;
+    }
+
+    private long timeoutSecondsFor(long durationMillis) {
+        if (timeoutFactor <= 0) {
+            return 0;
+        }
+        if (durationMillis <= 0) {
+            return Math.max(minimumTimeoutSeconds, UNKNOWN_DURATION_TIMEOUT_SECONDS);
+        }
+        return Math.max(minimumTimeoutSeconds, (long) Math.ceil(durationMillis / 1000.0 * timeoutFactor));
+    }
+
+    /**
+     * Probes through the converter's probe when the batch has none, so the
+     * converter's passthrough and segment checks reuse the result instead of
+     * running ffmpeg on the source again.
+     */
+    private long durationMillisOf(ConversionJob job) {
+        MediaProbe probe = mediaProbe != null ? mediaProbe : converter.getMediaProbe();
+        try {
+            return probe.probe(job.getSource()).durationMillis();
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Per-job progress in permil, summed over the batch both as a share of all
+     * jobs and as milliseconds of audio encoded, for jobs of known duration.
+     */
+    private static final class BatchProgress {
+        private final AtomicIntegerArray permils;
+        private final AtomicLongArray durationMillis;
+        // what each job currently contributes to audioMillisDone
+        private final AtomicLongArray audioMillisCounted;
+        private final AtomicLong permilSum = new AtomicLong();
+        private final AtomicLong audioMillisDone = new AtomicLong();
+        private final double batchPermils;
+
+        BatchProgress(int jobs) {
+            permils = new AtomicIntegerArray(jobs);
+            durationMillis = new AtomicLongArray(jobs);
+            audioMillisCounted = new AtomicLongArray(jobs);
+            batchPermils = (double) PERMIL_DONE * Math.max(jobs, 1);
+        }
+
+        /**
+         * Also takes back audio already counted for the job, as when a failed
+         * job's duration is set to 0.
+         */
+        void setDuration(int index, long millis) {
+            durationMillis.set(index, Math.max(0, millis));
+            recount(index);
+        }
+
+        /**
+         * @return the progress of the whole batch, between 0 and 1
+         */
+        double set(int index, int permil) {
+            int delta = permil - permils.getAndSet(index, permil);
+            recount(index);
+            return permilSum.addAndGet(delta) / batchPermils;
+        }
+
+        private void recount(int index) {
+            long counted = permils.get(index) * durationMillis.get(index) / PERMIL_DONE;
+            audioMillisDone.addAndGet(counted - audioMillisCounted.getAndSet(index, counted));
+        }
+
+        long audioMillisDone() {
+            return audioMillisDone.get();
+        }
+    }
+
+    private static ThreadFactory workerThreads(String namePrefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,59 @@
+package se233.audioconverter.Converter;
+
+/**
+ * Lets another thread stop a running conversion. The converter registers how
+ * to abort whatever it is currently doing (kill ffmpeg, stop a copy loop) and
+ * {@link #cancel(String)} runs that action.
+ */
+public class CancelSignal {
+    private volatile String reason;
+    private Runnable abortAction;
+
+    /**
+     * Requests cancellation. Only the first call has an effect.
+     *
+     * @param reason shown in the resulting {@link ConversionCancelledException}
+     */
+    public void cancel(String reason) {
+        Runnable action;
+        synchronized (this) {
+            if (this.reason != null) {
+                return;
+            }
+            this.reason = reason;
+            action = abortAction;
+        }
+        if (action != null) {
+            action.run();
+        }
+    }
+
+    public boolean isCancelled() {
+        return reason != null;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * Sets the action that aborts the current step, running it straight away
+     * if cancellation was already requested. Pass null once the step is over.
+     */
+    void onCancel(Runnable action) {
+        boolean runNow;
+        synchronized (this) {
+            abortAction = action;
+            runNow = reason != null && action != null;
+        }
+        if (runNow) {
+            action.run();
+        }
+    }
+
+    void throwIfCancelled() {
+        if (reason != null) {
+            throw new ConversionCancelledException(reason);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package se233.audioconverter.Converter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * On-disk cache of finished conversions, keyed by a SHA-256 of the source
+ * bytes plus every encoding setting. A hit is served as a copy, never as a
+ * link, so editing or re-tagging an output cannot change the cached entry
+ * that later hits are served from.
+ *
+ * <p>Entries are evicted least-recently-used first once the cache grows past
+ * its size bound. The access order is kept in the files' modification times,
+ * so it survives restarts.
+ */
+public class ConversionCache {
+    public static final long DEFAULT_MAX_BYTES = 2L * 1024 * 1024 * 1024;
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path directory;
+    private final long maxBytes;
+    // access-ordered: the first entry is the least recently used one
+    private final LinkedHashMap<String, Path> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Long> sizes = new LinkedHashMap<>();
+    private long totalBytes;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public ConversionCache(Path directory, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(directory);
+        loadExistingEntries();
+    }
+
+    public static Path defaultDirectory() {
+        return Paths.get(System.getProperty("user.home"), ".audioconverter", "cache");
+    }
+
+    /**
+     * Builds the cache key for converting {@code source} with the given
+     * settings. Reads the whole source file.
+     */
+    public String keyFor(File source, String settings) throws IOException {
+        return keyFor(digestOf(source), settings);
+    }
+
+    /**
+     * Builds the cache key from a source digest made by {@link #digestOf},
+     * so that several targets of one source only read it once.
+     */
+    public String keyFor(String sourceDigest, String settings) {
+        MessageDigest digest = sha256();
+        digest.update(sourceDigest.getBytes(StandardCharsets.US_ASCII));
+        digest.update((byte) 0);
+        digest.update(settings.getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /** The SHA-256 of the source bytes in hex. Reads the whole file. */
+    public String digestOf(File source) throws IOException {
+        MessageDigest digest = sha256();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+        try (FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Places the cached output for {@code key} at {@code target}, replacing
+     * whatever is there.
+     *
+     * @return true on a cache hit, false if the caller has to encode
+     */
+    public boolean restore(String key, File target) {
+        Path cached;
+        synchronized (this) {
+            cached = entries.get(key);
+        }
+        if (cached == null) {
+            misses.incrementAndGet();
+            return false;
+        }
+        try {
+            OutputFiles.copy(cached, target);
+            Files.setLastModifiedTime(cached, FileTime.fromMillis(System.currentTimeMillis()));
+            hits.incrementAndGet();
+            return true;
+        } catch (IOException e) {
+            // most likely evicted while we were copying it
+            System.err.println("Cache entry " + key + " could not be restored: " + e.getMessage());
+            misses.incrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * Copies a freshly encoded output into the cache, evicting old entries if
+     * the size bound is exceeded. The copy is written under a temporary name
+     * and renamed into place, and the output itself is never touched, so a
+     * failure here costs the cache entry and nothing else.
+     */
+    public void store(String key, File output, String extension) throws IOException {
+        long size = output.length();
+        if (size > maxBytes) {
+            return;
+        }
+        Path entry = directory.resolve(key + "." + extension);
+        Path temp = Files.createTempFile(directory, key, TEMP_SUFFIX);
+        try {
+            Files.copy(output.toPath(), temp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        List<Path> evicted;
+        synchronized (this) {
+            Long previous = sizes.put(key, size);
+            totalBytes += size - (previous == null ? 0 : previous);
+            entries.put(key, entry);
+            evicted = evictOverflow(key);
+        }
+        deleteAll(evicted);
+    }
+
+    /**
+     * Drops least recently used entries until the cache fits its bound again.
+     * Must be called while holding the lock; the files are deleted afterwards.
+     */
+    private List<Path> evictOverflow(String keepKey) {
+        List<Path> evicted = new ArrayList<>();
+        Iterator<Map.Entry<String, Path>> eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Path> candidate = eldest.next();
+            if (candidate.getKey().equals(keepKey)) {
+                continue;
+            }
+            totalBytes -= sizes.remove(candidate.getKey());
+            evicted.add(candidate.getValue());
+            eldest.remove();
+        }
+        return evicted;
+    }
+
+    private static void deleteAll(List<Path> paths) throws IOException {
+        for (Path path : paths) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public synchronized long getSizeBytes() {
+        return totalBytes;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    private void loadExistingEntries() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                if (path.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+                    Files.deleteIfExists(path);
+                } else if (Files.isRegularFile(path)) {
+                    files.add(path);
+                }
+            }
+        }
+        files.sort(Comparator.comparing(ConversionCache::lastModified));
+        for (Path path : files) {
+            String name = path.getFileName().toString();
+            int dot = name.indexOf('.');
+            String key = dot < 0 ? name : name.substring(0, dot);
+            long size = Files.size(path);
+            entries.put(key, path);
+            sizes.put(key, size);
+            totalBytes += size;
+        }
+        deleteAll(evictOverflow(null));
+    }
+
+    private static FileTime lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package se233.audioconverter.Converter;
+
+public class ConversionCancelledException extends ConversionException {
+    private static final long serialVersionUID = 1L;
+
+    public ConversionCancelledException(String reason) {
+        super(reason, null);
+    }
+}
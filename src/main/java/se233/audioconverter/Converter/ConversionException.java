@@ -0,0 +1,9 @@
+package se233.audioconverter.Converter;
+
+public class ConversionException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public ConversionException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,92 @@
+package se233.audioconverter.Converter;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * One file of a batch together with its target settings. A job with several
+ * targets is encoded to all of them from a single decode. The status is
+ * updated by {@link BatchConverter} while the batch runs.
+ */
+public class ConversionJob {
+    private final File source;
+    private final List<TargetProfile> targets;
+    private volatile JobStatus status = JobStatus.QUEUED;
+    private volatile Throwable error;
+    private volatile boolean resumed;
+    private final CancelSignal cancelSignal = new CancelSignal();
+
+    public ConversionJob(File source, TargetProfile target) {
+        this(source, List.of(target));
+    }
+
+    public ConversionJob(File source, List<TargetProfile> targets) {
+        if (targets.isEmpty()) {
+            throw new IllegalArgumentException("A job needs at least one target");
+        }
+        this.source = source;
+        this.targets = List.copyOf(targets);
+    }
+
+    public File getSource() {
+        return source;
+    }
+
+    /**
+     * @return the first (primary) target
+     */
+    public TargetProfile getTarget() {
+        return targets.get(0);
+    }
+
+    public List<TargetProfile> getTargets() {
+        return targets;
+    }
+
+    public JobStatus getStatus() {
+        return status;
+    }
+
+    public Throwable getError() {
+        return error;
+    }
+
+    /**
+     * @return true if the job was not run because the job journal showed it
+     * finished in an earlier run
+     */
+    public boolean isResumed() {
+        return resumed;
+    }
+
+    public CancelSignal getCancelSignal() {
+        return cancelSignal;
+    }
+
+    /**
+     * Stops this job: a queued job is skipped, a running encode is aborted
+     * and its partial output deleted.
+     */
+    public void cancel() {
+        cancelSignal.cancel("Cancelled by user");
+    }
+
+    void setStatus(JobStatus status) {
+        this.status = status;
+    }
+
+    void resumedAsDone() {
+        this.resumed = true;
+        this.status = JobStatus.DONE;
+    }
+
+    void fail(Throwable error) {
+        this.error = error;
+        this.status = JobStatus.FAILED;
+    }
+
+    void cancelled(Throwable reason) {
+        this.error = reason;
+        this.status = JobStatus.CANCELLED;
+    }
+}
@@ -0,0 +1,295 @@
+package se233.audioconverter.Converter;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects per-job timings and sizes from {@link BatchConverter}. The totals
+ * are published as an MXBean and every job is appended as one JSON object
+ * per line to a log file, for later analysis.
+ */
+public class ConversionMetrics implements ConversionMetricsMXBean {
+    public static final String OBJECT_NAME = "se233.audioconverter:type=ConversionMetrics";
+
+    /**
+     * What happened to one job. Durations are in milliseconds; unknown
+     * values are -1.
+     */
+    public record JobRecord(File source, String formats, JobStatus status, long queueWaitMillis, long probeMillis,
+                            long encodeMillis, long audioMillis, long bytesRead, long bytesWritten, String failureCause) {
+
+        /** Seconds of audio per second of encoding, or 0 when either is unknown. */
+        public double realtimeFactor() {
+            return audioMillis > 0 && encodeMillis > 0 ? audioMillis / (double) encodeMillis : 0;
+        }
+    }
+
+    private final Path logFile;
+    private final LongAdder jobsDone = new LongAdder();
+    private final LongAdder jobsFailed = new LongAdder();
+    private final LongAdder jobsCancelled = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder queueWaitMillis = new LongAdder();
+    private final LongAdder probeMillis = new LongAdder();
+    private final LongAdder encodeMillis = new LongAdder();
+    private final LongAdder timedJobs = new LongAdder();
+    private final LongAdder audioMillisEncoded = new LongAdder();
+    private final LongAdder encodeMillisWithAudio = new LongAdder();
+    private final Map<String, LatencyHistogram> encodeTimeByFormat = new ConcurrentHashMap<>();
+    private final Map<String, long[]> audioAndEncodeMillisByFormat = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> failuresByCause = new ConcurrentHashMap<>();
+    private final AtomicLong firstConversionMillis = new AtomicLong(-1);
+    private volatile int concurrencyLevel;
+    private BufferedWriter log;
+
+    /**
+     * @param logFile where job records are appended as JSON lines, or null for no log
+     */
+    public ConversionMetrics(Path logFile) {
+        this.logFile = logFile;
+    }
+
+    public static Path defaultLogFile() {
+        return Paths.get(System.getProperty("user.home"), ".audioconverter", "metrics.jsonl");
+    }
+
+    /**
+     * Publishes this instance under {@link #OBJECT_NAME} in the platform
+     * MBean server, replacing an earlier registration. Failing to register
+     * is logged and otherwise ignored.
+     */
+    public void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            try {
+                server.registerMBean(this, name);
+            } catch (InstanceAlreadyExistsException e) {
+                server.unregisterMBean(name);
+                server.registerMBean(this, name);
+            }
+        } catch (JMException e) {
+            System.err.println("Could not register conversion metrics: " + e.getMessage());
+        }
+    }
+
+    public void record(JobRecord job) {
+        switch (job.status()) {
+            case DONE -> jobsDone.increment();
+            case CANCELLED -> jobsCancelled.increment();
+            default -> {
+                jobsFailed.increment();
+                failuresByCause.computeIfAbsent(String.valueOf(job.failureCause()), cause -> new LongAdder()).increment();
+            }
+        }
+        bytesRead.add(Math.max(0, job.bytesRead()));
+        bytesWritten.add(Math.max(0, job.bytesWritten()));
+        if (job.encodeMillis() >= 0) {
+            timedJobs.increment();
+            queueWaitMillis.add(Math.max(0, job.queueWaitMillis()));
+            probeMillis.add(Math.max(0, job.probeMillis()));
+            encodeMillis.add(job.encodeMillis());
+        }
+        if (job.status() == JobStatus.DONE) {
+            if (job.encodeMillis() >= 0 && firstConversionMillis.get() < 0) {
+                firstConversionMillis.compareAndSet(-1, ManagementFactory.getRuntimeMXBean().getUptime());
+            }
+            encodeTimeByFormat.computeIfAbsent(job.formats(), format -> new LatencyHistogram()).record(job.encodeMillis());
+            if (job.realtimeFactor() > 0) {
+                audioMillisEncoded.add(job.audioMillis());
+                encodeMillisWithAudio.add(job.encodeMillis());
+                long[] totals = audioAndEncodeMillisByFormat.computeIfAbsent(job.formats(), format -> new long[2]);
+                synchronized (totals) {
+                    totals[0] += job.audioMillis();
+                    totals[1] += job.encodeMillis();
+                }
+            }
+        }
+        appendToLog(job);
+    }
+
+    private synchronized void appendToLog(JobRecord job) {
+        if (logFile == null) {
+            return;
+        }
+        try {
+            if (log == null) {
+                Files.createDirectories(logFile.toAbsolutePath().getParent());
+                log = Files.newBufferedWriter(logFile, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            log.write(toJson(job));
+            log.newLine();
+            log.flush();
+        } catch (IOException e) {
+            System.err.println("Could not write conversion metrics to " + logFile + ": " + e.getMessage());
+        }
+    }
+
+    static String toJson(JobRecord job) {
+        return "{\"time\":\"" + Instant.now() + "\""
+                + ",\"source\":" + quote(job.source().getAbsolutePath())
+                + ",\"formats\":" + quote(job.formats())
+                + ",\"status\":\"" + job.status() + "\""
+                + ",\"queueWaitMs\":" + job.queueWaitMillis()
+                + ",\"probeMs\":" + job.probeMillis()
+                + ",\"encodeMs\":" + job.encodeMillis()
+                + ",\"audioMs\":" + job.audioMillis()
+                + ",\"realtimeFactor\":" + String.format(Locale.ROOT, "%.3f", job.realtimeFactor())
+                + ",\"bytesRead\":" + job.bytesRead()
+                + ",\"bytesWritten\":" + job.bytesWritten()
+                + ",\"cause\":" + (job.failureCause() == null ? "null" : quote(job.failureCause()))
+                + "}";
+    }
+
+    private static String quote(String value) {
+        StringBuilder json = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+                }
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    @Override
+    public long getJobsDone() {
+        return jobsDone.sum();
+    }
+
+    @Override
+    public long getJobsFailed() {
+        return jobsFailed.sum();
+    }
+
+    @Override
+    public long getJobsCancelled() {
+        return jobsCancelled.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    @Override
+    public double getMeanQueueWaitMillis() {
+        return mean(queueWaitMillis);
+    }
+
+    @Override
+    public double getMeanProbeMillis() {
+        return mean(probeMillis);
+    }
+
+    @Override
+    public double getMeanEncodeMillis() {
+        return mean(encodeMillis);
+    }
+
+    private double mean(LongAdder total) {
+        long count = timedJobs.sum();
+        return count == 0 ? 0 : total.sum() / (double) count;
+    }
+
+    @Override
+    public double getRealtimeFactor() {
+        long encode = encodeMillisWithAudio.sum();
+        return encode == 0 ? 0 : audioMillisEncoded.sum() / (double) encode;
+    }
+
+    @Override
+    public Map<String, Double> getRealtimeFactorByFormat() {
+        Map<String, Double> factors = new TreeMap<>();
+        audioAndEncodeMillisByFormat.forEach((format, totals) -> {
+            synchronized (totals) {
+                factors.put(format, totals[1] == 0 ? 0 : totals[0] / (double) totals[1]);
+            }
+        });
+        return factors;
+    }
+
+    @Override
+    public Map<String, String> getEncodeTimeHistogramByFormat() {
+        Map<String, String> histograms = new TreeMap<>();
+        encodeTimeByFormat.forEach((format, histogram) -> histograms.put(format, histogram.summary()));
+        return histograms;
+    }
+
+    @Override
+    public Map<String, Long> getFailuresByCause() {
+        Map<String, Long> failures = new TreeMap<>();
+        failuresByCause.forEach((cause, count) -> failures.put(cause, count.sum()));
+        return failures;
+    }
+
+    @Override
+    public long getTimeToFirstConversionMillis() {
+        return firstConversionMillis.get();
+    }
+
+    @Override
+    public long getFfmpegReadyMillis() {
+        return FfmpegStartup.getReadyMillis();
+    }
+
+    @Override
+    public long getFfmpegWarmedUpMillis() {
+        return FfmpegStartup.getWarmedUpMillis();
+    }
+
+    public void setConcurrencyLevel(int level) {
+        concurrencyLevel = level;
+    }
+
+    @Override
+    public int getConcurrencyLevel() {
+        return concurrencyLevel;
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder adder : new LongAdder[]{jobsDone, jobsFailed, jobsCancelled, bytesRead, bytesWritten,
+                queueWaitMillis, probeMillis, encodeMillis, timedJobs, audioMillisEncoded, encodeMillisWithAudio}) {
+            adder.reset();
+        }
+        encodeTimeByFormat.clear();
+        audioAndEncodeMillisByFormat.clear();
+        failuresByCause.clear();
+    }
+}
@@ -0,0 +1,53 @@
+package se233.audioconverter.Converter;
+
+import java.util.Map;
+
+/**
+ * Totals over every job recorded since start-up or the last {@link #reset()},
+ * as seen in JConsole under {@value ConversionMetrics#OBJECT_NAME}.
+ */
+public interface ConversionMetricsMXBean {
+    long getJobsDone();
+
+    long getJobsFailed();
+
+    long getJobsCancelled();
+
+    long getBytesRead();
+
+    long getBytesWritten();
+
+    double getMeanQueueWaitMillis();
+
+    double getMeanProbeMillis();
+
+    double getMeanEncodeMillis();
+
+    /** Seconds of audio converted per second of encoding, over all formats. */
+    double getRealtimeFactor();
+
+    Map<String, Double> getRealtimeFactorByFormat();
+
+    /** Encode time distribution per target format, as "n=.. p50<=..ms p95<=..ms max<=..ms". */
+    Map<String, String> getEncodeTimeHistogramByFormat();
+
+    /** Failed jobs by the simple class name of the root cause, or "Timeout". */
+    Map<String, Long> getFailuresByCause();
+
+    /**
+     * Milliseconds from JVM start until the first job converted, or -1 if
+     * none has. Skipped jobs do not count, and {@link #reset()} keeps it.
+     */
+    long getTimeToFirstConversionMillis();
+
+    /** Milliseconds from JVM start until ffmpeg was found and checked, or -1 until then. */
+    long getFfmpegReadyMillis();
+
+    /** Milliseconds from JVM start until the start-up warm-up encode finished, or -1 if it did not. */
+    long getFfmpegWarmedUpMillis();
+
+    /** Jobs allowed to run at once by the adaptive batch started last, or 0 if none was. */
+    int getConcurrencyLevel();
+
+    void reset();
+}
@@ -0,0 +1,82 @@
+package se233.audioconverter.Converter.Dsp;
+
+/**
+ * Converts between float samples in [-1, 1) and 16-, 24- or 32-bit integer
+ * samples. Going down to 16 or 24 bits can add triangular dither of one
+ * step, which turns the rounding error into a constant noise floor instead
+ * of distortion that follows the signal. 32-bit output is never dithered,
+ * since a float holds fewer significant bits than that.
+ *
+ * <p>An instance keeps the dither generator's state, so use one per thread.
+ */
+public final class BitDepthConverter {
+    // enough generator lanes for the widest float vector
+    private static final int DITHER_LANES = 16;
+
+    private final int bits;
+    private final int[] ditherState;
+
+    /**
+     * @param bits   16, 24 or 32
+     * @param dither whether to dither when quantizing to 16 or 24 bits
+     */
+    public BitDepthConverter(int bits, boolean dither) {
+        if (bits != 16 && bits != 24 && bits != 32) {
+            throw new IllegalArgumentException("Unsupported bit depth " + bits);
+        }
+        this.bits = bits;
+        this.ditherState = dither && bits < 32 ? seeds(System.nanoTime()) : null;
+    }
+
+    public int getBits() {
+        return bits;
+    }
+
+    public static void toFloat(short[] in, int inOffset, float[] out, int outOffset, int count) {
+        Kernels.SELECTED.toFloat(in, inOffset, out, outOffset, count);
+    }
+
+    /**
+     * @param bits the width of the samples in {@code in}, 24 or 32
+     */
+    public static void toFloat(int[] in, int inOffset, float[] out, int outOffset, int count, int bits) {
+        Kernels.SELECTED.toFloat(in, inOffset, out, outOffset, count, bits);
+    }
+
+    /**
+     * Rounds to 16-bit samples; only valid for a 16-bit converter.
+     */
+    public void quantize(float[] in, int inOffset, short[] out, int outOffset, int count) {
+        if (bits != 16) {
+            throw new IllegalStateException("A " + bits + "-bit converter cannot write 16-bit samples");
+        }
+        Kernels.SELECTED.quantize(in, inOffset, out, outOffset, count, ditherState);
+    }
+
+    /**
+     * Rounds to samples of this converter's width held in ints; 24-bit
+     * samples use the low 24 bits.
+     */
+    public void quantize(float[] in, int inOffset, int[] out, int outOffset, int count) {
+        Kernels.SELECTED.quantize(in, inOffset, out, outOffset, count, bits, ditherState);
+    }
+
+    /**
+     * Distinct non-zero xorshift seeds for every lane, spread by SplitMix64.
+     */
+    private static int[] seeds(long seed) {
+        int[] state = new int[DITHER_LANES];
+        for (int i = 0; i < state.length; i++) {
+            int value;
+            do {
+                seed += 0x9E3779B97F4A7C15L;
+                long z = seed;
+                z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+                z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+                value = (int) (z ^ (z >>> 31));
+            } while (value == 0);
+            state[i] = value;
+        }
+        return state;
+    }
+}
@@ -0,0 +1,53 @@
+package se233.audioconverter.Converter.Dsp;
+
+/**
+ * Channel layout changes on float samples. Interleaved buffers hold frames
+ * one after another; planar ones hold one channel each.
+ */
+public final class ChannelMixer {
+
+    private ChannelMixer() {
+    }
+
+    /**
+     * Averages the {@code channels} interleaved channels of each frame into
+     * one. Stereo input uses the vector kernel.
+     */
+    public static void toMono(float[] interleaved, int offset, int channels, float[] mono, int monoOffset, int frames) {
+        if (channels == 2) {
+            Kernels.SELECTED.stereoToMono(interleaved, offset, mono, monoOffset, frames);
+        } else if (channels == 1) {
+            System.arraycopy(interleaved, offset, mono, monoOffset, frames);
+        } else {
+            float scale = 1f / channels;
+            for (int i = 0; i < frames; i++) {
+                float sum = 0;
+                for (int c = 0; c < channels; c++) {
+                    sum += interleaved[offset + i * channels + c];
+                }
+                mono[monoOffset + i] = sum * scale;
+            }
+        }
+    }
+
+    /**
+     * Copies each mono sample to both channels of an interleaved stereo frame.
+     */
+    public static void toStereo(float[] mono, int monoOffset, float[] stereo, int stereoOffset, int frames) {
+        Kernels.SELECTED.monoToStereo(mono, monoOffset, stereo, stereoOffset, frames);
+    }
+
+    /**
+     * Splits interleaved stereo into planar left and right channels.
+     */
+    public static void split(float[] stereo, int stereoOffset, float[] left, float[] right, int planarOffset, int frames) {
+        Kernels.SELECTED.deinterleave(stereo, stereoOffset, left, right, planarOffset, frames);
+    }
+
+    /**
+     * Interleaves planar left and right channels into stereo frames.
+     */
+    public static void join(float[] left, float[] right, int planarOffset, float[] stereo, int stereoOffset, int frames) {
+        Kernels.SELECTED.interleave(left, right, planarOffset, stereo, stereoOffset, frames);
+    }
+}
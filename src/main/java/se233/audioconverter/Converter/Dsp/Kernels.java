@@ -0,0 +1,57 @@
+package se233.audioconverter.Converter.Dsp;
+
+import java.util.Optional;
+
+/**
+ * The inner loops of the DSP classes. {@link #SELECTED} is the Vector API
+ * implementation when the JVM was started with
+ * {@code --add-modules jdk.incubator.vector}, and the plain Java one
+ * otherwise. Both give the same results apart from the dither noise, except
+ * that the vector sums may round differently in the last bit.
+ *
+ * <p>Offsets and counts are in samples; nothing is allocated per call.
+ */
+interface Kernels {
+    Kernels SELECTED = select();
+
+    float dot(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+    void stereoToMono(float[] stereo, int stereoOffset, float[] mono, int monoOffset, int frames);
+
+    void monoToStereo(float[] mono, int monoOffset, float[] stereo, int stereoOffset, int frames);
+
+    void deinterleave(float[] stereo, int stereoOffset, float[] left, float[] right, int planarOffset, int frames);
+
+    void interleave(float[] left, float[] right, int planarOffset, float[] stereo, int stereoOffset, int frames);
+
+    /** 16-bit samples to floats in [-1, 1). */
+    void toFloat(short[] in, int inOffset, float[] out, int outOffset, int count);
+
+    /** {@code bits}-bit samples held in ints to floats in [-1, 1). */
+    void toFloat(int[] in, int inOffset, float[] out, int outOffset, int count, int bits);
+
+    /**
+     * Floats to 16-bit samples, rounded and clipped, with triangular dither
+     * of one step drawn from {@code ditherState} unless it is null.
+     */
+    void quantize(float[] in, int inOffset, short[] out, int outOffset, int count, int[] ditherState);
+
+    /** As {@link #quantize(float[], int, short[], int, int, int[])} for {@code bits}-bit samples held in ints. */
+    void quantize(float[] in, int inOffset, int[] out, int outOffset, int count, int bits, int[] ditherState);
+
+    private static Kernels select() {
+        Optional<Module> vector = ModuleLayer.boot().findModule("jdk.incubator.vector");
+        if (vector.isPresent()) {
+            try {
+                // VectorKernels is compiled apart from the module, which does not require the incubator module
+                Kernels.class.getModule().addReads(vector.get());
+                // loaded by name so that nothing links against the incubator module when it is absent
+                return (Kernels) Class.forName(Kernels.class.getPackageName() + ".VectorKernels")
+                        .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                System.err.println("Vector API unavailable, using scalar DSP kernels: " + e);
+            }
+        }
+        return new ScalarKernels();
+    }
+}
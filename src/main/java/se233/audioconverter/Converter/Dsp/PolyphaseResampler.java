@@ -0,0 +1,188 @@
+package se233.audioconverter.Converter.Dsp;
+
+import java.util.Arrays;
+
+/**
+ * Streaming sample rate conversion of one channel by a rational factor
+ * {@code up / down}, the two rates divided by their greatest common divisor.
+ * The windowed-sinc low-pass is split into {@code up} phases of
+ * {@link #getTaps()} coefficients each, so every output sample is one dot
+ * product over consecutive input samples.
+ *
+ * <p>The filter is centred on each output sample: output {@code j} lines up
+ * with input time {@code j * down / up}, the first output with the first
+ * input, and {@link #drain} supplies the half window of silence that the
+ * last outputs look ahead into. Apart from the coefficient table and one
+ * work buffer made in the constructor, nothing is allocated.
+ */
+public final class PolyphaseResampler {
+    private static final int BASE_TAPS = 32;
+    private static final int TAP_ALIGNMENT = 16;
+    // cutoff as a share of the lower of the two Nyquist frequencies
+    private static final double PASSBAND = 0.95;
+    private static final double KAISER_BETA = 8.6;
+    private static final int MAX_COEFFICIENTS = 1 << 21;
+
+    private final int up;
+    private final int down;
+    private final int taps;
+    private final int blockCapacity;
+    private final float[] coefficients;
+    private final float[] buffer;
+    private int filled;
+    private int position;
+    private int phase;
+
+    /**
+     * @param blockCapacity the most input samples passed to one
+     *                      {@link #process} call
+     * @throws IllegalArgumentException if the rates are not positive or their
+     *                                  ratio needs too many phases, see
+     *                                  {@link #supports}
+     */
+    public PolyphaseResampler(int inputRate, int outputRate, int blockCapacity) {
+        if (!supports(inputRate, outputRate)) {
+            throw new IllegalArgumentException("Cannot resample " + inputRate + " Hz to " + outputRate + " Hz");
+        }
+        int divisor = gcd(inputRate, outputRate);
+        this.up = outputRate / divisor;
+        this.down = inputRate / divisor;
+        this.taps = taps(up, down);
+        this.blockCapacity = Math.max(blockCapacity, taps);
+        this.coefficients = design(up, down, taps);
+        this.buffer = new float[taps + this.blockCapacity];
+        reset();
+    }
+
+    /**
+     * Whether the ratio of the two rates reduces to few enough phases for
+     * the coefficient table to stay small; 44.1 kHz to 48 kHz needs 160.
+     */
+    public static boolean supports(int inputRate, int outputRate) {
+        if (inputRate <= 0 || outputRate <= 0) {
+            return false;
+        }
+        int divisor = gcd(inputRate, outputRate);
+        return (long) (outputRate / divisor) * taps(outputRate / divisor, inputRate / divisor) <= MAX_COEFFICIENTS;
+    }
+
+    public int getTaps() {
+        return taps;
+    }
+
+    /**
+     * An upper bound on the samples one {@link #process} call with
+     * {@code inputCount} samples, or one {@link #drain}, can write.
+     */
+    public int maxOutput(int inputCount) {
+        return (int) ((long) (Math.max(inputCount, taps) + taps) * up / down) + 1;
+    }
+
+    /**
+     * Resamples up to {@code blockCapacity} input samples, writing every
+     * output sample whose window they complete.
+     *
+     * @return the number of samples written to {@code output}
+     */
+    public int process(float[] input, int offset, int count, float[] output, int outputOffset) {
+        if (count > blockCapacity) {
+            throw new IllegalArgumentException(count + " samples is more than the block capacity " + blockCapacity);
+        }
+        System.arraycopy(input, offset, buffer, filled, count);
+        filled += count;
+        return produce(output, outputOffset);
+    }
+
+    /**
+     * Feeds the half window of silence after the end of the input and writes
+     * the outputs it completes. Call {@link #reset} before reusing the
+     * resampler for another stream.
+     */
+    public int drain(float[] output, int outputOffset) {
+        int padding = taps / 2;
+        Arrays.fill(buffer, filled, filled + padding, 0f);
+        filled += padding;
+        return produce(output, outputOffset);
+    }
+
+    public void reset() {
+        // the window of the first output starts half a window before the first input
+        filled = taps / 2 - 1;
+        Arrays.fill(buffer, 0, filled, 0f);
+        position = 0;
+        phase = 0;
+    }
+
+    private int produce(float[] output, int outputOffset) {
+        Kernels kernels = Kernels.SELECTED;
+        int written = 0;
+        while (position + taps <= filled) {
+            output[outputOffset + written++] = kernels.dot(coefficients, phase * taps, buffer, position, taps);
+            phase += down;
+            position += phase / up;
+            phase %= up;
+        }
+        int keep = Math.max(filled - position, 0);
+        System.arraycopy(buffer, Math.min(position, filled), buffer, 0, keep);
+        position -= filled - keep;
+        filled = keep;
+        return written;
+    }
+
+    private static int taps(int up, int down) {
+        double cutoff = Math.min(1.0, (double) up / down);
+        int taps = (int) Math.ceil(BASE_TAPS / cutoff);
+        return (taps + TAP_ALIGNMENT - 1) / TAP_ALIGNMENT * TAP_ALIGNMENT;
+    }
+
+    /**
+     * Kaiser-windowed sinc rows, one per phase, each scaled to unity DC gain
+     * so that the phases do not ripple against each other.
+     */
+    private static float[] design(int up, int down, int taps) {
+        double cutoff = Math.min(1.0, (double) up / down) * PASSBAND;
+        double center = taps / 2 - 1;
+        double norm = besselI0(KAISER_BETA);
+        float[] table = new float[up * taps];
+        for (int p = 0; p < up; p++) {
+            double shift = (double) p / up;
+            double sum = 0;
+            double[] row = new double[taps];
+            for (int k = 0; k < taps; k++) {
+                // distance in input samples from tap k to the output instant
+                double x = k - center - shift;
+                double edge = 2 * x / (taps + 1);
+                double w = Math.abs(edge) >= 1 ? 0 : besselI0(KAISER_BETA * Math.sqrt(1 - edge * edge)) / norm;
+                double sinc = x == 0 ? 1 : Math.sin(Math.PI * cutoff * x) / (Math.PI * cutoff * x);
+                row[k] = cutoff * sinc * w;
+                sum += row[k];
+            }
+            for (int k = 0; k < taps; k++) {
+                table[p * taps + k] = (float) (row[k] / sum);
+            }
+        }
+        return table;
+    }
+
+    private static double besselI0(double x) {
+        double sum = 1;
+        double term = 1;
+        for (int k = 1; k < 50; k++) {
+            term *= (x / (2 * k)) * (x / (2 * k));
+            sum += term;
+            if (term < sum * 1e-12) {
+                break;
+            }
+        }
+        return sum;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
@@ -0,0 +1,124 @@
+package se233.audioconverter.Converter.Dsp;
+
+/**
+ * Plain Java loops, used when the Vector API is not available and for the
+ * tails the vector loops leave over.
+ */
+class ScalarKernels implements Kernels {
+
+    @Override
+    public float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public void stereoToMono(float[] stereo, int stereoOffset, float[] mono, int monoOffset, int frames) {
+        for (int i = 0; i < frames; i++) {
+            mono[monoOffset + i] = (stereo[stereoOffset + 2 * i] + stereo[stereoOffset + 2 * i + 1]) * 0.5f;
+        }
+    }
+
+    @Override
+    public void monoToStereo(float[] mono, int monoOffset, float[] stereo, int stereoOffset, int frames) {
+        for (int i = 0; i < frames; i++) {
+            float sample = mono[monoOffset + i];
+            stereo[stereoOffset + 2 * i] = sample;
+            stereo[stereoOffset + 2 * i + 1] = sample;
+        }
+    }
+
+    @Override
+    public void deinterleave(float[] stereo, int stereoOffset, float[] left, float[] right, int planarOffset, int frames) {
+        for (int i = 0; i < frames; i++) {
+            left[planarOffset + i] = stereo[stereoOffset + 2 * i];
+            right[planarOffset + i] = stereo[stereoOffset + 2 * i + 1];
+        }
+    }
+
+    @Override
+    public void interleave(float[] left, float[] right, int planarOffset, float[] stereo, int stereoOffset, int frames) {
+        for (int i = 0; i < frames; i++) {
+            stereo[stereoOffset + 2 * i] = left[planarOffset + i];
+            stereo[stereoOffset + 2 * i + 1] = right[planarOffset + i];
+        }
+    }
+
+    @Override
+    public void toFloat(short[] in, int inOffset, float[] out, int outOffset, int count) {
+        for (int i = 0; i < count; i++) {
+            out[outOffset + i] = in[inOffset + i] * (1f / 32768);
+        }
+    }
+
+    @Override
+    public void toFloat(int[] in, int inOffset, float[] out, int outOffset, int count, int bits) {
+        float scale = 1f / (1L << (bits - 1));
+        for (int i = 0; i < count; i++) {
+            out[outOffset + i] = in[inOffset + i] * scale;
+        }
+    }
+
+    @Override
+    public void quantize(float[] in, int inOffset, short[] out, int outOffset, int count, int[] ditherState) {
+        boolean dither = ditherState != null;
+        int random = dither ? ditherState[0] : 0;
+        for (int i = 0; i < count; i++) {
+            float value = in[inOffset + i] * 32768f;
+            if (dither) {
+                random = xorshift(random);
+                value += tpdf(random);
+            }
+            out[outOffset + i] = (short) round(value, 32768f);
+        }
+        if (dither) {
+            ditherState[0] = random;
+        }
+    }
+
+    @Override
+    public void quantize(float[] in, int inOffset, int[] out, int outOffset, int count, int bits, int[] ditherState) {
+        float full = 1L << (bits - 1);
+        boolean dither = ditherState != null;
+        int random = dither ? ditherState[0] : 0;
+        for (int i = 0; i < count; i++) {
+            float value = in[inOffset + i] * full;
+            if (dither) {
+                random = xorshift(random);
+                value += tpdf(random);
+            }
+            out[outOffset + i] = round(value, full);
+        }
+        if (dither) {
+            ditherState[0] = random;
+        }
+    }
+
+    /**
+     * Clips to [-full, full - 1] and rounds half up, with a floor done the
+     * same way as in the vector loop.
+     */
+    private static int round(float value, float full) {
+        // plain comparisons, as Math.min and max on floats branch on NaN and signed zero
+        value = (value < -full ? -full : value > full - 1 ? full - 1 : value) + 0.5f;
+        int rounded = (int) value;
+        return rounded > value ? rounded - 1 : rounded;
+    }
+
+    private static int xorshift(int x) {
+        x ^= x << 13;
+        x ^= x >>> 17;
+        return x ^ (x << 5);
+    }
+
+    /**
+     * Triangular noise in (-1, 1) as the difference of the two halves of one
+     * random int.
+     */
+    private static float tpdf(int random) {
+        return ((random & 0xFFFF) - (random >>> 16)) * (1f / 65536);
+    }
+}
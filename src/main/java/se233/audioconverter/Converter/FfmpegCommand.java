@@ -0,0 +1,157 @@
+package se233.audioconverter.Converter;
+
+import ws.schild.jave.process.ProcessWrapper;
+import ws.schild.jave.progress.EncoderProgressListener;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An ffmpeg command line for the cases JAVE's {@code Encoder} cannot express,
+ * such as several outputs from one input. Runs the binary JAVE bundles, as
+ * found by {@link FfmpegStartup}.
+ */
+final class FfmpegCommand {
+    private static final Pattern DURATION = Pattern.compile("Duration: (\\d+):(\\d{2}):(\\d{2}(?:\\.\\d+)?)");
+    private static final Pattern TIME = Pattern.compile("time=(\\d+):(\\d{2}):(\\d{2}(?:\\.\\d+)?)");
+    private static final int ERROR_LINES_KEPT = 10;
+
+    private final List<String> arguments = new ArrayList<>();
+
+    FfmpegCommand add(String... values) {
+        arguments.addAll(List.of(values));
+        return this;
+    }
+
+    /**
+     * Appends one audio-only output. A bitrate of 0 or less leaves the
+     * codec's default in place.
+     */
+    FfmpegCommand addAudioOutput(String codec, int bitrate, int sampleRate, int channelCount, String format, File output) {
+        add("-vn", "-acodec", codec);
+        if (bitrate > 0) {
+            add("-ab", String.valueOf(bitrate));
+        }
+        if (sampleRate > 0) {
+            add("-ar", String.valueOf(sampleRate));
+        }
+        if (channelCount > 0) {
+            add("-ac", String.valueOf(channelCount));
+        }
+        return add("-f", format, output.getAbsolutePath());
+    }
+
+    ProcessWrapper start() throws IOException {
+        ProcessWrapper ffmpeg = FfmpegStartup.ffmpeg().createExecutor();
+        for (String argument : arguments) {
+            ffmpeg.addArgument(argument);
+        }
+        ffmpeg.execute();
+        return ffmpeg;
+    }
+
+    /**
+     * Runs the command to completion, turning ffmpeg's "time=" lines into
+     * per-mille progress when the input duration is known.
+     */
+    void run(EncoderProgressListener progressListener, CancelSignal signal) throws IOException {
+        try (ProcessWrapper ffmpeg = start()) {
+            signal.onCancel(ffmpeg::destroy);
+            try {
+                awaitSuccess(ffmpeg, progressListener);
+            } finally {
+                signal.onCancel(null);
+            }
+        }
+    }
+
+    /**
+     * Runs the command with {@code input} copied to ffmpeg's stdin, for
+     * commands that read {@code -i pipe:0}. The copy runs on its own thread
+     * while this one drains stderr, so neither pipe can fill up and stall
+     * the other. Failing to read {@code input} fails the run even when ffmpeg
+     * exits cleanly on the truncated stream.
+     */
+    void run(InputStream input, EncoderProgressListener progressListener, CancelSignal signal) throws IOException {
+        try (ProcessWrapper ffmpeg = start()) {
+            signal.onCancel(ffmpeg::destroy);
+            IOException[] feedError = new IOException[1];
+            Thread feeder = Thread.ofVirtual().name("ffmpeg-stdin").start(() -> {
+                try (OutputStream stdin = ffmpeg.getOutputStream()) {
+                    input.transferTo(stdin);
+                } catch (IOException e) {
+                    feedError[0] = e;
+                }
+            });
+            try {
+                awaitSuccess(ffmpeg, progressListener);
+                feeder.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while feeding ffmpeg", e);
+            } finally {
+                signal.onCancel(null);
+            }
+            if (feedError[0] != null) {
+                throw new IOException("Input stream failed before ffmpeg finished", feedError[0]);
+            }
+        }
+    }
+
+    /**
+     * Drains ffmpeg's stderr, reporting progress, and fails if the process
+     * did not exit cleanly.
+     */
+    static void awaitSuccess(ProcessWrapper ffmpeg, EncoderProgressListener progressListener) throws IOException {
+        Deque<String> lastLines = new ArrayDeque<>();
+        double durationSeconds = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(ffmpeg.getErrorStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (lastLines.size() == ERROR_LINES_KEPT) {
+                    lastLines.removeFirst();
+                }
+                lastLines.addLast(line);
+
+                Matcher duration = DURATION.matcher(line);
+                if (durationSeconds == 0 && duration.find()) {
+                    durationSeconds = seconds(duration);
+                }
+                Matcher time = TIME.matcher(line);
+                if (progressListener != null && durationSeconds > 0 && time.find()) {
+                    int permil = (int) Math.min(1000, seconds(time) * 1000 / durationSeconds);
+                    progressListener.progress(permil);
+                }
+            }
+        }
+        int exitCode = ffmpeg.getProcessExitCode();
+        if (exitCode != 0) {
+            throw new IOException("ffmpeg exited with code " + exitCode + ": " + String.join(" | ", lastLines));
+        }
+        if (progressListener != null) {
+            progressListener.progress(1000);
+        }
+    }
+
+    private static double seconds(Matcher matcher) {
+        return Integer.parseInt(matcher.group(1)) * 3600
+                + Integer.parseInt(matcher.group(2)) * 60
+                + Double.parseDouble(matcher.group(3));
+    }
+
+    @Override
+    public String toString() {
+        return "ffmpeg " + String.join(" ", arguments);
+    }
+}
@@ -0,0 +1,213 @@
+package se233.audioconverter.Converter;
+
+import ws.schild.jave.Version;
+import ws.schild.jave.process.ProcessLocator;
+import ws.schild.jave.process.ffmpeg.DefaultFFMPEGLocator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * The ffmpeg executable every encode and probe runs, found and checked once.
+ * JAVE's own locator resolves the bundled binary again for every
+ * {@code Encoder} and {@code MultimediaObject}, and extracts it when it is
+ * missing without ever checking that an earlier extraction finished.
+ *
+ * <p>What was checked is remembered in a properties file: the path, the
+ * binary's size and modification time, its SHA-256 and the version ffmpeg
+ * reported. A binary whose size and time still match is taken as checked
+ * without reading it; one that changed is hashed, and only run again when
+ * the hash differs from the remembered one.
+ */
+public final class FfmpegLocator implements ProcessLocator {
+    private final String path;
+    private final String checksum;
+    private final String version;
+
+    private FfmpegLocator(String path, String checksum, String version) {
+        this.path = path;
+        this.checksum = checksum;
+        this.version = version;
+    }
+
+    public static Path defaultStateFile() {
+        return Paths.get(System.getProperty("user.home"), ".audioconverter", "ffmpeg.properties");
+    }
+
+    /**
+     * Finds JAVE's bundled ffmpeg, extracting it if needed, and checks it
+     * unless {@code stateFile} shows the same binary was checked before. A
+     * binary that does not run, such as one left half-extracted by an
+     * earlier run, is deleted and extracted once more.
+     *
+     * @param stateFile where the result is kept between runs, or null to check every time
+     * @throws IOException if no working ffmpeg can be found
+     */
+    public static FfmpegLocator locate(Path stateFile) throws IOException {
+        Properties state = load(stateFile);
+        File known = new File(state.getProperty("path", ""));
+        if (Version.getVersion().equals(state.getProperty("jave")) && known.isFile()
+                && String.valueOf(known.length()).equals(state.getProperty("size"))
+                && String.valueOf(known.lastModified()).equals(state.getProperty("lastModified"))) {
+            return new FfmpegLocator(known.getPath(), state.getProperty("sha256"), state.getProperty("version"));
+        }
+
+        File binary = new File(new DefaultFFMPEGLocator().getExecutablePath());
+        FfmpegLocator located;
+        try {
+            located = check(binary, state);
+        } catch (IOException broken) {
+            System.err.println("ffmpeg at " + binary + " does not run, extracting it again: " + broken.getMessage());
+            Files.deleteIfExists(binary.toPath());
+            binary = new File(new DefaultFFMPEGLocator().getExecutablePath());
+            located = check(binary, new Properties());
+        }
+        save(stateFile, located, binary);
+        return located;
+    }
+
+    /**
+     * A locator for JAVE's bundled binary as it is, for when {@link #locate}
+     * failed and the encodes are left to report what is wrong.
+     */
+    static FfmpegLocator unchecked() {
+        return new FfmpegLocator(new DefaultFFMPEGLocator().getExecutablePath(), null, null);
+    }
+
+    @Override
+    public String getExecutablePath() {
+        return path;
+    }
+
+    /** The binary's SHA-256 in hex, or null if it was not checked. */
+    public String getChecksum() {
+        return checksum;
+    }
+
+    /** The version ffmpeg reported, such as "4.4.1-static", or null if it was not checked. */
+    public String getVersion() {
+        return version;
+    }
+
+    private static FfmpegLocator check(File binary, Properties state) throws IOException {
+        String checksum = sha256(binary);
+        if (checksum.equals(state.getProperty("sha256")) && state.getProperty("version") != null) {
+            // the same binary moved or touched, it ran fine before
+            return new FfmpegLocator(binary.getPath(), checksum, state.getProperty("version"));
+        }
+        return new FfmpegLocator(binary.getPath(), checksum, run(binary));
+    }
+
+    /**
+     * Runs {@code ffmpeg -encoders} and warns about encoders the default
+     * formats need but the binary lacks; those formats will fail, the others
+     * still work.
+     *
+     * @return the reported version
+     */
+    private static String run(File binary) throws IOException {
+        Process process = new ProcessBuilder(binary.getPath(), "-encoders").redirectErrorStream(true).start();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (InputStream in = process.getInputStream()) {
+            in.transferTo(output);
+            process.waitFor();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while checking ffmpeg", e);
+        } finally {
+            process.destroy();
+        }
+
+        String version = null;
+        Set<String> missing = new LinkedHashSet<>();
+        for (FormatProfile format : FormatRegistry.defaults().profiles()) {
+            missing.addAll(format.codecs());
+        }
+        for (String line : output.toString(StandardCharsets.UTF_8).split("\n")) {
+            String[] words = line.trim().split("\\s+");
+            if (line.startsWith("ffmpeg version ") && words.length > 2) {
+                version = words[2];
+            } else if (words.length > 1 && words[0].length() == 6 && words[0].charAt(0) == 'A') {
+                missing.remove(words[1]);
+            }
+        }
+        if (process.exitValue() != 0 || version == null) {
+            throw new IOException("not a working ffmpeg, exit code " + process.exitValue());
+        }
+        if (!missing.isEmpty()) {
+            System.err.println("Warning: ffmpeg " + version + " has no " + String.join(", ", missing) + " encoder");
+        }
+        return version;
+    }
+
+    private static String sha256(File binary) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+        try (FileChannel channel = FileChannel.open(binary.toPath(), StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static Properties load(Path stateFile) {
+        Properties state = new Properties();
+        if (stateFile == null || !Files.isRegularFile(stateFile)) {
+            return state;
+        }
+        try (InputStream in = Files.newInputStream(stateFile)) {
+            state.load(in);
+        } catch (IOException e) {
+            System.err.println("Could not read " + stateFile + ": " + e.getMessage());
+        }
+        return state;
+    }
+
+    private static void save(Path stateFile, FfmpegLocator located, File binary) {
+        if (stateFile == null) {
+            return;
+        }
+        Properties state = new Properties();
+        state.setProperty("jave", Version.getVersion());
+        state.setProperty("path", located.path);
+        state.setProperty("size", String.valueOf(binary.length()));
+        state.setProperty("lastModified", String.valueOf(binary.lastModified()));
+        state.setProperty("sha256", located.checksum);
+        state.setProperty("version", located.version);
+        try {
+            Files.createDirectories(stateFile.toAbsolutePath().getParent());
+            Path temp = stateFile.resolveSibling(stateFile.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                state.store(out, "the ffmpeg binary checked last");
+            }
+            Files.move(temp, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Could not save " + stateFile + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package se233.audioconverter.Converter;
+
+import ws.schild.jave.Encoder;
+import ws.schild.jave.MultimediaObject;
+import ws.schild.jave.encode.AudioAttributes;
+import ws.schild.jave.encode.EncodingAttributes;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+/**
+ * The start-up stage the CLI and the GUI both begin with. {@link #begin()}
+ * locates and checks ffmpeg through {@link FfmpegLocator} on its own thread;
+ * everything that starts ffmpeg gets the executable from {@link #ffmpeg()},
+ * which waits for that. {@link #warmUp()} then also encodes a quarter second
+ * of silence, so that loading JAVE, the JIT's first pass over the encode
+ * path and paging in the ffmpeg binary are done before the first real job
+ * instead of during it.
+ *
+ * <p>The warm-up only pays off when there is idle time before the first
+ * job, as in the GUI while files are being picked. The CLI starts its first
+ * job right away, and a warm-up encode next to it only competes for the CPU.
+ */
+public final class FfmpegStartup {
+    private static final int WARM_UP_RATE = 44100;
+    private static final int WARM_UP_FRAMES = WARM_UP_RATE / 4;
+
+    private static CompletableFuture<FfmpegLocator> located;
+    private static CompletableFuture<Void> warmedUp;
+    private static volatile long readyMillis = -1;
+    private static volatile long warmedUpMillis = -1;
+
+    private FfmpegStartup() {
+    }
+
+    /**
+     * Starts the stage with the default state file unless it already
+     * started. Cheap to call again.
+     *
+     * @return completes with the checked executable once it is found
+     */
+    public static CompletableFuture<FfmpegLocator> begin() {
+        return begin(FfmpegLocator.defaultStateFile());
+    }
+
+    /**
+     * @param stateFile where the checked executable is remembered between
+     *                  runs, see {@link FfmpegLocator#locate}; ignored if the
+     *                  stage already started
+     */
+    public static synchronized CompletableFuture<FfmpegLocator> begin(Path stateFile) {
+        if (located != null) {
+            return located;
+        }
+        located = new CompletableFuture<>();
+        Thread.ofVirtual().name("ffmpeg-startup").start(() -> {
+            FfmpegLocator locator;
+            try {
+                locator = FfmpegLocator.locate(stateFile);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Could not check ffmpeg, using it unchecked: " + e.getMessage());
+                locator = FfmpegLocator.unchecked();
+            }
+            readyMillis = uptimeMillis();
+            located.complete(locator);
+        });
+        return located;
+    }
+
+    /**
+     * The executable to run, waiting for the stage to find it and starting
+     * the stage if nothing did yet.
+     */
+    public static FfmpegLocator ffmpeg() {
+        return begin().join();
+    }
+
+    /**
+     * Starts the stage if needed and, once ffmpeg is found, the warm-up
+     * encode, unless it already started.
+     *
+     * @return completes when the warm-up has finished or failed, which is
+     * never reported beyond a log line
+     */
+    public static synchronized CompletableFuture<Void> warmUp() {
+        if (warmedUp == null) {
+            warmedUp = begin().thenRunAsync(FfmpegStartup::encodeSilence,
+                    runnable -> Thread.ofVirtual().name("ffmpeg-warm-up").start(runnable));
+        }
+        return warmedUp;
+    }
+
+    /** Milliseconds from JVM start until ffmpeg was found and checked, or -1 until then. */
+    public static long getReadyMillis() {
+        return readyMillis;
+    }
+
+    /** Milliseconds from JVM start until the warm-up encode finished, or -1 if it did not. */
+    public static long getWarmedUpMillis() {
+        return warmedUpMillis;
+    }
+
+    static long uptimeMillis() {
+        return ManagementFactory.getRuntimeMXBean().getUptime();
+    }
+
+    private static void encodeSilence() {
+        Path directory = null;
+        try {
+            directory = Files.createTempDirectory("ffmpeg-warm-up");
+            Path silence = writeSilence(directory.resolve("silence.wav"));
+            MediaProbe.read(silence.toFile());
+
+            AudioAttributes audio = new AudioAttributes();
+            audio.setCodec(FormatRegistry.MP3.codec());
+            audio.setBitRate(FormatRegistry.MP3.defaultBitrate());
+            audio.setSamplingRate(WARM_UP_RATE);
+            audio.setChannels(2);
+            EncodingAttributes attributes = new EncodingAttributes();
+            attributes.setOutputFormat(FormatRegistry.MP3.muxer());
+            attributes.setAudioAttributes(audio);
+            FfmpegLocator locator = ffmpeg();
+            new Encoder(locator).encode(new MultimediaObject(silence.toFile(), locator),
+                    directory.resolve("silence.mp3").toFile(), attributes);
+            warmedUpMillis = uptimeMillis();
+        } catch (Exception e) {
+            System.err.println("ffmpeg warm-up failed: " + e.getMessage());
+        } finally {
+            deleteQuietly(directory);
+        }
+    }
+
+    private static Path writeSilence(Path file) throws IOException {
+        int dataBytes = WARM_UP_FRAMES * 2 * Short.BYTES;
+        ByteBuffer wav = ByteBuffer.allocate(44 + dataBytes).order(ByteOrder.LITTLE_ENDIAN);
+        wav.putInt(PcmWavFile.fourCC("RIFF")).putInt(36 + dataBytes).putInt(PcmWavFile.fourCC("WAVE"));
+        wav.putInt(PcmWavFile.fourCC("fmt ")).putInt(16).putShort((short) 1).putShort((short) 2)
+                .putInt(WARM_UP_RATE).putInt(WARM_UP_RATE * 2 * Short.BYTES).putShort((short) (2 * Short.BYTES))
+                .putShort((short) 16);
+        wav.putInt(PcmWavFile.fourCC("data")).putInt(dataBytes);
+        return Files.write(file, wav.array());
+    }
+
+    private static void deleteQuietly(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException ignored) {
+            // a few bytes left in the temp directory
+        }
+    }
+}
@@ -3,24 +3,63 @@ package se233.audioconverter.Converter;
 import java.io.File;
 
 public class FileNameManager {
+    private final FormatRegistry formats;
+
+    public FileNameManager() {
+        this(FormatRegistry.defaults());
+    }
+
+    public FileNameManager(FormatRegistry formats) {
+        this.formats = formats;
+    }
+
+    public String extensionOf(int type) {
+        return formats.get(type).extension();
+    }
+
+    /**
+     * What follows the base name of an output file, such as ".m4a". A format
+     * that shares its extension with one registered before it also gets its
+     * name, such as ".alac.m4a", so the two never write the same file.
+     */
+    public String suffixOf(int type) {
+        FormatProfile format = formats.get(type);
+        for (FormatProfile earlier : formats.profiles().subList(0, type)) {
+            if (earlier.extension().equals(format.extension())) {
+                return "." + format.name() + "." + format.extension();
+            }
+        }
+        return "." + format.extension();
+    }
 
     public File chname(String path , int type){
+        return chname(path, type, null);
+    }
+
+    /**
+     * Like {@link #chname(String, int)}, but puts the file in {@code outputDirectory}
+     * instead of next to the source when that is not null. A source already
+     * named with the format's whole suffix, such as "song.alac.m4a", keeps
+     * its base name.
+     */
+    public File chname(String path, int type, File outputDirectory) {
         File sourceFile = new File(path);
-        String[] newExtension = {"mp3" ,"wav","m4a","flac"};
         String originalFileName = sourceFile.getName();
+        String suffix = suffixOf(type);
         String baseName = "";
         int lastDotIndex = originalFileName.lastIndexOf('.');
-        if (lastDotIndex != -1) {
+        if (originalFileName.length() > suffix.length()
+                && originalFileName.regionMatches(true, originalFileName.length() - suffix.length(), suffix, 0, suffix.length())) {
+            baseName = originalFileName.substring(0, originalFileName.length() - suffix.length());
+        } else if (lastDotIndex != -1) {
             baseName = originalFileName.substring(0, lastDotIndex);
         } else {
             baseName = originalFileName;
         }
-        String parentDirectory = sourceFile.getParent();
+        String parentDirectory = outputDirectory != null ? outputDirectory.getPath() : sourceFile.getParent();
 
-        String newFilePath = parentDirectory + File.separator + baseName + "." + newExtension[type];
+        String newFilePath = parentDirectory + File.separator + baseName + suffix;
 
-        File targetFile = new File(newFilePath);
-        System.out.println(targetFile.getPath());
-        return  targetFile;
+        return new File(newFilePath);
     }
 }
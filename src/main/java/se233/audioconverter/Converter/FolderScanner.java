@@ -0,0 +1,220 @@
+package se233.audioconverter.Converter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Finds the audio files in directory trees. Every directory is listed by its
+ * own task and the files are sniffed in chunks by further tasks, so deep and
+ * wide trees are both spread over the executor. Found files are handed out
+ * chunk by chunk while the scan is still running.
+ *
+ * <p>Symbolic links are followed, to directories as well as to files; a
+ * directory reached a second time, through a link or a loop, is listed
+ * once. Entries that cannot be read are counted and reported when the scan
+ * ends.
+ */
+public class FolderScanner {
+    public static final int CHUNK_SIZE = 256;
+
+    private final Executor executor;
+    private final Set<Scan> running = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param executor runs the listing and sniffing tasks; mostly waits on the
+     *                 disk, so an I/O pool or virtual threads suit it
+     */
+    public FolderScanner(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Scans {@code roots}: directories recursively, plain files on their own.
+     *
+     * @param found called from the worker threads with each non-empty chunk of audio files
+     * @return completes with the number of audio files found once every task
+     * has finished; cancelling it stops this scan alone
+     */
+    public CompletableFuture<Integer> scan(List<Path> roots, Consumer<List<File>> found) {
+        Scan scan = new Scan(found);
+        running.add(scan);
+        scan.result.whenComplete((count, error) -> {
+            running.remove(scan);
+            if (scan.result.isCancelled()) {
+                scan.cancelled = true;
+            }
+        });
+        scan.begin();
+        try {
+            List<Path> files = new ArrayList<>();
+            for (Path root : roots) {
+                if (Files.isDirectory(root)) {
+                    scan.submit(() -> listDirectory(root, scan));
+                } else {
+                    files.add(root);
+                }
+            }
+            if (!files.isEmpty()) {
+                scan.submit(() -> sniffChunk(files, scan));
+            }
+        } finally {
+            scan.end();
+        }
+        return scan.result;
+    }
+
+    /**
+     * Stops every scan started so far from handing out work; tasks already
+     * running finish their chunk. Scans started afterwards are not affected.
+     */
+    public void cancel() {
+        for (Scan scan : running) {
+            scan.cancelled = true;
+        }
+    }
+
+    private void listDirectory(Path directory, Scan scan) throws IOException {
+        if (!scan.firstVisit(directory, Files.readAttributes(directory, BasicFileAttributes.class))) {
+            return;
+        }
+        // depth 1: files and subdirectories both arrive at visitFile, with links already followed
+        Files.walkFileTree(directory, EnumSet.of(FileVisitOption.FOLLOW_LINKS), 1, new SimpleFileVisitor<>() {
+            private List<Path> files = new ArrayList<>(CHUNK_SIZE);
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (scan.cancelled) {
+                    return FileVisitResult.TERMINATE;
+                }
+                if (attributes.isDirectory()) {
+                    scan.submit(() -> listDirectory(file, scan));
+                } else if (attributes.isRegularFile()) {
+                    files.add(file);
+                    if (files.size() == CHUNK_SIZE) {
+                        List<Path> full = files;
+                        scan.submit(() -> sniffChunk(full, scan));
+                        files = new ArrayList<>(CHUNK_SIZE);
+                    }
+                } else if (attributes.isSymbolicLink()) {
+                    // a link whose target is gone
+                    scan.skipped.incrementAndGet();
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                // a link back to a directory being listed is not unreadable, only already covered
+                if (!(e instanceof FileSystemLoopException)) {
+                    scan.skipped.incrementAndGet();
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+                if (!files.isEmpty()) {
+                    List<Path> rest = files;
+                    scan.submit(() -> sniffChunk(rest, scan));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void sniffChunk(List<Path> files, Scan scan) {
+        List<File> audio = new ArrayList<>();
+        for (Path file : files) {
+            if (scan.cancelled) {
+                break;
+            }
+            if (AudioSniffer.isAudio(file)) {
+                audio.add(file.toFile());
+            }
+        }
+        if (!audio.isEmpty() && !scan.cancelled) {
+            scan.count.addAndGet(audio.size());
+            scan.found.accept(audio);
+        }
+    }
+
+    private interface Task {
+        void run() throws IOException;
+    }
+
+    /**
+     * Counts the outstanding tasks of one scan and completes its result when
+     * the last one finishes.
+     */
+    private class Scan {
+        final Consumer<List<File>> found;
+        final CompletableFuture<Integer> result = new CompletableFuture<>();
+        final AtomicInteger pending = new AtomicInteger();
+        final AtomicInteger count = new AtomicInteger();
+        final AtomicInteger skipped = new AtomicInteger();
+        final Set<Object> listedDirectories = ConcurrentHashMap.newKeySet();
+        volatile boolean cancelled;
+
+        Scan(Consumer<List<File>> found) {
+            this.found = found;
+        }
+
+        /**
+         * @return false if the directory was already listed under another path
+         */
+        boolean firstVisit(Path directory, BasicFileAttributes attributes) throws IOException {
+            Object key = attributes.fileKey() != null ? attributes.fileKey() : directory.toRealPath();
+            return listedDirectories.add(key);
+        }
+
+        void submit(Task task) {
+            if (cancelled) {
+                return;
+            }
+            begin();
+            try {
+                executor.execute(() -> {
+                    try {
+                        task.run();
+                    } catch (IOException | RuntimeException e) {
+                        System.err.println("Folder scan: " + e.getMessage());
+                    } finally {
+                        end();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                end();
+            }
+        }
+
+        void begin() {
+            pending.incrementAndGet();
+        }
+
+        void end() {
+            if (pending.decrementAndGet() == 0) {
+                if (skipped.get() > 0) {
+                    System.err.println("Folder scan skipped " + skipped.get() + " unreadable entries");
+                }
+                result.complete(count.get());
+            }
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package se233.audioconverter.Converter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converts every audio file that lands in a hot folder. A file is taken once
+ * its size and modification time have stopped changing for the settle time,
+ * so files that are still being copied in are left alone. Taken files wait in
+ * a queue that is kept on disk, and files queued or converting when the
+ * watcher stops are picked up again on the next start, together with any
+ * file in the folder whose outputs are missing or older than it.
+ *
+ * <p>Only the folder itself is watched, not its subdirectories.
+ */
+public class FolderWatcher {
+    public static final Duration DEFAULT_SETTLE_TIME = Duration.ofSeconds(2);
+    private static final long POLL_MILLIS = 250;
+
+    public interface Listener {
+        /**
+         * Called from a worker thread when all outputs of {@code source} are written.
+         */
+        void converted(File source);
+
+        /**
+         * Called from a worker thread when {@code source} could not be converted.
+         * The file is not retried until it changes again.
+         */
+        void failed(File source, Exception error);
+    }
+
+    private record Observation(long size, long modifiedMillis, long unchangedSinceMillis) {
+    }
+
+    private final AudioConverter converter;
+    private final List<TargetProfile> targets;
+    private final Path folder;
+    private final Path queueFile;
+    private final int workers;
+    private Duration settleTime = DEFAULT_SETTLE_TIME;
+    // files seen changing that have not settled yet; only touched by the watch thread
+    private final Map<Path, Observation> settling = new HashMap<>();
+    // queued and converting files, in the order they arrived; mirrored to queueFile
+    private final Set<Path> queued = new LinkedHashSet<>();
+    private final BlockingQueue<Path> work = new LinkedBlockingQueue<>();
+    private final Set<CancelSignal> running = new LinkedHashSet<>();
+    private volatile boolean stopped;
+    private volatile WatchService watchService;
+
+    /**
+     * @param converter       does the conversions; its output directory is set to {@code outputDirectory}
+     * @param outputDirectory where the outputs go; must not be the watched folder
+     * @param queueFile       where the pending files are kept between runs
+     * @param workers         how many files are converted at once
+     */
+    public FolderWatcher(AudioConverter converter, List<TargetProfile> targets, Path folder, Path outputDirectory,
+                         Path queueFile, int workers) {
+        Path watched = folder.toAbsolutePath().normalize();
+        Path output = outputDirectory.toAbsolutePath().normalize();
+        if (watched.equals(output)) {
+            throw new IllegalArgumentException("The output directory must differ from the watched folder " + watched);
+        }
+        if (targets.isEmpty() || workers < 1) {
+            throw new IllegalArgumentException("At least one target and one worker are needed");
+        }
+        this.converter = converter;
+        this.targets = List.copyOf(targets);
+        this.folder = watched;
+        this.queueFile = queueFile;
+        this.workers = workers;
+        converter.setOutputDirectory(output.toFile());
+    }
+
+    /**
+     * The queue file for watching {@code folder}, under ~/.audioconverter,
+     * so that several watchers do not share one.
+     */
+    public static Path defaultQueueFile(Path folder) {
+        String id = Integer.toHexString(folder.toAbsolutePath().normalize().toString().hashCode());
+        return Paths.get(System.getProperty("user.home"), ".audioconverter", "watch-" + id + ".queue");
+    }
+
+    public void setSettleTime(Duration settleTime) {
+        this.settleTime = settleTime;
+    }
+
+    /**
+     * Watches the folder until {@link #stop()} is called.
+     *
+     * @throws IOException if the folder or the output directory cannot be used
+     */
+    public void run(Listener listener) throws IOException, InterruptedException {
+        stopped = false;
+        Files.createDirectories(converter.getOutputDirectory().toPath());
+        List<Thread> workerThreads = new ArrayList<>();
+        try (WatchService service = folder.getFileSystem().newWatchService()) {
+            watchService = service;
+            // register before catching up, so nothing landing in between is missed
+            folder.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            loadQueue();
+            catchUp();
+            for (int i = 1; i <= workers; i++) {
+                Thread worker = new Thread(() -> convertQueued(listener), "watch-convert-" + i);
+                worker.start();
+                workerThreads.add(worker);
+            }
+            watch(service);
+        } catch (ClosedWatchServiceException closedByStop) {
+            // stop() closes the service to wake the watch loop
+        } finally {
+            stopped = true;
+            watchService = null;
+            for (Thread worker : workerThreads) {
+                worker.interrupt();
+            }
+            for (Thread worker : workerThreads) {
+                worker.join();
+            }
+        }
+    }
+
+    /**
+     * Stops watching and cancels running conversions. Their files stay in
+     * the queue and are converted again on the next start.
+     */
+    public void stop() {
+        stopped = true;
+        synchronized (running) {
+            for (CancelSignal signal : running) {
+                signal.cancel("Watcher stopped");
+            }
+        }
+        WatchService service = watchService;
+        if (service != null) {
+            try {
+                service.close();
+            } catch (IOException ignored) {
+                // the loop also ends on the stopped flag
+            }
+        }
+    }
+
+    private void watch(WatchService service) throws InterruptedException {
+        while (!stopped) {
+            WatchKey key = service.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            if (key != null) {
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        // events were lost, so look at everything again
+                        catchUp();
+                    } else if (event.context() instanceof Path name) {
+                        settling.putIfAbsent(folder.resolve(name), new Observation(-1, -1, 0));
+                    }
+                }
+                key.reset();
+            }
+            takeSettledFiles();
+        }
+    }
+
+    /**
+     * Queues the files whose size and modification time have not changed for
+     * the settle time, and forgets files that have disappeared.
+     */
+    private void takeSettledFiles() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<Path, Observation>> entries = settling.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Path, Observation> entry = entries.next();
+            Path file = entry.getKey();
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            } catch (IOException gone) {
+                entries.remove();
+                continue;
+            }
+            if (!attributes.isRegularFile()) {
+                entries.remove();
+                continue;
+            }
+            Observation last = entry.getValue();
+            long size = attributes.size();
+            long modified = attributes.lastModifiedTime().toMillis();
+            if (size != last.size() || modified != last.modifiedMillis()) {
+                entry.setValue(new Observation(size, modified, now));
+            } else if (now - last.unchangedSinceMillis() >= settleTime.toMillis()) {
+                entries.remove();
+                if (isCandidate(file)) {
+                    enqueue(file);
+                }
+            }
+        }
+    }
+
+    private boolean isCandidate(Path file) {
+        String name = file.getFileName().toString();
+        return !name.startsWith(".") && AudioSniffer.isAudio(file);
+    }
+
+    /**
+     * Queues the files in the folder that have no up-to-date outputs yet.
+     */
+    private void catchUp() {
+        List<Path> stale = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder)) {
+            for (Path file : files) {
+                if (Files.isRegularFile(file) && isCandidate(file) && needsConversion(file)) {
+                    stale.add(file);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Could not list " + folder + ": " + e.getMessage());
+        }
+        enqueueAll(stale);
+    }
+
+    private boolean needsConversion(Path file) {
+        long sourceModified = file.toFile().lastModified();
+        for (TargetProfile target : targets) {
+            File output = converter.targetFileFor(file.toFile(), target.formatIndex());
+            if (!output.isFile() || output.lastModified() < sourceModified) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void enqueue(Path file) {
+        enqueueAll(List.of(file));
+    }
+
+    /**
+     * Queues the files not queued yet and saves the queue once for all of
+     * them, so loading or catching up on a large folder does not rewrite
+     * the queue file per file.
+     */
+    private void enqueueAll(List<Path> files) {
+        List<Path> added = new ArrayList<>();
+        synchronized (queued) {
+            for (Path file : files) {
+                if (queued.add(file)) {
+                    added.add(file);
+                }
+            }
+            if (added.isEmpty()) {
+                return;
+            }
+            saveQueue();
+        }
+        work.addAll(added);
+    }
+
+    private void convertQueued(Listener listener) {
+        while (!stopped) {
+            Path file;
+            try {
+                file = work.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            CancelSignal signal = new CancelSignal();
+            synchronized (running) {
+                running.add(signal);
+            }
+            if (stopped) {
+                signal.cancel("Watcher stopped");
+            }
+            try {
+                if (targets.size() > 1) {
+                    converter.convertToMany(file.toFile(), targets, null, signal);
+                } else {
+                    converter.convert(file.toFile(), targets.get(0), null, signal);
+                }
+                finish(file);
+                listener.converted(file.toFile());
+            } catch (ConversionCancelledException e) {
+                if (!stopped) {
+                    finish(file);
+                    listener.failed(file.toFile(), e);
+                }
+                // when stopping, the file stays queued for the next run
+            } catch (Exception e) {
+                finish(file);
+                listener.failed(file.toFile(), e);
+            } finally {
+                synchronized (running) {
+                    running.remove(signal);
+                }
+            }
+        }
+    }
+
+    private void finish(Path file) {
+        synchronized (queued) {
+            queued.remove(file);
+            saveQueue();
+        }
+    }
+
+    private void loadQueue() {
+        if (!Files.isRegularFile(queueFile)) {
+            return;
+        }
+        List<Path> pending = new ArrayList<>();
+        try {
+            for (String line : Files.readAllLines(queueFile, StandardCharsets.UTF_8)) {
+                Path file = Paths.get(line);
+                if (!line.isBlank() && Files.isRegularFile(file)) {
+                    pending.add(file);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Could not read the watch queue " + queueFile + ": " + e.getMessage());
+        }
+        enqueueAll(pending);
+    }
+
+    /**
+     * Writes the queue to a temporary file and renames it over the old one,
+     * so a crash never leaves a half-written queue behind. Called with the
+     * queue locked.
+     */
+    private void saveQueue() {
+        List<String> lines = new ArrayList<>();
+        for (Path file : queued) {
+            lines.add(file.toString());
+        }
+        try {
+            Files.createDirectories(queueFile.toAbsolutePath().getParent());
+            Path temp = queueFile.resolveSibling(queueFile.getFileName() + ".tmp");
+            Files.write(temp, lines, StandardCharsets.UTF_8);
+            Files.move(temp, queueFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Could not save the watch queue " + queueFile + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package se233.audioconverter.Converter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * One output format: how ffmpeg writes it, the settings offered for it and
+ * the settings it accepts. Immutable; the accepted sample rates are kept in
+ * a set so validation does not search the option lists.
+ *
+ * <p>Profiles are made with {@link #builder} and listed in a
+ * {@link FormatRegistry}.
+ */
+public final class FormatProfile {
+
+    /**
+     * A bitrate choice, with {@code value} in bits per second. Formats
+     * without a bitrate setting offer labelled choices describing the output
+     * instead, such as "16-bit", whose value is their position in the list.
+     */
+    public record Bitrate(int value, String label) {
+
+        public static Bitrate kbps(int kbps) {
+            return new Bitrate(kbps * 1000, kbps + " kbps");
+        }
+    }
+
+    public record SampleRate(int hertz) {
+
+        public String label() {
+            return hertz + " Hz";
+        }
+    }
+
+    private final String name;
+    private final String label;
+    private final String extension;
+    private final String muxer;
+    private final String codec;
+    private final String streamCodec;
+    private final int minBitrate;
+    private final int maxBitrate;
+    private final int defaultBitrate;
+    private final List<Bitrate> bitrates;
+    // per bitrate choice, the encoder it selects or null for the format's codec
+    private final List<String> choiceCodecs;
+    private final List<SampleRate> sampleRates;
+    private final Set<Integer> validSampleRates;
+
+    private FormatProfile(Builder builder) {
+        this.name = builder.name;
+        this.label = builder.label != null ? builder.label : name.toUpperCase(Locale.ROOT);
+        this.extension = builder.extension != null ? builder.extension : name;
+        this.muxer = builder.muxer != null ? builder.muxer : name;
+        this.codec = builder.codec;
+        this.streamCodec = builder.streamCodec != null ? builder.streamCodec : codec;
+        this.minBitrate = builder.minBitrate;
+        this.maxBitrate = builder.maxBitrate;
+        this.defaultBitrate = builder.defaultBitrate;
+        this.bitrates = List.copyOf(builder.bitrates);
+        this.choiceCodecs = new ArrayList<>(builder.choiceCodecs);
+        this.sampleRates = List.copyOf(builder.sampleRates);
+        this.validSampleRates = Set.copyOf(sampleRates.stream().map(SampleRate::hertz).toList());
+    }
+
+    /**
+     * @param name  the key for the format on the command line, in logs and in
+     *              the registry; also the default label, extension and muxer
+     * @param codec ffmpeg's name for the encoder
+     */
+    public static Builder builder(String name, String codec) {
+        return new Builder(name, codec);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /** The name shown in format pickers. */
+    public String label() {
+        return label;
+    }
+
+    /** The output file extension, without the dot. */
+    public String extension() {
+        return extension;
+    }
+
+    /** ffmpeg's name for the container, as passed to {@code -f}. */
+    public String muxer() {
+        return muxer;
+    }
+
+    /** The encoder of the first choice, and of every choice that does not name its own. */
+    public String codec() {
+        return codec;
+    }
+
+    /**
+     * The encoder a target with {@code bitrate} is written with, which for
+     * formats without a bitrate setting may depend on the choice, such as
+     * pcm_s24le for 24-bit WAV.
+     */
+    public String codecFor(int bitrate) {
+        if (hasBitrate() || bitrate < 0 || bitrate >= choiceCodecs.size() || choiceCodecs.get(bitrate) == null) {
+            return codec;
+        }
+        return choiceCodecs.get(bitrate);
+    }
+
+    /** Every encoder some choice of this format uses, {@link #codec} first. */
+    public Set<String> codecs() {
+        Set<String> codecs = new LinkedHashSet<>();
+        codecs.add(codec);
+        for (String choiceCodec : choiceCodecs) {
+            if (choiceCodec != null) {
+                codecs.add(choiceCodec);
+            }
+        }
+        return codecs;
+    }
+
+    /** The codec name ffmpeg reports when reading such a file back. */
+    public String streamCodec() {
+        return streamCodec;
+    }
+
+    /**
+     * As {@link #streamCodec} for a target with {@code bitrate}. A choice
+     * with its own encoder reads back under the encoder's name.
+     */
+    public String streamCodecFor(int bitrate) {
+        String chosen = codecFor(bitrate);
+        return chosen.equals(codec) ? streamCodec : chosen;
+    }
+
+    public boolean hasBitrate() {
+        return maxBitrate > 0;
+    }
+
+    /** The bitrate to use when none is given, 0 for formats without one. */
+    public int defaultBitrate() {
+        return defaultBitrate;
+    }
+
+    /** {@code bitrate} for formats that take one, otherwise 0 for the codec's default. */
+    public int usedBitrate(int bitrate) {
+        return hasBitrate() ? bitrate : 0;
+    }
+
+    /** The bitrate choices offered, in display order. */
+    public List<Bitrate> bitrates() {
+        return bitrates;
+    }
+
+    /** The sample rates offered and accepted, in display order. */
+    public List<SampleRate> sampleRates() {
+        return sampleRates;
+    }
+
+    public boolean supportsSampleRate(int hertz) {
+        return validSampleRates.contains(hertz);
+    }
+
+    /**
+     * @param bitrate in bits per second, or for formats without a bitrate
+     *                setting the position of the chosen label
+     */
+    public boolean isValid(int bitrate, int sampleRate) {
+        if (!supportsSampleRate(sampleRate)) {
+            return false;
+        }
+        return hasBitrate() ? bitrate >= minBitrate && bitrate <= maxBitrate : bitrate >= 0 && bitrate < bitrates.size();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    public static final class Builder {
+        private final String name;
+        private final String codec;
+        private String label;
+        private String extension;
+        private String muxer;
+        private String streamCodec;
+        private int minBitrate;
+        private int maxBitrate;
+        private int defaultBitrate;
+        private final List<Bitrate> bitrates = new ArrayList<>();
+        private final List<String> choiceCodecs = new ArrayList<>();
+        private final List<SampleRate> sampleRates = new ArrayList<>();
+
+        private Builder(String name, String codec) {
+            this.name = name;
+            this.codec = codec;
+        }
+
+        public Builder label(String label) {
+            this.label = label;
+            return this;
+        }
+
+        public Builder extension(String extension) {
+            this.extension = extension;
+            return this;
+        }
+
+        public Builder muxer(String muxer) {
+            this.muxer = muxer;
+            return this;
+        }
+
+        /** Defaults to the encoder name. */
+        public Builder streamCodec(String streamCodec) {
+            this.streamCodec = streamCodec;
+            return this;
+        }
+
+        /**
+         * Makes the format take a bitrate, accepting anything from
+         * {@code min} to {@code max} bps and offering the given kbps values.
+         */
+        public Builder bitrateRange(int min, int max, int defaultBitrate, int... offeredKbps) {
+            this.minBitrate = min;
+            this.maxBitrate = max;
+            this.defaultBitrate = defaultBitrate;
+            for (int kbps : offeredKbps) {
+                bitrates.add(Bitrate.kbps(kbps));
+                choiceCodecs.add(null);
+            }
+            return this;
+        }
+
+        /** For formats without a bitrate setting: the labels shown in its place. */
+        public Builder bitrateLabels(String... labels) {
+            for (String label : labels) {
+                labelChoice(label, null);
+            }
+            return this;
+        }
+
+        /**
+         * For formats without a bitrate setting: a label shown in its place
+         * that selects its own encoder, such as a WAV bit depth.
+         */
+        public Builder encoderChoice(String label, String codec) {
+            return labelChoice(label, codec);
+        }
+
+        public Builder sampleRates(int... hertz) {
+            for (int rate : hertz) {
+                sampleRates.add(new SampleRate(rate));
+            }
+            return this;
+        }
+
+        /**
+         * @throws IllegalStateException if no choices are offered or an
+         *                               offered bitrate is outside the range
+         */
+        public FormatProfile build() {
+            if (bitrates.isEmpty() || sampleRates.isEmpty()) {
+                throw new IllegalStateException(name + " needs at least one bitrate and sample rate choice");
+            }
+            for (int i = 0; i < bitrates.size(); i++) {
+                Bitrate bitrate = bitrates.get(i);
+                int value = bitrate.value();
+                if (maxBitrate > 0 ? value < minBitrate || value > maxBitrate : value != i) {
+                    throw new IllegalStateException(name + " offers " + bitrate.label() + " outside its bitrate range");
+                }
+            }
+            return new FormatProfile(this);
+        }
+
+        private Builder labelChoice(String label, String codec) {
+            bitrates.add(new Bitrate(bitrates.size(), label));
+            choiceCodecs.add(codec);
+            return this;
+        }
+    }
+}
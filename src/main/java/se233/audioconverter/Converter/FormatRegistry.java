@@ -0,0 +1,139 @@
+package se233.audioconverter.Converter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The output formats, in a fixed order. A format's position is the
+ * {@code formatIndex} used by {@link TargetProfile} and stored in the UI
+ * settings, so new formats go at the end. Immutable; {@link #toBuilder}
+ * starts a registry with more formats registered.
+ */
+public final class FormatRegistry {
+    public static final FormatProfile MP3 = FormatProfile.builder("mp3", "libmp3lame")
+            .streamCodec("mp3")
+            .bitrateRange(64000, 320000, 192000, 96, 128, 192, 256, 320)
+            .sampleRates(32000, 44100, 48000)
+            .build();
+    public static final FormatProfile WAV = FormatProfile.builder("wav", "pcm_s16le")
+            .bitrateLabels("16-bit")
+            .encoderChoice("24-bit", "pcm_s24le")
+            .encoderChoice("32-bit", "pcm_s32le")
+            .sampleRates(44100, 48000, 88200, 96000)
+            .build();
+    public static final FormatProfile M4A = FormatProfile.builder("m4a", "aac")
+            .muxer("ipod")
+            .bitrateRange(96000, 256000, 192000, 96, 128, 192, 256)
+            .sampleRates(44100, 48000)
+            .build();
+    public static final FormatProfile FLAC = FormatProfile.builder("flac", "flac")
+            .bitrateLabels("Lossless (Level 5)", "Lossless (Level 8)")
+            .sampleRates(44100, 48000, 88200, 96000, 192000)
+            .build();
+    // libopus only runs at these rates and is transparent at far lower bitrates than mp3
+    public static final FormatProfile OPUS = FormatProfile.builder("opus", "libopus")
+            .streamCodec("opus")
+            .bitrateRange(6000, 510000, 96000, 48, 64, 96, 128, 160)
+            .sampleRates(48000, 24000, 16000)
+            .build();
+    public static final FormatProfile OGG = FormatProfile.builder("ogg", "libvorbis")
+            .streamCodec("vorbis")
+            .bitrateRange(48000, 500000, 160000, 96, 128, 160, 192, 256)
+            .sampleRates(44100, 48000)
+            .build();
+    public static final FormatProfile ALAC = FormatProfile.builder("alac", "alac")
+            .extension("m4a")
+            .muxer("ipod")
+            .bitrateLabels("Lossless")
+            .sampleRates(44100, 48000, 88200, 96000, 192000)
+            .build();
+
+    private static final FormatRegistry DEFAULTS = builder()
+            .register(MP3).register(WAV).register(M4A).register(FLAC)
+            .register(OPUS).register(OGG).register(ALAC)
+            .build();
+
+    private final List<FormatProfile> profiles;
+    private final Map<String, Integer> indexByName;
+
+    private FormatRegistry(List<FormatProfile> profiles) {
+        this.profiles = List.copyOf(profiles);
+        Map<String, Integer> indexes = new HashMap<>();
+        for (int i = 0; i < this.profiles.size(); i++) {
+            indexes.put(this.profiles.get(i).name().toLowerCase(Locale.ROOT), i);
+        }
+        this.indexByName = Map.copyOf(indexes);
+    }
+
+    /** MP3, WAV, M4A (AAC), FLAC, Opus, Ogg Vorbis and ALAC, in that order. */
+    public static FormatRegistry defaults() {
+        return DEFAULTS;
+    }
+
+    public static Builder builder() {
+        return new Builder(List.of());
+    }
+
+    /** A builder holding this registry's formats, for registering more after them. */
+    public Builder toBuilder() {
+        return new Builder(profiles);
+    }
+
+    public int size() {
+        return profiles.size();
+    }
+
+    public FormatProfile get(int formatIndex) {
+        return profiles.get(formatIndex);
+    }
+
+    public boolean contains(int formatIndex) {
+        return formatIndex >= 0 && formatIndex < profiles.size();
+    }
+
+    /**
+     * @return the position of the format called {@code name}, ignoring case,
+     * or -1
+     */
+    public int indexOf(String name) {
+        Integer index = indexByName.get(name.toLowerCase(Locale.ROOT));
+        return index != null ? index : -1;
+    }
+
+    public List<FormatProfile> profiles() {
+        return profiles;
+    }
+
+    public List<String> names() {
+        return profiles.stream().map(FormatProfile::name).toList();
+    }
+
+    public static final class Builder {
+        private final List<FormatProfile> profiles;
+
+        private Builder(List<FormatProfile> profiles) {
+            this.profiles = new ArrayList<>(profiles);
+        }
+
+        /**
+         * @throws IllegalArgumentException if a format of the same name is
+         *                                  already registered
+         */
+        public Builder register(FormatProfile profile) {
+            for (FormatProfile registered : profiles) {
+                if (registered.name().equalsIgnoreCase(profile.name())) {
+                    throw new IllegalArgumentException("A format called " + profile.name() + " is already registered");
+                }
+            }
+            profiles.add(profile);
+            return this;
+        }
+
+        public FormatRegistry build() {
+            return new FormatRegistry(profiles);
+        }
+    }
+}
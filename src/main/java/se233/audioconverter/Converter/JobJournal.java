@@ -0,0 +1,185 @@
+package se233.audioconverter.Converter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only record of what happened to each batch job, so that a batch
+ * restarted after a crash can skip the jobs that already finished. Every
+ * line holds a timestamp, an {@link Event} and a job key, and is forced to
+ * disk before the append returns. A line torn by a crash is ignored.
+ *
+ * <p>On opening, the journal is rewritten to just the finished jobs when
+ * most of its lines have become irrelevant.
+ */
+public class JobJournal implements Closeable {
+
+    public enum Event {
+        QUEUED, STARTED, DONE, FAILED, CANCELLED
+    }
+
+    private final Path file;
+    private final Map<String, Event> lastEvents = new HashMap<>();
+    private final FileChannel channel;
+
+    /**
+     * Opens the journal at {@code file}, creating it if needed.
+     */
+    public JobJournal(Path file) throws IOException {
+        this.file = file;
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        int lines = load();
+        int done = (int) lastEvents.values().stream().filter(event -> event == Event.DONE).count();
+        if (lines > 2 * done + 1000) {
+            compact();
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        if (channel.size() > 0 && !endsWithNewline()) {
+            // finish a line torn by a crash so that it stays the only damaged one
+            write("\n");
+        }
+    }
+
+    public static Path defaultFile() {
+        return Paths.get(System.getProperty("user.home"), ".audioconverter", "journal.log");
+    }
+
+    /**
+     * @return true if the last event recorded for {@code key} was {@link Event#DONE}
+     */
+    public synchronized boolean isDone(String key) {
+        return lastEvents.get(key) == Event.DONE;
+    }
+
+    public void append(Event event, String key) throws IOException {
+        append(event, List.of(key));
+    }
+
+    /**
+     * Records {@code event} for all {@code keys} with a single write and sync.
+     */
+    public synchronized void append(Event event, List<String> keys) throws IOException {
+        if (keys.isEmpty()) {
+            return;
+        }
+        StringBuilder lines = new StringBuilder();
+        long now = System.currentTimeMillis();
+        for (String key : keys) {
+            lines.append(now).append('\t').append(event).append('\t').append(escape(key)).append('\n');
+            lastEvents.put(key, event);
+        }
+        write(lines.toString());
+        channel.force(false);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private void write(String text) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+
+    private boolean endsWithNewline() throws IOException {
+        try (FileChannel reader = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            reader.read(last, reader.size() - 1);
+            return last.get(0) == '\n';
+        }
+    }
+
+    /**
+     * Reads the journal line by line from its bytes. Each line is decoded on
+     * its own, with malformed bytes replaced rather than rejected, so a
+     * crash in the middle of a multi-byte character damages one line and not
+     * the whole journal. A last line without its newline was torn by a crash
+     * and is skipped.
+     *
+     * @return the number of lines read
+     */
+    private int load() throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return 0;
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        int lines = 0;
+        int start = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != '\n') {
+                continue;
+            }
+            // new String replaces malformed input, unlike the decoder behind readAllLines
+            parse(new String(bytes, start, i - start, StandardCharsets.UTF_8));
+            lines++;
+            start = i + 1;
+        }
+        return start < bytes.length ? lines + 1 : lines;
+    }
+
+    private void parse(String line) {
+        String[] fields = line.split("\t", 3);
+        if (fields.length < 3) {
+            return;
+        }
+        try {
+            lastEvents.put(unescape(fields[2]), Event.valueOf(fields[1]));
+        } catch (IllegalArgumentException damaged) {
+            // a torn or foreign line
+        }
+    }
+
+    /**
+     * Rewrites the journal to one line per finished job through a temporary
+     * file, so a crash during compaction leaves the old journal intact.
+     */
+    private void compact() throws IOException {
+        lastEvents.values().removeIf(event -> event != Event.DONE);
+        List<String> lines = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (String key : lastEvents.keySet()) {
+            lines.add(now + "\t" + Event.DONE + "\t" + escape(key));
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temp, lines, StandardCharsets.UTF_8);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String escape(String key) {
+        return key.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    private static String unescape(String escaped) {
+        StringBuilder key = new StringBuilder(escaped.length());
+        for (int i = 0; i < escaped.length(); i++) {
+            char c = escaped.charAt(i);
+            if (c != '\\' || i + 1 == escaped.length()) {
+                key.append(c);
+                continue;
+            }
+            char next = escaped.charAt(++i);
+            key.append(switch (next) {
+                case 't' -> '\t';
+                case 'n' -> '\n';
+                case 'r' -> '\r';
+                default -> next;
+            });
+        }
+        return key.toString();
+    }
+}
@@ -0,0 +1,9 @@
+package se233.audioconverter.Converter;
+
+public enum JobStatus {
+    QUEUED,
+    RUNNING,
+    DONE,
+    FAILED,
+    CANCELLED
+}
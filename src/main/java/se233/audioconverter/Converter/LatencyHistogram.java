@@ -0,0 +1,55 @@
+package se233.audioconverter.Converter;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts millisecond durations in power-of-two buckets: bucket 0 holds 0 ms,
+ * bucket i holds values up to 2^(i-1) ms. Percentiles are reported as the
+ * upper bound of their bucket, which is accurate to a factor of two.
+ */
+final class LatencyHistogram {
+    private static final int BUCKETS = 40;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    void record(long millis) {
+        int bucket = millis <= 0 ? 0 : Math.min(BUCKETS - 1, 65 - Long.numberOfLeadingZeros(millis - 1));
+        counts.incrementAndGet(bucket);
+    }
+
+    long count() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    long percentileMillis(double quantile) {
+        long total = count();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= Math.max(rank, 1)) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    private static long upperBound(int bucket) {
+        return bucket == 0 ? 0 : 1L << (bucket - 1);
+    }
+
+    /**
+     * For example "n=42 p50<=2048ms p95<=8192ms max<=16384ms".
+     */
+    String summary() {
+        return "n=" + count() + " p50<=" + percentileMillis(0.5) + "ms p95<=" + percentileMillis(0.95)
+                + "ms max<=" + percentileMillis(1.0) + "ms";
+    }
+}
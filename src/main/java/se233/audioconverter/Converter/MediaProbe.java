@@ -0,0 +1,220 @@
+package se233.audioconverter.Converter;
+
+import ws.schild.jave.MultimediaObject;
+import ws.schild.jave.info.AudioInfo;
+import ws.schild.jave.info.MultimediaInfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads duration, codec, sample rate and channels of input files with
+ * ffmpeg, remembering the answers by path, size and modification time so
+ * that a file is probed once, also across restarts.
+ */
+public class MediaProbe {
+    private static final int PROBE_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+    private final Path storeFile;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Executor probeExecutor;
+    private final ExecutorService ownThreads;
+    private final AtomicBoolean saveQueued = new AtomicBoolean();
+
+    private record Entry(long size, long lastModified, AudioMetadata metadata) {
+    }
+
+    /**
+     * @param storeFile where results are kept between runs, or null to keep them in memory only
+     */
+    public MediaProbe(Path storeFile) {
+        this(storeFile, null);
+    }
+
+    /**
+     * @param probeExecutor runs {@link #probeAsync} probes, or null for a few threads owned by this probe
+     */
+    public MediaProbe(Path storeFile, Executor probeExecutor) {
+        this.storeFile = storeFile;
+        if (probeExecutor == null) {
+            AtomicInteger counter = new AtomicInteger();
+            this.ownThreads = Executors.newFixedThreadPool(PROBE_THREADS, runnable -> {
+                Thread thread = new Thread(runnable, "media-probe-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.probeExecutor = ownThreads;
+        } else {
+            this.ownThreads = null;
+            this.probeExecutor = probeExecutor;
+        }
+        load();
+    }
+
+    public static Path defaultStoreFile() {
+        return Paths.get(System.getProperty("user.home"), ".audioconverter", "probe-cache.properties");
+    }
+
+    /**
+     * @return the known metadata of {@code file} as it is now, or null if it
+     * has not been probed since it last changed
+     */
+    public AudioMetadata cached(File file) {
+        Entry entry = entries.get(keyOf(file));
+        if (entry == null || entry.size() != file.length() || entry.lastModified() != file.lastModified()) {
+            return null;
+        }
+        return entry.metadata();
+    }
+
+    /**
+     * Returns the cached metadata or runs ffmpeg on {@code file}.
+     *
+     * @throws IOException if ffmpeg cannot read the file or it has no audio stream
+     */
+    public AudioMetadata probe(File file) throws IOException {
+        AudioMetadata known = cached(file);
+        if (known != null) {
+            return known;
+        }
+        long size = file.length();
+        long lastModified = file.lastModified();
+        AudioMetadata metadata = read(file);
+        entries.put(keyOf(file), new Entry(size, lastModified, metadata));
+        queueSave();
+        return metadata;
+    }
+
+    /**
+     * Runs ffmpeg on {@code file} without consulting or filling any cache.
+     */
+    public static AudioMetadata read(File file) throws IOException {
+        MultimediaInfo info;
+        try {
+            info = new MultimediaObject(file, FfmpegStartup.ffmpeg()).getInfo();
+        } catch (Exception e) {
+            throw new IOException("Cannot read " + file.getName() + ": " + e.getMessage(), e);
+        }
+        AudioInfo audio = info.getAudio();
+        if (audio == null) {
+            throw new IOException(file.getName() + " has no audio stream");
+        }
+        // ffmpeg's decoder text carries extra detail, as in "aac (LC) (mp4a / 0x6134706D)"
+        String decoder = audio.getDecoder() != null ? audio.getDecoder().trim() : "";
+        String codec = decoder.isEmpty() ? "unknown" : decoder.split(" ", 2)[0];
+        String sampleFormat = audio.getBitDepth() != null ? audio.getBitDepth() : "";
+        return new AudioMetadata(info.getDuration(), codec, audio.getSamplingRate(), audio.getChannels(), audio.getBitRate(),
+                sampleFormat);
+    }
+
+    /**
+     * Probes in the background on the probe executor, which keeps adding
+     * many files from starting many ffmpeg processes at once.
+     */
+    public CompletableFuture<AudioMetadata> probeAsync(File file) {
+        AudioMetadata known = cached(file);
+        if (known != null) {
+            return CompletableFuture.completedFuture(known);
+        }
+        CompletableFuture<AudioMetadata> result = new CompletableFuture<>();
+        probeExecutor.execute(() -> {
+            try {
+                result.complete(probe(file));
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    public void shutdown() {
+        if (ownThreads != null) {
+            ownThreads.shutdownNow();
+        }
+    }
+
+    private static String keyOf(File file) {
+        return file.getAbsolutePath();
+    }
+
+    /**
+     * Writes the store once after a run of probes rather than after each:
+     * the save is queued behind the probes already waiting.
+     */
+    private void queueSave() {
+        if (storeFile != null && saveQueued.compareAndSet(false, true)) {
+            try {
+                probeExecutor.execute(() -> {
+                    saveQueued.set(false);
+                    save();
+                });
+            } catch (RuntimeException shutDown) {
+                saveQueued.set(false);
+                save();
+            }
+        }
+    }
+
+    private void load() {
+        if (storeFile == null || !Files.isRegularFile(storeFile)) {
+            return;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(storeFile)) {
+            properties.load(in);
+        } catch (IOException e) {
+            System.err.println("Could not read probe cache " + storeFile + ": " + e.getMessage());
+            return;
+        }
+        for (String path : properties.stringPropertyNames()) {
+            // size mtime duration sampleRate channels bitRate sampleFormat codec; older lines lack the format
+            String[] fields = properties.getProperty(path).split(" ", 8);
+            if (fields.length < 8) {
+                continue;
+            }
+            try {
+                AudioMetadata metadata = new AudioMetadata(Long.parseLong(fields[2]), fields[7],
+                        Integer.parseInt(fields[3]), Integer.parseInt(fields[4]), Integer.parseInt(fields[5]),
+                        fields[6].equals("-") ? "" : fields[6]);
+                entries.put(path, new Entry(Long.parseLong(fields[0]), Long.parseLong(fields[1]), metadata));
+            } catch (NumberFormatException ignored) {
+                // a damaged line only costs one extra probe
+            }
+        }
+    }
+
+    private synchronized void save() {
+        Properties properties = new Properties();
+        entries.forEach((path, entry) -> {
+            AudioMetadata m = entry.metadata();
+            properties.setProperty(path, entry.size() + " " + entry.lastModified() + " " + m.durationMillis() + " "
+                    + m.sampleRate() + " " + m.channels() + " " + m.bitRate() + " "
+                    + (m.sampleFormat().isEmpty() ? "-" : m.sampleFormat()) + " " + m.codec());
+        });
+        try {
+            Files.createDirectories(storeFile.getParent());
+            Path temp = storeFile.resolveSibling(storeFile.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                properties.store(out, "path = size mtime duration sampleRate channels bitRate sampleFormat codec");
+            }
+            Files.move(temp, storeFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Could not save probe cache " + storeFile + ": " + e.getMessage());
+        }
+    }
+}
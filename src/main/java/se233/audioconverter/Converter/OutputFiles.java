@@ -0,0 +1,56 @@
+package se233.audioconverter.Converter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Writes outputs under a temporary name next to their final one and renames
+ * them into place when complete, so a crash or kill never leaves a truncated
+ * file that looks like a finished conversion.
+ */
+final class OutputFiles {
+
+    private OutputFiles() {
+    }
+
+    /**
+     * The hidden file an output is written to before {@link #commit}.
+     */
+    static File partFileFor(File target) {
+        File absolute = target.getAbsoluteFile();
+        return new File(absolute.getParentFile(), "." + absolute.getName() + ".part");
+    }
+
+    /**
+     * Renames the finished {@code part} file to {@code target}, replacing an
+     * older output in one step.
+     */
+    static void commit(File part, File target) throws IOException {
+        Files.move(part.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Places a copy of {@code source} at {@code target}, replacing whatever
+     * is there in one step.
+     */
+    static void copy(Path source, File target) throws IOException {
+        File part = partFileFor(target);
+        try {
+            Files.copy(source, part.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            commit(part, target);
+        } finally {
+            Files.deleteIfExists(part.toPath());
+        }
+    }
+
+    static void deleteQuietly(File file) {
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            System.err.println("Could not delete partial output " + file + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package se233.audioconverter.Converter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Header of a plain 16-, 24- or 32-bit integer PCM WAV file: where the sample
+ * data starts, how long it is and how it is laid out.
+ */
+final class PcmWavFile {
+    private static final int WAVE_FORMAT_PCM = 0x0001;
+    private static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+    private static final int HEADER_SCAN_BYTES = 64 * 1024;
+
+    final File file;
+    final int channels;
+    final int sampleRate;
+    final int bitsPerSample;
+    final long dataOffset;
+    final long dataLength;
+
+    private PcmWavFile(File file, int channels, int sampleRate, int bitsPerSample, long dataOffset, long dataLength) {
+        this.file = file;
+        this.channels = channels;
+        this.sampleRate = sampleRate;
+        this.bitsPerSample = bitsPerSample;
+        this.dataOffset = dataOffset;
+        this.dataLength = dataLength;
+    }
+
+    int sampleBytes() {
+        return bitsPerSample / 8;
+    }
+
+    int frameBytes() {
+        return channels * sampleBytes();
+    }
+
+    long frameCount() {
+        return dataLength / frameBytes();
+    }
+
+    /**
+     * Parses the RIFF chunks of {@code file}.
+     *
+     * @return the header, or null if the file is not a 16-, 24- or 32-bit
+     * integer PCM WAV file
+     */
+    static PcmWavFile read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            ByteBuffer header = ByteBuffer.allocate((int) Math.min(HEADER_SCAN_BYTES, fileSize)).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) > 0) {
+                // fill the scan window
+            }
+            header.flip();
+            if (header.remaining() < 12 || header.getInt(0) != fourCC("RIFF") || header.getInt(8) != fourCC("WAVE")) {
+                return null;
+            }
+
+            int channels = 0;
+            int sampleRate = 0;
+            int bitsPerSample = 0;
+            boolean pcm = false;
+            int position = 12;
+            while (position + 8 <= header.limit()) {
+                int chunkId = header.getInt(position);
+                long chunkSize = Integer.toUnsignedLong(header.getInt(position + 4));
+                int body = position + 8;
+
+                if (chunkId == fourCC("fmt ") && body + 16 <= header.limit()) {
+                    int formatTag = Short.toUnsignedInt(header.getShort(body));
+                    channels = Short.toUnsignedInt(header.getShort(body + 2));
+                    sampleRate = header.getInt(body + 4);
+                    bitsPerSample = Short.toUnsignedInt(header.getShort(body + 14));
+                    if (formatTag == WAVE_FORMAT_EXTENSIBLE && chunkSize >= 40 && body + 26 <= header.limit()) {
+                        formatTag = Short.toUnsignedInt(header.getShort(body + 24));
+                    }
+                    pcm = formatTag == WAVE_FORMAT_PCM
+                            && (bitsPerSample == 16 || bitsPerSample == 24 || bitsPerSample == 32);
+                } else if (chunkId == fourCC("data")) {
+                    if (!pcm || channels <= 0 || sampleRate <= 0) {
+                        return null;
+                    }
+                    // streaming writers leave the size at 0 or 0xFFFFFFFF, trust the file length then
+                    long available = fileSize - body;
+                    long dataLength = chunkSize == 0 || chunkSize > available ? available : chunkSize;
+                    dataLength -= dataLength % ((long) channels * bitsPerSample / 8);
+                    return new PcmWavFile(file, channels, sampleRate, bitsPerSample, body, dataLength);
+                }
+                position = body + (int) Math.min(chunkSize + (chunkSize & 1), Integer.MAX_VALUE - body);
+            }
+            return null;
+        }
+    }
+
+    static int fourCC(String id) {
+        return (id.charAt(0)) | (id.charAt(1) << 8) | (id.charAt(2) << 16) | (id.charAt(3) << 24);
+    }
+}
@@ -0,0 +1,421 @@
+package se233.audioconverter.Converter;
+
+import ws.schild.jave.info.MultimediaInfo;
+import ws.schild.jave.progress.EncoderProgressListener;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Encodes one long input as several time segments at once, one ffmpeg each,
+ * and joins them into a single output, so a multi-hour recording is not
+ * limited to one core.
+ *
+ * <p>Segment boundaries are whole numbers of output samples, taken on a grid
+ * that also holds whole source samples, so the cuts are exact. WAV and FLAC
+ * targets are cut as PCM and joined by ffmpeg's concat demuxer, which gives
+ * the same samples as an unsplit conversion. WAV segments are already in the
+ * target's sample format; FLAC segments keep the width the FLAC encoder
+ * would be given unsplit, so a 24-bit source stays 24-bit. MP3 and AAC
+ * encoders add priming samples and pad the last frame, so their segments
+ * are instead cut on the encoder's frame grid and encoded with a few frames
+ * of the neighbouring audio before and after. The extra frames are dropped
+ * while joining, which leaves one continuous frame sequence with the priming
+ * of the first segment only. MP3 is encoded without the bit reservoir, so no
+ * frame depends on the bytes of a dropped one.
+ */
+final class SegmentedEncoder {
+    // a segment shorter than this is not worth an ffmpeg start
+    static final long MIN_SEGMENT_MILLIS = 2 * 60 * 1000;
+    private static final int MP3_FRAME_SAMPLES = 1152;
+    private static final int AAC_FRAME_SAMPLES = 1024;
+    // the priming ffmpeg's AAC encoder puts in front of the audio
+    private static final int AAC_PRIMING_SAMPLES = 1024;
+    // audio encoded on each side of a cut so the encoder state there matches an unsplit run
+    private static final int ROLL_SAMPLES = 4 * MP3_FRAME_SAMPLES;
+    // the join gets the rest of the progress range
+    private static final int SEGMENTS_PERMIL = 950;
+    private static final int PERMIL_DONE = 1000;
+
+    private SegmentedEncoder() {
+    }
+
+    /**
+     * @param freeSlots how many ffmpeg processes may run at once without
+     *                  competing with other work for the CPU
+     * @return how many segments to split an input of this length into, 1
+     * if it is too short or there is no slot to spare
+     */
+    static int segmentCount(long durationMillis, int freeSlots) {
+        long bySize = durationMillis / MIN_SEGMENT_MILLIS;
+        return (int) Math.max(1, Math.min(freeSlots, bySize));
+    }
+
+    /**
+     * @return true for the encoders {@link #encode} can split and join
+     */
+    static boolean supports(String codec) {
+        return switch (codec) {
+            case "libmp3lame", "aac", "pcm_s16le", "pcm_s24le", "pcm_s32le", "flac" -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * Encodes {@code source} into {@code target} using {@code segments}
+     * ffmpeg processes. Temporary segment files are written next to
+     * {@code target} and removed afterwards, whatever the outcome.
+     *
+     * @param bitrate the target's bitrate setting, which also picks the
+     *                encoder of a WAV bit depth choice
+     */
+    static void encode(File source, AudioMetadata sourceInfo, File target, FormatProfile format, int bitrate,
+                       int sampleRate, int channelCount, int segments, EncoderProgressListener progressListener,
+                       CancelSignal signal) throws IOException {
+        String codec = format.codecFor(bitrate);
+        int encoderBitrate = format.usedBitrate(bitrate);
+        int frameSamples = switch (codec) {
+            case "libmp3lame" -> MP3_FRAME_SAMPLES;
+            case "aac" -> AAC_FRAME_SAMPLES;
+            default -> 1;
+        };
+        long grid = lcm(frameSamples, sampleRate / gcd(sampleRate, sourceInfo.sampleRate()));
+        long roll = roundUp(ROLL_SAMPLES, grid);
+        long totalSamples = sourceInfo.durationMillis() * sampleRate / 1000;
+        long[] bounds = new long[segments + 1];
+        for (int k = 1; k < segments; k++) {
+            bounds[k] = Math.round((double) totalSamples * k / segments / grid) * grid;
+        }
+        bounds[segments] = Long.MAX_VALUE;
+
+        String pcmCodec = codec.equals("flac") ? losslessSegmentCodec(sourceInfo) : codec;
+
+        List<File> segmentFiles = new ArrayList<>();
+        File joined = new File(target.getParentFile(), target.getName() + ".joined");
+        File concatList = new File(target.getParentFile(), target.getName() + ".concat");
+        try {
+            List<FfmpegCommand> commands = new ArrayList<>();
+            for (int k = 0; k < segments; k++) {
+                File segmentFile = new File(target.getParentFile(), target.getName() + ".seg" + k);
+                segmentFiles.add(segmentFile);
+                commands.add(segmentCommand(source, segmentFile, codec, pcmCodec, encoderBitrate, sampleRate, channelCount,
+                        bounds[k], bounds[k + 1], roll));
+            }
+            long[] segmentMillis = new long[segments];
+            for (int k = 0; k < segments; k++) {
+                long end = k == segments - 1 ? totalSamples : bounds[k + 1];
+                segmentMillis[k] = Math.max(1, (end - bounds[k]) * 1000 / sampleRate);
+            }
+            runAll(commands, segmentMillis, sourceInfo.durationMillis(), progressListener, signal);
+
+            signal.throwIfCancelled();
+            switch (codec) {
+                case "libmp3lame" -> joinFrames(segmentFiles, bounds, roll, frameSamples, target, MP3_FRAMES, signal);
+                case "aac" -> {
+                    joinFrames(segmentFiles, bounds, roll, frameSamples, joined, ADTS_FRAMES, signal);
+                    // starting the stream before zero makes the muxer hide the priming behind an edit list
+                    new FfmpegCommand().add("-y", "-itsoffset", "-" + seconds(AAC_PRIMING_SAMPLES, sampleRate),
+                                    "-f", "aac", "-i", joined.getAbsolutePath())
+                            .addAudioOutput("copy", 0, 0, 0, format.muxer(), target)
+                            .run(null, signal);
+                }
+                default -> {
+                    writeConcatList(segmentFiles, concatList);
+                    FfmpegCommand join = new FfmpegCommand()
+                            .add("-y", "-f", "concat", "-safe", "0", "-i", concatList.getAbsolutePath());
+                    if (format.muxer().equals("wav")) {
+                        join.add("-rf64", "auto");
+                    }
+                    join.addAudioOutput(codec, 0, 0, 0, format.muxer(), target).run(null, signal);
+                }
+            }
+            if (progressListener != null) {
+                progressListener.progress(PERMIL_DONE);
+            }
+        } finally {
+            for (File segmentFile : segmentFiles) {
+                OutputFiles.deleteQuietly(segmentFile);
+            }
+            OutputFiles.deleteQuietly(joined);
+            OutputFiles.deleteQuietly(concatList);
+        }
+    }
+
+    /**
+     * The ffmpeg run for output samples [start, end), plus {@code roll}
+     * samples before and, for lossy formats, after them. PCM segments are
+     * trimmed back to the exact range by ffmpeg; lossy ones keep their roll
+     * until {@link #joinFrames} drops it.
+     *
+     * <p>The input is only seeked to a whole second, which is a whole number
+     * of samples at any rate; the cut itself is made by sample count. A
+     * fractional {@code -ss} is rounded to microseconds and can start a
+     * sample early or late.
+     */
+    private static FfmpegCommand segmentCommand(File source, File segmentFile, String codec, String pcmCodec, int bitrate,
+                                                int sampleRate, int channelCount, long start, long end, long roll) {
+        boolean last = end == Long.MAX_VALUE;
+        boolean lossy = codec.equals("libmp3lame") || codec.equals("aac");
+        long inputStart = Math.max(0, start - roll);
+        long inputEnd = last ? Long.MAX_VALUE : lossy ? end + roll : end;
+        long seekSeconds = inputStart / sampleRate;
+        long seekSample = seekSeconds * sampleRate;
+        FfmpegCommand command = new FfmpegCommand().add("-y");
+        if (seekSeconds > 0) {
+            command.add("-ss", String.valueOf(seekSeconds));
+        }
+        if (!last) {
+            // read a little past the end; the trim below makes the cut exact
+            command.add("-t", String.valueOf((inputEnd - seekSample) / sampleRate + 2));
+        }
+        command.add("-i", source.getAbsolutePath());
+
+        // trim after resampling, so the sample counts are in the output rate
+        List<String> trim = new ArrayList<>();
+        long keepFrom = lossy ? inputStart : start;
+        if (keepFrom > seekSample) {
+            trim.add("start_sample=" + (keepFrom - seekSample));
+        }
+        if (!last) {
+            trim.add("end_sample=" + (inputEnd - seekSample));
+        }
+        command.add("-af", "aresample=" + sampleRate + (trim.isEmpty() ? "" : ",atrim=" + String.join(":", trim)));
+
+        return switch (codec) {
+            case "libmp3lame" -> command.add("-reservoir", "0", "-write_xing", "0", "-id3v2_version", "0")
+                    .addAudioOutput(codec, bitrate, sampleRate, channelCount, "mp3", segmentFile);
+            case "aac" -> command.addAudioOutput(codec, bitrate, sampleRate, channelCount, "adts", segmentFile);
+            // a long segment of a long recording can pass the 4 GiB a plain WAV header can describe
+            default -> command.add("-rf64", "auto")
+                    .addAudioOutput(pcmCodec, 0, sampleRate, channelCount, "wav", segmentFile);
+        };
+    }
+
+    /**
+     * The PCM codec FLAC segments are cut in. The FLAC encoder takes 16- or
+     * 32-bit samples and is handed 16-bit ones only for 8- and 16-bit
+     * sources; 24-bit, 32-bit and float sources reach it as 32-bit samples,
+     * which it writes as 24-bit FLAC. Cutting at the same width hands the
+     * encoder the same samples as an unsplit run.
+     */
+    static String losslessSegmentCodec(AudioMetadata source) {
+        String format = source.sampleFormat();
+        String codec = source.codec();
+        boolean narrow = format.equals("s16") || format.equals("s16p") || format.equals("u8") || format.equals("u8p")
+                || format.isEmpty() && (codec.startsWith("pcm_s16") || codec.equals("pcm_u8"));
+        return narrow ? "pcm_s16le" : "pcm_s32le";
+    }
+
+    /**
+     * Runs every segment on its own thread. Cancelling {@code signal}, or one
+     * segment failing, stops all of them.
+     */
+    private static void runAll(List<FfmpegCommand> commands, long[] segmentMillis, long durationMillis,
+                               EncoderProgressListener progressListener, CancelSignal signal) throws IOException {
+        List<CancelSignal> segmentSignals = new ArrayList<>();
+        for (int k = 0; k < commands.size(); k++) {
+            segmentSignals.add(new CancelSignal());
+        }
+        signal.onCancel(() -> segmentSignals.forEach(segment -> segment.cancel(signal.getReason())));
+        AtomicLongArray doneMillis = new AtomicLongArray(commands.size());
+        long totalMillis = 0;
+        for (long millis : segmentMillis) {
+            totalMillis += millis;
+        }
+        long progressTotal = totalMillis;
+
+        List<Future<?>> results = new ArrayList<>();
+        try (ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int k = 0; k < commands.size(); k++) {
+                int segment = k;
+                EncoderProgressListener segmentProgress = progressListener == null ? null : new EncoderProgressListener() {
+                    @Override
+                    public void sourceInfo(MultimediaInfo info) {
+                    }
+
+                    @Override
+                    public void progress(int permil) {
+                        // ffmpeg reports progress against the whole input's duration
+                        long done = Math.min(segmentMillis[segment], permil * durationMillis / PERMIL_DONE);
+                        doneMillis.set(segment, done);
+                        long sum = 0;
+                        for (int i = 0; i < doneMillis.length(); i++) {
+                            sum += doneMillis.get(i);
+                        }
+                        progressListener.progress((int) (sum * SEGMENTS_PERMIL / progressTotal));
+                    }
+
+                    @Override
+                    public void message(String message) {
+                    }
+                };
+                results.add(threads.submit(() -> {
+                    try {
+                        commands.get(segment).run(segmentProgress, segmentSignals.get(segment));
+                    } catch (IOException | RuntimeException e) {
+                        segmentSignals.forEach(other -> other.cancel("Another segment failed"));
+                        throw e;
+                    }
+                    return null;
+                }));
+            }
+        } finally {
+            signal.onCancel(null);
+        }
+
+        signal.throwIfCancelled();
+        for (Future<?> result : results) {
+            try {
+                result.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException io) {
+                    throw io;
+                }
+                throw new IOException("Segment encode failed", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while encoding segments", e);
+            }
+        }
+    }
+
+    /**
+     * Reads the length of the frame starting with {@code header}, or throws
+     * if it is not a frame of the expected kind.
+     */
+    interface FrameParser {
+        int headerBytes();
+
+        int frameLength(byte[] header) throws IOException;
+    }
+
+    static final FrameParser MP3_FRAMES = new FrameParser() {
+        private static final int[] BITRATES_KBPS = {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320};
+        private static final int[] SAMPLE_RATES = {44100, 48000, 32000};
+
+        @Override
+        public int headerBytes() {
+            return 4;
+        }
+
+        @Override
+        public int frameLength(byte[] header) throws IOException {
+            // MPEG-1 Layer III, which is all LAME writes at 32, 44.1 and 48 kHz
+            int bitrateIndex = (header[2] >> 4) & 0xF;
+            int rateIndex = (header[2] >> 2) & 0x3;
+            if ((header[0] & 0xFF) != 0xFF || (header[1] & 0xFE) != 0xFA
+                    || bitrateIndex == 0 || bitrateIndex >= BITRATES_KBPS.length || rateIndex == 3) {
+                throw new IOException("Not an MPEG-1 Layer III frame header");
+            }
+            int padding = (header[2] >> 1) & 0x1;
+            return 144 * BITRATES_KBPS[bitrateIndex] * 1000 / SAMPLE_RATES[rateIndex] + padding;
+        }
+    };
+
+    static final FrameParser ADTS_FRAMES = new FrameParser() {
+        @Override
+        public int headerBytes() {
+            return 7;
+        }
+
+        @Override
+        public int frameLength(byte[] header) throws IOException {
+            if ((header[0] & 0xFF) != 0xFF || (header[1] & 0xF6) != 0xF0) {
+                throw new IOException("Not an ADTS frame header");
+            }
+            return ((header[3] & 0x3) << 11) | ((header[4] & 0xFF) << 3) | ((header[5] & 0xFF) >> 5);
+        }
+    };
+
+    /**
+     * Concatenates the frames each segment contributes to the output. All
+     * segments start encoding on the same frame grid, so frame {@code roll /
+     * frameSamples} of a later segment is the one an unsplit encode would
+     * have produced right after the previous segment's last kept frame.
+     */
+    private static void joinFrames(List<File> segmentFiles, long[] bounds, long roll, int frameSamples, File target,
+                                   FrameParser parser, CancelSignal signal) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(target))) {
+            for (int k = 0; k < segmentFiles.size(); k++) {
+                long skip = k == 0 ? 0 : roll / frameSamples;
+                long keep = k == segmentFiles.size() - 1 ? Long.MAX_VALUE : (bounds[k + 1] - bounds[k]) / frameSamples;
+                try (InputStream in = new BufferedInputStream(new FileInputStream(segmentFiles.get(k)))) {
+                    copyFrames(in, out, parser, skip, keep, signal);
+                }
+            }
+        }
+    }
+
+    static void copyFrames(InputStream in, OutputStream out, FrameParser parser, long skip, long keep,
+                            CancelSignal signal) throws IOException {
+        DataInputStream frames = new DataInputStream(in);
+        byte[] buffer = new byte[8192];
+        byte[] header = new byte[parser.headerBytes()];
+        for (long index = 0; index - skip < keep; index++) {
+            int first = frames.read();
+            if (first < 0) {
+                return;
+            }
+            header[0] = (byte) first;
+            try {
+                frames.readFully(header, 1, header.length - 1);
+            } catch (EOFException truncated) {
+                return;
+            }
+            int length = parser.frameLength(header);
+            if (length < header.length || length > buffer.length) {
+                throw new IOException("Bad frame length " + length);
+            }
+            System.arraycopy(header, 0, buffer, 0, header.length);
+            frames.readFully(buffer, header.length, length - header.length);
+            if (index >= skip) {
+                out.write(buffer, 0, length);
+            }
+            if ((index & 0xFFF) == 0) {
+                signal.throwIfCancelled();
+            }
+        }
+    }
+
+    private static void writeConcatList(List<File> segmentFiles, File listFile) throws IOException {
+        StringBuilder list = new StringBuilder();
+        for (File segmentFile : segmentFiles) {
+            list.append("file '").append(segmentFile.getAbsolutePath().replace("'", "'\\''")).append("'\n");
+        }
+        Files.writeString(listFile.toPath(), list, StandardCharsets.UTF_8);
+    }
+
+    private static String seconds(long samples, int sampleRate) {
+        return String.format(Locale.ROOT, "%.6f", samples / (double) sampleRate);
+    }
+
+    private static long roundUp(long value, long multiple) {
+        return (value + multiple - 1) / multiple * multiple;
+    }
+
+    private static long gcd(long a, long b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    private static long lcm(long a, long b) {
+        return a / gcd(a, b) * b;
+    }
+}
@@ -0,0 +1,8 @@
+package se233.audioconverter.Converter;
+
+/**
+ * The encoding settings for one output file, in the same units that
+ * {@link AudioConverter#convert(java.io.File, int, int, int, int)} takes.
+ */
+public record TargetProfile(int formatIndex, int bitrate, int sampleRate, int channelIndex) {
+}
@@ -0,0 +1,362 @@
+package se233.audioconverter.Converter;
+
+import se233.audioconverter.Converter.Dsp.BitDepthConverter;
+import se233.audioconverter.Converter.Dsp.ChannelMixer;
+import se233.audioconverter.Converter.Dsp.PolyphaseResampler;
+import ws.schild.jave.progress.EncoderProgressListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Converts integer PCM WAV to integer PCM WAV without starting ffmpeg.
+ * Samples are read through memory-mapped windows of the source and
+ * processed in blocks with the {@code Dsp} kernels: the channel count is
+ * mixed down or duplicated, the sample rate is changed with a polyphase
+ * filter, and the result is quantized to the target's 16, 24 or 32 bits,
+ * with dither wherever it was mixed, filtered or narrowed.
+ *
+ * <p>The output is written through its channel rather than mapped. A mapping
+ * stays open until the buffer is garbage collected, and Windows refuses to
+ * rename a file that is still mapped, which is what committing the output
+ * does right after.
+ */
+final class WavFastPath {
+    private static final long WINDOW_BYTES = 64L << 20;
+    private static final long MAX_WAV_DATA_BYTES = 0xFFFFFFFFL - 36;
+    private static final int HEADER_BYTES = 44;
+    private static final int BLOCK_FRAMES = 4096;
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+
+    private WavFastPath() {
+    }
+
+    /**
+     * @param targetBits 16, 24 or 32
+     * @return false if the result would not fit a WAV file or the rate ratio
+     * is one the resampler does not handle, in which case nothing has been
+     * written and the caller should use ffmpeg instead
+     */
+    static boolean convert(PcmWavFile source, File target, int targetRate, int targetChannels, int targetBits,
+                           EncoderProgressListener progressListener, CancelSignal signal) throws IOException {
+        if (source.channels > 2 && targetChannels > 1) {
+            return false;
+        }
+        boolean resample = source.sampleRate != targetRate;
+        if (resample && !PolyphaseResampler.supports(source.sampleRate, targetRate)) {
+            return false;
+        }
+        int targetSampleBytes = targetBits / 8;
+        long inFrames = source.frameCount();
+        long outFrames = inFrames * targetRate / source.sampleRate;
+        long outDataBytes = outFrames * targetChannels * targetSampleBytes;
+        if (outDataBytes > MAX_WAV_DATA_BYTES) {
+            return false;
+        }
+
+        // a mono source going to stereo is only duplicated after resampling
+        int planes = Math.min(source.channels, targetChannels);
+        PolyphaseResampler[] resamplers = new PolyphaseResampler[resample ? planes : 0];
+        for (int c = 0; c < resamplers.length; c++) {
+            resamplers[c] = new PolyphaseResampler(source.sampleRate, targetRate, BLOCK_FRAMES);
+        }
+        int outCapacity = resample ? resamplers[0].maxOutput(BLOCK_FRAMES) : BLOCK_FRAMES;
+        short[] shortsIn = source.bitsPerSample == 16 ? new short[BLOCK_FRAMES * source.channels] : null;
+        int[] intsIn = source.bitsPerSample == 16 ? null : new int[BLOCK_FRAMES * source.channels];
+        float[] interleavedIn = new float[BLOCK_FRAMES * source.channels];
+        float[][] planar = new float[planes][BLOCK_FRAMES];
+        float[][] resampled = resample ? new float[planes][outCapacity] : planar;
+        float[] interleavedOut = new float[outCapacity * targetChannels];
+        SampleOutput output = new SampleOutput(targetBits, outCapacity * targetChannels,
+                // untouched samples come back exactly, so only dither what was mixed, filtered or narrowed
+                resample || targetChannels < source.channels || targetBits < source.bitsPerSample);
+
+        try (FileChannel in = FileChannel.open(source.file.toPath(), StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            MappedWindow reader = new MappedWindow(in, source.dataOffset, source.dataOffset + source.dataLength);
+            ChannelWriter writer = new ChannelWriter(out);
+            writeHeader(writer, targetRate, targetChannels, targetBits, outDataBytes);
+
+            long inOffset = source.dataOffset;
+            long outOffset = HEADER_BYTES;
+            long outEnd = HEADER_BYTES + outDataBytes;
+            int reported = -1;
+            for (long frame = 0; frame < inFrames; frame += BLOCK_FRAMES) {
+                int frames = (int) Math.min(BLOCK_FRAMES, inFrames - frame);
+                int samples = frames * source.channels;
+                if (shortsIn != null) {
+                    reader.getShorts(inOffset, shortsIn, samples);
+                    BitDepthConverter.toFloat(shortsIn, 0, interleavedIn, 0, samples);
+                } else {
+                    reader.getInts(inOffset, intsIn, samples, source.sampleBytes());
+                    BitDepthConverter.toFloat(intsIn, 0, interleavedIn, 0, samples, source.bitsPerSample);
+                }
+                inOffset += (long) samples * source.sampleBytes();
+                if (planes == 1) {
+                    ChannelMixer.toMono(interleavedIn, 0, source.channels, planar[0], 0, frames);
+                } else {
+                    ChannelMixer.split(interleavedIn, 0, planar[0], planar[1], 0, frames);
+                }
+                int produced = frames;
+                for (int c = 0; c < resamplers.length; c++) {
+                    produced = resamplers[c].process(planar[c], 0, frames, resampled[c], 0);
+                }
+                outOffset = write(writer, outOffset, outEnd, resampled, produced, targetChannels,
+                        interleavedOut, output);
+
+                signal.throwIfCancelled();
+                int permil = (int) (frame * 1000 / inFrames);
+                if (progressListener != null && permil != reported) {
+                    progressListener.progress(permil);
+                    reported = permil;
+                }
+            }
+            if (resample) {
+                int produced = 0;
+                for (int c = 0; c < resamplers.length; c++) {
+                    produced = resamplers[c].drain(resampled[c], 0);
+                }
+                outOffset = write(writer, outOffset, outEnd, resampled, produced, targetChannels,
+                        interleavedOut, output);
+            }
+            // the filter can end a frame short of the length in the header
+            for (; outOffset < outEnd; outOffset++) {
+                writer.putByte((byte) 0);
+            }
+            writer.flush();
+            out.force(false);
+        }
+        if (progressListener != null) {
+            progressListener.progress(1000);
+        }
+        return true;
+    }
+
+    /**
+     * Interleaves {@code frames} frames of the planar channels into
+     * {@code channels} output channels, quantizes them and writes as many as
+     * still fit before {@code end}.
+     *
+     * @return the offset after the last sample written
+     */
+    private static long write(ChannelWriter writer, long offset, long end, float[][] planes, int frames, int channels,
+                              float[] interleaved, SampleOutput output) throws IOException {
+        float[] samples = interleaved;
+        if (planes.length == 2) {
+            ChannelMixer.join(planes[0], planes[1], 0, interleaved, 0, frames);
+        } else if (channels == 2) {
+            ChannelMixer.toStereo(planes[0], 0, interleaved, 0, frames);
+        } else {
+            samples = planes[0];
+        }
+        int count = (int) Math.min((long) frames * channels, (end - offset) / output.sampleBytes);
+        output.write(writer, samples, count);
+        return offset + (long) count * output.sampleBytes;
+    }
+
+    private static void writeHeader(ChannelWriter writer, int sampleRate, int channels, int bits, long dataBytes)
+            throws IOException {
+        int frameBytes = channels * bits / 8;
+        writer.putInt(PcmWavFile.fourCC("RIFF"));
+        writer.putInt((int) (36 + dataBytes));
+        writer.putInt(PcmWavFile.fourCC("WAVE"));
+        writer.putInt(PcmWavFile.fourCC("fmt "));
+        writer.putInt(16);
+        writer.putShort((short) 1);
+        writer.putShort((short) channels);
+        writer.putInt(sampleRate);
+        writer.putInt(sampleRate * frameBytes);
+        writer.putShort((short) frameBytes);
+        writer.putShort((short) bits);
+        writer.putInt(PcmWavFile.fourCC("data"));
+        writer.putInt((int) dataBytes);
+    }
+
+    /**
+     * Sequential little-endian writes to a channel through one direct buffer.
+     */
+    private static final class ChannelWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+        ChannelWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void putInt(int value) throws IOException {
+            room(4).putInt(value);
+        }
+
+        void putShort(short value) throws IOException {
+            room(2).putShort(value);
+        }
+
+        void putByte(byte value) throws IOException {
+            room(1).put(value);
+        }
+
+        void putShorts(short[] from, int count) throws IOException {
+            for (int done = 0; done < count; ) {
+                int length = Math.min(count - done, room(2).remaining() / 2);
+                buffer.asShortBuffer().put(from, done, length);
+                buffer.position(buffer.position() + length * 2);
+                done += length;
+            }
+        }
+
+        /**
+         * Writes the low {@code bytes} bytes of each of the first
+         * {@code count} ints.
+         */
+        void putInts(int[] from, int count, int bytes) throws IOException {
+            if (bytes == 4) {
+                for (int done = 0; done < count; ) {
+                    int length = Math.min(count - done, room(4).remaining() / 4);
+                    buffer.asIntBuffer().put(from, done, length);
+                    buffer.position(buffer.position() + length * 4);
+                    done += length;
+                }
+                return;
+            }
+            for (int i = 0; i < count; i++) {
+                int value = from[i];
+                room(3).put((byte) value).put((byte) (value >> 8)).put((byte) (value >> 16));
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private ByteBuffer room(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+            return buffer;
+        }
+    }
+
+    /**
+     * A sliding read-only memory-mapped view over part of a file. Reads are
+     * expected to move forward.
+     */
+    private static final class MappedWindow {
+        private final FileChannel channel;
+        private final long regionStart;
+        private final long regionEnd;
+        private MappedByteBuffer buffer;
+        private ShortBuffer shorts;
+        private long bufferStart;
+        private byte[] scratch = new byte[0];
+
+        MappedWindow(FileChannel channel, long regionStart, long regionEnd) {
+            this.channel = channel;
+            this.regionStart = regionStart;
+            this.regionEnd = regionEnd;
+        }
+
+        void getShorts(long offset, short[] into, int count) {
+            for (int done = 0; done < count; ) {
+                int length = shortsMapped(offset, count - done);
+                shorts.get((int) (offset - bufferStart) / 2, into, done, length);
+                done += length;
+                offset += length * 2L;
+            }
+        }
+
+        /**
+         * Reads {@code count} little-endian samples of {@code bytes} bytes
+         * each, sign-extended into ints. Wider samples can straddle two
+         * windows, so they are gathered as bytes first.
+         */
+        void getInts(long offset, int[] into, int count, int bytes) {
+            int total = count * bytes;
+            if (scratch.length < total) {
+                scratch = new byte[total];
+            }
+            for (int done = 0; done < total; ) {
+                window(offset, 1);
+                int length = (int) Math.min(total - done, bufferStart + buffer.capacity() - offset);
+                buffer.get((int) (offset - bufferStart), scratch, done, length);
+                done += length;
+                offset += length;
+            }
+            if (bytes == 3) {
+                for (int i = 0, b = 0; i < count; i++, b += 3) {
+                    into[i] = (scratch[b] & 0xFF) | (scratch[b + 1] & 0xFF) << 8 | scratch[b + 2] << 16;
+                }
+            } else {
+                for (int i = 0, b = 0; i < count; i++, b += 4) {
+                    into[i] = (scratch[b] & 0xFF) | (scratch[b + 1] & 0xFF) << 8 | (scratch[b + 2] & 0xFF) << 16
+                            | scratch[b + 3] << 24;
+                }
+            }
+        }
+
+        private MappedByteBuffer window(long offset, int size) {
+            if (buffer == null || offset < bufferStart || offset + size > bufferStart + buffer.capacity()) {
+                long start = Math.max(regionStart, offset);
+                long length = Math.min(WINDOW_BYTES, regionEnd - start);
+                try {
+                    buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                shorts = buffer.asShortBuffer();
+                bufferStart = start;
+            }
+            return buffer;
+        }
+
+        /**
+         * Maps the window holding {@code offset} and returns how many of the
+         * next {@code wanted} shorts it holds. Offsets are even distances from
+         * the region start, so shorts never straddle two windows.
+         */
+        private int shortsMapped(long offset, int wanted) {
+            window(offset, 2);
+            return (int) Math.min(wanted, (bufferStart + buffer.capacity() - offset) / 2);
+        }
+    }
+
+    /**
+     * Quantizes float samples to the target width and writes them, through
+     * shorts for 16 bits and ints otherwise.
+     */
+    private static final class SampleOutput {
+        private final int sampleBytes;
+        private final BitDepthConverter quantizer;
+        private final short[] shorts;
+        private final int[] ints;
+
+        SampleOutput(int bits, int capacity, boolean dither) {
+            this.sampleBytes = bits / 8;
+            this.quantizer = new BitDepthConverter(bits, dither);
+            this.shorts = bits == 16 ? new short[capacity] : null;
+            this.ints = bits == 16 ? null : new int[capacity];
+        }
+
+        void write(ChannelWriter writer, float[] samples, int count) throws IOException {
+            if (shorts != null) {
+                quantizer.quantize(samples, 0, shorts, 0, count);
+                writer.putShorts(shorts, count);
+            } else {
+                quantizer.quantize(samples, 0, ints, 0, count);
+                writer.putInts(ints, count, sampleBytes);
+            }
+        }
+    }
+}
@@ -2,8 +2,6 @@ package se233.audioconverter;
 
 import javafx.animation.PauseTransition;
 import javafx.application.Platform;
-import javafx.beans.property.SimpleStringProperty;
-import javafx.beans.property.StringProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
@@ -14,31 +12,63 @@ import javafx.scene.control.*;
 import javafx.scene.input.Dragboard;
 import javafx.scene.input.TransferMode;
 import javafx.scene.layout.*;
+import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 import javafx.stage.StageStyle;
 import javafx.util.Duration;
 import se233.audioconverter.Converter.AudioConverter;
+import se233.audioconverter.Converter.BatchConverter;
+import se233.audioconverter.Converter.ConversionCache;
+import se233.audioconverter.Converter.ConversionJob;
+import se233.audioconverter.Converter.ConversionMetrics;
+import se233.audioconverter.Converter.FolderScanner;
+import se233.audioconverter.Converter.FormatProfile;
+import se233.audioconverter.Converter.FormatRegistry;
+import se233.audioconverter.Converter.JobJournal;
+import se233.audioconverter.Converter.JobStatus;
+import se233.audioconverter.Converter.MediaProbe;
+import se233.audioconverter.Converter.TargetProfile;
+import se233.audioconverter.Downloader.DownloadItem;
+import se233.audioconverter.Downloader.DownloadQueue;
+import se233.audioconverter.Downloader.DownloadStatus;
+import se233.audioconverter.Jobs.JobKind;
+import se233.audioconverter.Jobs.JobScheduler;
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static se233.audioconverter.YoutubeToMp3RapidApiUtil.*;
 
 public class ConverterController {
-    private static class FileSettings {
-        StringProperty format = new SimpleStringProperty();
-        StringProperty bitrate = new SimpleStringProperty();
-        StringProperty sampleRate = new SimpleStringProperty();
-        StringProperty channels = new SimpleStringProperty();
-    }
+    // files added from one drop or dialog are published to the list this many at a time
+    private static final int ADD_BATCH_SIZE = 500;
 
-    private final Map<File, FileSettings> fileSettingsMap = new HashMap<>();
+    private final FileSettingsStore fileSettings = new FileSettingsStore();
 
-    private final ObservableList<String> formatOptions = FXCollections.observableArrayList("MP3", "WAV", "M4A", "FLAC");
+    /** The default settings for new files, as codes for {@link FileSettingsStore}. */
+    private record DefaultSettings(int format, int bitrate, int sampleRate, int channels) {
+    }
+    private ConversionCache conversionCache;
+    private JobJournal jobJournal;
+    private final JobScheduler jobScheduler = new JobScheduler();
+    private final MediaProbe mediaProbe = new MediaProbe(MediaProbe.defaultStoreFile(),
+            jobScheduler.executor("Probe", JobKind.IO, JobScheduler.PRIORITY_LOW));
+    private final FolderScanner folderScanner = new FolderScanner(
+            jobScheduler.executor("Scan folder", JobKind.IO, JobScheduler.PRIORITY_HIGH));
+    private final ConversionMetrics conversionMetrics = new ConversionMetrics(ConversionMetrics.defaultLogFile());
+    private volatile BatchConverter activeBatch;
+    private final AtomicBoolean fileListRefreshPending = new AtomicBoolean();
+
+    private final FormatRegistry formats = FormatRegistry.defaults();
+    private final ObservableList<String> formatOptions = FXCollections.observableArrayList(
+            formats.profiles().stream().map(FormatProfile::label).toList());
     private final ObservableList<String> channelOptions = FXCollections.observableArrayList("Mono", "Stereo");
 
     @FXML private ListView<File> fileListView;
@@ -58,47 +88,30 @@ public class ConverterController {
     @FXML private ToggleButton youtubeModeButton;
     @FXML private TextField youtubeUrlField;
     @FXML private Button youtubeDownloadButton;
+    @FXML private ComboBox<String> youtubeFormatComboBox;
+    @FXML private Button youtubeImportButton;
+    @FXML private Button youtubeCancelQueueButton;
+    @FXML private ListView<DownloadItem> youtubeQueueListView;
+    private volatile DownloadQueue downloadQueue;
+    private final AtomicBoolean queueRefreshPending = new AtomicBoolean();
+
+    private FormatProfile profileFor(String format) {
+        return formats.get(formatOptions.indexOf(format));
+    }
 
     private ObservableList<String> getBitrateOptionsForFormat(String format) {
-        ObservableList<String> options = FXCollections.observableArrayList();
-        switch (mapFormatForConverter(format)) { // ใช้ mapping ตรงนี้
-            case "mp3":
-                options.addAll("96 kbps", "128 kbps", "192 kbps", "256 kbps", "320 kbps");
-                break;
-            case "wav":
-                options.addAll("16-bit", "24-bit", "32-bit");
-                break;
-            case "ipod":
-                options.addAll("96 kbps", "128 kbps", "192 kbps", "256 kbps");
-                break;
-            case "flac":
-                options.addAll("Lossless (Level 5)", "Lossless (Level 8)");
-                break;
-        }
-        return options;
+        return FXCollections.observableArrayList(
+                profileFor(format).bitrates().stream().map(FormatProfile.Bitrate::label).toList());
     }
 
     private ObservableList<String> getSampleRateOptionsForFormat(String format) {
-        ObservableList<String> options = FXCollections.observableArrayList();
-        switch (mapFormatForConverter(format)) { // ใช้ mapping ตรงนี้
-            case "mp3":
-                options.addAll("32000 Hz", "44100 Hz", "48000 Hz");
-                break;
-            case "ipod":
-                options.addAll("44100 Hz", "48000 Hz");
-                break;
-            case "wav":
-                options.addAll("44100 Hz", "48000 Hz", "88200 Hz", "96000 Hz");
-                break;
-            case "flac":
-                options.addAll("44100 Hz", "48000 Hz", "88200 Hz", "96000 Hz", "192000 Hz");
-                break;
-        }
-        return options;
+        return FXCollections.observableArrayList(
+                profileFor(format).sampleRates().stream().map(FormatProfile.SampleRate::label).toList());
     }
 
     @FXML
     public void initialize() {
+        conversionMetrics.registerMBean();
         defaultFormatComboBox.setItems(formatOptions);
         defaultChannelsComboBox.setItems(channelOptions);
 
@@ -114,6 +127,8 @@ public class ConverterController {
 
         defaultFormatComboBox.getSelectionModel().selectFirst();
         defaultChannelsComboBox.getSelectionModel().select("Stereo");
+        youtubeFormatComboBox.setItems(formatOptions);
+        youtubeFormatComboBox.getSelectionModel().selectFirst();
         modeToggleGroup.selectedToggleProperty().addListener((obs, oldToggle, newToggle) -> {
             if (newToggle == null) {
                 // ถ้าไม่มีปุ่มไหนถูกเลือกเลย ให้บังคับเลือกปุ่มเดิมกลับมา
@@ -133,25 +148,41 @@ public class ConverterController {
         fileListView.setCellFactory(listView -> new ListCell<File>() {
             private final HBox hbox = new HBox(15);
             private final Label label = new Label();
+            private final Label metadataLabel = new Label();
+            private final VBox labels = new VBox(2, label, metadataLabel);
             private final ComboBox<String> formatBox = new ComboBox<>(formatOptions);
             private final ComboBox<String> bitrateBox = new ComboBox<>();
             private final ComboBox<String> sampleRateBox = new ComboBox<>();
             private final ComboBox<String> channelsBox = new ComboBox<>(channelOptions);
+            private final MenuButton extraFormatsButton = new MenuButton("+");
             private final Button deleteButton = new Button("✕");
             private final Region spacer = new Region();
 
             {
                 HBox.setHgrow(spacer, Priority.ALWAYS);
                 label.setMaxWidth(Double.MAX_VALUE);
+                metadataLabel.setStyle("-fx-font-size: 11px; -fx-opacity: 0.7;");
                 deleteButton.getStyleClass().add("delete-button");
                 hbox.setAlignment(Pos.CENTER_LEFT);
-                hbox.getChildren().addAll(label, spacer, formatBox, bitrateBox, sampleRateBox, channelsBox, deleteButton);
+                hbox.getChildren().addAll(labels, spacer, formatBox, bitrateBox, sampleRateBox, channelsBox, extraFormatsButton, deleteButton);
+
+                extraFormatsButton.setTooltip(new Tooltip("Also convert to these formats"));
+                for (String format : formatOptions) {
+                    CheckMenuItem item = new CheckMenuItem(format);
+                    item.selectedProperty().addListener((obs, wasSelected, isSelected) -> {
+                        if (getItem() != null) {
+                            fileSettings.setExtraFormat(getItem(), formatOptions.indexOf(format), isSelected);
+                            updateExtraFormatsLabel(fileSettings.get(getItem()));
+                        }
+                    });
+                    extraFormatsButton.getItems().add(item);
+                }
 
                 deleteButton.setOnAction(event -> {
                     File item = getItem();
                     if (item != null) {
                         getListView().getItems().remove(item);
-                        fileSettingsMap.remove(item);
+                        fileSettings.remove(item);
                     }
                 });
 
@@ -174,47 +205,89 @@ public class ConverterController {
                         } else {
                             sampleRateBox.getSelectionModel().selectFirst();
                         }
-                        updateSettings(fs -> fs.format.set(newFormat));
+                        fileSettings.setFormat(getItem(), formatOptions.indexOf(newFormat));
+                    }
+                });
+                bitrateBox.valueProperty().addListener((obs, oldVal, newVal) -> {
+                    if (getItem() != null) {
+                        fileSettings.setBitrate(getItem(), bitrateBox.getItems().indexOf(newVal));
+                    }
+                });
+                sampleRateBox.valueProperty().addListener((obs, oldVal, newVal) -> {
+                    if (getItem() != null) {
+                        fileSettings.setSampleRate(getItem(), sampleRateBox.getItems().indexOf(newVal));
+                    }
+                });
+                channelsBox.valueProperty().addListener((obs, oldVal, newVal) -> {
+                    if (getItem() != null) {
+                        fileSettings.setChannels(getItem(), channelOptions.indexOf(newVal));
                     }
                 });
-                bitrateBox.valueProperty().addListener((obs, oldVal, newVal) -> updateSettings(fs -> fs.bitrate.set(newVal)));
-                sampleRateBox.valueProperty().addListener((obs, oldVal, newVal) -> updateSettings(fs -> fs.sampleRate.set(newVal)));
-                channelsBox.valueProperty().addListener((obs, oldVal, newVal) -> updateSettings(fs -> fs.channels.set(newVal)));
             }
 
-            private void updateSettings(java.util.function.Consumer<FileSettings> updater) {
-                if (getItem() != null) {
-                    FileSettings settings = fileSettingsMap.get(getItem());
-                    if (settings != null) {
-                        updater.accept(settings);
-                    }
-                }
+            private void updateExtraFormatsLabel(FileSettingsStore.Entry settings) {
+                int extraCount = settings == null ? 0 : Integer.bitCount(settings.extraFormats());
+                extraFormatsButton.setText(extraCount == 0 ? "+" : "+" + extraCount);
             }
 
             @Override
             protected void updateItem(File file, boolean empty) {
                 super.updateItem(file, empty);
-                if (empty || file == null) {
+                FileSettingsStore.Entry settings = empty || file == null ? null : fileSettings.get(file);
+                if (settings == null) {
                     setGraphic(null);
                 } else {
                     label.setText(file.getName());
-                    FileSettings settings = fileSettingsMap.get(file);
-                    String currentFormat = settings.format.get();
+                    if (settings.metadata() != null) {
+                        metadataLabel.setText(settings.metadata().describe());
+                    } else if (settings.probeError() != null) {
+                        metadataLabel.setText("⚠ " + settings.probeError());
+                    } else {
+                        metadataLabel.setText("Reading file info...");
+                    }
+                    String currentFormat = optionAt(formatOptions, settings.format());
+                    ObservableList<String> bitrates = getBitrateOptionsForFormat(currentFormat);
+                    ObservableList<String> sampleRates = getSampleRateOptionsForFormat(currentFormat);
 
-                    bitrateBox.setItems(getBitrateOptionsForFormat(currentFormat));
-                    sampleRateBox.setItems(getSampleRateOptionsForFormat(currentFormat));
+                    bitrateBox.setItems(bitrates);
+                    sampleRateBox.setItems(sampleRates);
 
-                    bitrateBox.setValue(settings.bitrate.get());
-                    sampleRateBox.setValue(settings.sampleRate.get());
-                    channelsBox.setValue(settings.channels.get());
+                    bitrateBox.setValue(optionAt(bitrates, settings.bitrate()));
+                    sampleRateBox.setValue(optionAt(sampleRates, settings.sampleRate()));
+                    channelsBox.setValue(optionAt(channelOptions, settings.channels()));
 
                     formatBox.setValue(currentFormat);
 
+                    for (int format = 0; format < extraFormatsButton.getItems().size(); format++) {
+                        ((CheckMenuItem) extraFormatsButton.getItems().get(format))
+                                .setSelected((settings.extraFormats() & 1 << format) != 0);
+                    }
+                    updateExtraFormatsLabel(settings);
+
                     setGraphic(hbox);
                 }
             }
         });
 
+        youtubeQueueListView.setCellFactory(listView -> new ListCell<>() {
+            @Override
+            protected void updateItem(DownloadItem item, boolean empty) {
+                super.updateItem(item, empty);
+                if (empty || item == null) {
+                    setText(null);
+                    return;
+                }
+                String text = item.getVideoId() + "  " + item.getStatus();
+                if (item.getAttempts() > 1) {
+                    text += " (attempt " + item.getAttempts() + ")";
+                }
+                if (item.getError() != null && item.getStatus() != DownloadStatus.DONE) {
+                    text += " - " + item.getError().getMessage();
+                }
+                setText(text);
+            }
+        });
+
         setupDragAndDrop();
     }
 
@@ -238,22 +311,83 @@ public class ConverterController {
         });
     }
 
+    /**
+     * Adds the audio files among {@code files}, searching directories
+     * recursively. Files are recognized by their content, not their name.
+     * The settings are stored off the FX thread and the new rows are
+     * published in batches while the scan runs, so dropping a library of
+     * tens of thousands of files keeps the window responsive. Files already
+     * in the list keep their place and get the defaults again.
+     */
     private void addFilesToList(List<File> files) {
+        String format = defaultFormatComboBox.getValue();
+        DefaultSettings defaults = new DefaultSettings(formatOptions.indexOf(format),
+                format == null ? -1 : getBitrateOptionsForFormat(format).indexOf(defaultBitrateComboBox.getValue()),
+                format == null ? -1 : getSampleRateOptionsForFormat(format).indexOf(defaultSampleRateComboBox.getValue()),
+                channelOptions.indexOf(defaultChannelsComboBox.getValue()));
+        List<Path> roots = files.stream().map(File::toPath).toList();
+        folderScanner.scan(roots, found -> addWithDefaults(found, defaults)).whenComplete((count, error) -> {
+            if (error != null) {
+                System.err.println("Adding files failed: " + error.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Stores {@code files} with the default settings and publishes the new
+     * ones to the list. Safe to call from any thread.
+     */
+    private void addWithDefaults(List<File> files, DefaultSettings defaults) {
+        List<File> batch = new ArrayList<>(ADD_BATCH_SIZE);
+        boolean replaced = false;
         for (File file : files) {
-            if (fileSettingsMap.containsKey(file)) {
-                fileListView.getItems().remove(file);
-                fileSettingsMap.remove(file);
+            if (fileSettings.put(file, defaults.format(), defaults.bitrate(), defaults.sampleRate(), defaults.channels())) {
+                batch.add(file);
+            } else {
+                replaced = true;
+            }
+            probeInBackground(file);
+            if (batch.size() == ADD_BATCH_SIZE) {
+                publishFiles(batch, false);
+                batch = new ArrayList<>(ADD_BATCH_SIZE);
             }
+        }
+        publishFiles(batch, replaced);
+    }
 
-            FileSettings settings = new FileSettings();
-            settings.format.set(defaultFormatComboBox.getValue());
-            settings.bitrate.set(defaultBitrateComboBox.getValue());
-            settings.sampleRate.set(defaultSampleRateComboBox.getValue());
-            settings.channels.set(defaultChannelsComboBox.getValue());
+    private void publishFiles(List<File> batch, boolean refresh) {
+        Platform.runLater(() -> {
+            // skip files removed or cleared while the batch waited
+            fileListView.getItems().addAll(batch.stream().filter(fileSettings::contains).toList());
+            if (refresh) {
+                fileListView.refresh();
+            }
+        });
+    }
 
-            fileSettingsMap.put(file, settings);
-            fileListView.getItems().add(file);
-        }
+    /**
+     * Reads the file's duration, codec and format off the FX thread. Cached
+     * results arrive at once; the list is repainted at most once per pulse.
+     */
+    private void probeInBackground(File file) {
+        mediaProbe.probeAsync(file).whenComplete((metadata, error) -> {
+            String probeError = null;
+            if (error != null) {
+                Throwable cause = error.getCause() != null ? error.getCause() : error;
+                probeError = cause.getMessage();
+            }
+            fileSettings.setProbeResult(file, metadata, probeError);
+            if (fileListRefreshPending.compareAndSet(false, true)) {
+                Platform.runLater(() -> {
+                    fileListRefreshPending.set(false);
+                    fileListView.refresh();
+                });
+            }
+        });
+    }
+
+    private static <T> T optionAt(List<T> options, int code) {
+        return code >= 0 && code < options.size() ? options.get(code) : null;
     }
 
     @FXML
@@ -261,7 +395,7 @@ public class ConverterController {
         FileChooser fileChooser = new FileChooser();
         fileChooser.setTitle("Select Audio Files");
         fileChooser.getExtensionFilters().addAll(
-                new FileChooser.ExtensionFilter("Audio Files", "*.wav", "*.mp3", "*.flac", "*.m4a"),
+                new FileChooser.ExtensionFilter("Audio Files", "*.wav", "*.mp3", "*.flac", "*.m4a", "*.ogg", "*.opus"),
                 new FileChooser.ExtensionFilter("All Files", "*.*")
         );
         List<File> selectedFiles = fileChooser.showOpenMultipleDialog(addFilesButton.getScene().getWindow());
@@ -271,71 +405,20 @@ public class ConverterController {
     }
 
     @FXML
-    protected void handleClearAllAction() {
-        fileListView.getItems().clear();
-        fileSettingsMap.clear();
-    }
-
-    private int parseBitrateValue(String bitrateString) {
-        if (bitrateString == null || bitrateString.isEmpty()) return 0;
-
-        if (bitrateString.contains("Lossless")) {
-            return 0;
-        }
-
-        String numeric = bitrateString.replaceAll("[^\\d]", "");
-        if (numeric.isEmpty()) return 0;
-
-        int value = Integer.parseInt(numeric);
-        if (bitrateString.contains("kbps")) {
-            value *= 1000;
-        }
-        return value;
-    }
-
-    private int parseSampleRateValue(String sampleRateString) {
-        if (sampleRateString == null || sampleRateString.isEmpty()) return 0;
-
-        String numeric = sampleRateString.replaceAll("[^\\d]", "");
-        if (numeric.isEmpty()) return 0;
-
-        return Integer.parseInt(numeric);
-    }
-
-    private boolean isValidFormatSettings(String formatName, int sampleRate, int bitrate) {
-        switch (formatName) {
-            case "mp3":
-                boolean isValidMp3SampleRate = (sampleRate == 32000 || sampleRate == 44100 || sampleRate == 48000);
-                boolean isValidMp3Bitrate = (bitrate >= 64000 && bitrate <= 320000);
-                System.out.println("MP3 Validation: " + isValidMp3SampleRate + " " + isValidMp3Bitrate);
-                return isValidMp3SampleRate && isValidMp3Bitrate;
-
-            case "wav":
-                boolean isValidWavSampleRate = (sampleRate == 44100 || sampleRate == 48000 || sampleRate == 96000);
-                return isValidWavSampleRate;
-
-            case "ipod":
-                boolean isValidAacSampleRate = (sampleRate == 44100 || sampleRate == 48000);
-                boolean isValidAacBitrate = (bitrate >= 96000 && bitrate <= 256000);
-                return isValidAacSampleRate && isValidAacBitrate;
-
-            case "flac":
-                boolean isValidFlacSampleRate = (sampleRate == 44100 || sampleRate == 48000 || sampleRate == 96000 || sampleRate == 192000);
-                return isValidFlacSampleRate;
-
-            default:
-                return false;
+    protected void handleAddFolderAction() {
+        DirectoryChooser directoryChooser = new DirectoryChooser();
+        directoryChooser.setTitle("Select Folder with Audio Files");
+        File folder = directoryChooser.showDialog(addFilesButton.getScene().getWindow());
+        if (folder != null) {
+            addFilesToList(List.of(folder));
         }
     }
 
-    private String mapFormatForConverter(String uiFormat) {
-        switch (uiFormat.toUpperCase()) {
-            case "M4A": return "ipod";
-            case "MP3": return "mp3";
-            case "WAV": return "wav";
-            case "FLAC": return "flac";
-            default: return uiFormat.toLowerCase();
-        }
+    @FXML
+    protected void handleClearAllAction() {
+        folderScanner.cancel();
+        fileListView.getItems().clear();
+        fileSettings.clear();
     }
 
     @FXML
@@ -345,6 +428,41 @@ public class ConverterController {
             return;
         }
 
+        List<ConversionJob> jobs = new ArrayList<>();
+        // files that could not be read are reported with the failures instead of holding up the rest
+        List<String> unreadableFiles = new ArrayList<>();
+        for (File file : fileListView.getItems()) {
+            FileSettingsStore.Entry settings = fileSettings.get(file);
+            int formatIndex = settings.format();
+            FormatProfile format = formats.contains(formatIndex) ? formats.get(formatIndex) : null;
+            FormatProfile.Bitrate bitrate = format == null ? null : optionAt(format.bitrates(), settings.bitrate());
+            FormatProfile.SampleRate sampleRate = format == null ? null : optionAt(format.sampleRates(), settings.sampleRate());
+            int channelIndex = settings.channels();
+
+            if (bitrate == null || sampleRate == null || !format.isValid(bitrate.value(), sampleRate.hertz())) {
+                showErrorAlert("Invalid Settings", "Invalid settings for file: " + file.getName());
+                return;
+            }
+            if (settings.probeError() != null) {
+                System.err.println("Skipping " + file.getName() + ": " + settings.probeError());
+                unreadableFiles.add(file.getName());
+                continue;
+            }
+            List<TargetProfile> targets = new ArrayList<>();
+            targets.add(new TargetProfile(formatIndex, bitrate.value(), sampleRate.hertz(), channelIndex));
+            for (int extraIndex = 0; extraIndex < formats.size(); extraIndex++) {
+                if ((settings.extraFormats() & 1 << extraIndex) == 0 || extraIndex == formatIndex) {
+                    continue;
+                }
+                targets.add(extraTargetFor(extraIndex, bitrate, sampleRate, channelIndex));
+            }
+            jobs.add(new ConversionJob(file, targets));
+        }
+        if (jobs.isEmpty()) {
+            showErrorAlert(unreadableFiles.size() + " file(s) could not be read", String.join(", ", unreadableFiles));
+            return;
+        }
+
         Stage loadingStage = new Stage();
         LoadingController loadingController;
         try {
@@ -371,36 +489,57 @@ public class ConverterController {
 
         final LoadingController finalLoadingController = loadingController;
         AudioConverter converter = new AudioConverter();
-
-        new Thread(() -> {
+        converter.setCache(getConversionCache());
+        converter.setMediaProbe(mediaProbe);
+        // the asking job's own CPU slot is free while it waits for its segments
+        converter.setSegmentSlots(() -> jobScheduler.getIdleCpuThreads() + 1);
+        BatchConverter batchConverter = new BatchConverter(converter);
+        batchConverter.setMediaProbe(mediaProbe);
+        batchConverter.setMetrics(conversionMetrics);
+        batchConverter.setJournal(getJobJournal());
+        batchConverter.setAdaptiveConcurrency(true);
+        batchConverter.setWorkerExecutor(jobScheduler.executor("Convert", JobKind.CPU, JobScheduler.PRIORITY_NORMAL));
+        activeBatch = batchConverter;
+        finalLoadingController.setOnCancel(batchConverter::cancelAll);
+        loadingStage.setOnCloseRequest(event -> batchConverter.cancelAll());
+
+        jobScheduler.submit("Convert " + jobs.size() + " file(s)", JobKind.IO, JobScheduler.PRIORITY_NORMAL, () -> {
             try {
-                int totalFiles = fileListView.getItems().size();
-                for (int i = 0; i < totalFiles; i++) {
-                    File file = fileListView.getItems().get(i);
-                    final int currentFileIndex = i;
+                batchConverter.run(jobs, new BatchConverter.Listener() {
+                    private volatile int runningAtOnce;
 
-                    Platform.runLater(() -> {
-                        finalLoadingController.updateStatus("Converting: " + file.getName() + " (" + (currentFileIndex + 1) + "/" + totalFiles + ")");
-                        finalLoadingController.updateProgress((double) currentFileIndex / totalFiles);
-                    });
+                    @Override
+                    public void jobStarted(ConversionJob job, int completed, int total) {
+                        finalLoadingController.postStatus(
+                                "Converting: " + job.getSource().getName() + counts(completed, total));
+                    }
 
-                    FileSettings settings = fileSettingsMap.get(file);
-                    String formatStr = settings.format.get();
-                    int formatIndex = formatOptions.indexOf(formatStr);
-                    int bitrateValue = parseBitrateValue(settings.bitrate.get());
-                    int sampleRateValue = parseSampleRateValue(settings.sampleRate.get());
-                    int channelIndex = channelOptions.indexOf(settings.channels.get());
-                    String formatForValidation = mapFormatForConverter(formatStr);
+                    @Override
+                    public void jobFinished(ConversionJob job, int completed, int total) {
+                        String result = job.isResumed() ? "Already converted: " : switch (job.getStatus()) {
+                            case DONE -> "Finished: ";
+                            case CANCELLED -> "Cancelled: ";
+                            default -> "Failed: ";
+                        };
+                        finalLoadingController.postStatus(result + job.getSource().getName() + counts(completed, total));
+                    }
 
-                    if (!isValidFormatSettings(formatForValidation, sampleRateValue, bitrateValue)) {
-                        Platform.runLater(() -> {
-                            finalLoadingController.closeWindow();
-                            showErrorAlert("Invalid Settings", "Invalid settings for file: " + file.getName());
-                        });
-                        return;
+                    @Override
+                    public void concurrencyChanged(int level) {
+                        runningAtOnce = level;
                     }
-                    converter.convert(file, formatIndex, bitrateValue, sampleRateValue, channelIndex);
-                }
+
+                    private String counts(int completed, int total) {
+                        int level = runningAtOnce;
+                        return " (" + completed + "/" + total + " done"
+                                + (level > 0 ? ", " + level + " at a time)" : ")");
+                    }
+
+                    @Override
+                    public void progress(ConversionJob job, double fileProgress, double batchProgress) {
+                        finalLoadingController.postProgress(batchProgress);
+                    }
+                });
             } catch (Exception e) {
                 Platform.runLater(() -> {
                     finalLoadingController.closeWindow();
@@ -408,11 +547,31 @@ public class ConverterController {
                 });
                 e.printStackTrace();
                 return;
+            } finally {
+                activeBatch = null;
             }
 
+            List<String> failedFiles = new ArrayList<>(unreadableFiles);
+            int cancelledCount = 0;
+            for (ConversionJob job : jobs) {
+                if (job.getStatus() == JobStatus.FAILED) {
+                    failedFiles.add(job.getSource().getName());
+                } else if (job.getStatus() == JobStatus.CANCELLED) {
+                    cancelledCount++;
+                }
+            }
+            final int cancelledFiles = cancelledCount;
+
             Platform.runLater(() -> {
+                finalLoadingController.disableCancel();
                 finalLoadingController.updateProgress(1.0);
-                finalLoadingController.updateStatus("✅ Conversion completed!");
+                if (cancelledFiles > 0) {
+                    finalLoadingController.updateStatus("⏹ Cancelled " + cancelledFiles + " file(s).");
+                } else {
+                    finalLoadingController.updateStatus(failedFiles.isEmpty()
+                            ? "✅ Conversion completed!"
+                            : "⚠ Completed with " + failedFiles.size() + " failed file(s).");
+                }
                 finalLoadingController.stopSpin();
                 finalLoadingController.stopShake();
 
@@ -421,6 +580,13 @@ public class ConverterController {
                     finalLoadingController.closeWindow();
 
                     Platform.runLater(() -> {
+                        if (!failedFiles.isEmpty()) {
+                            showErrorAlert(failedFiles.size() + " file(s)", String.join(", ", failedFiles));
+                            return;
+                        }
+                        if (cancelledFiles > 0) {
+                            return;
+                        }
                         Alert alert = new Alert(Alert.AlertType.INFORMATION);
                         alert.setTitle("🎉 Success!");
                         alert.setHeaderText("All files have been successfully converted.");
@@ -431,7 +597,60 @@ public class ConverterController {
                 delay.play();
 
             });
-        }).start();
+        });
+    }
+
+    /**
+     * Settings for an additional output format: the primary bitrate and
+     * sample rate are kept where that format offers them, otherwise a middle
+     * bitrate and the first offered sample rate are used. Every offered
+     * choice is valid, so the result always is.
+     */
+    private TargetProfile extraTargetFor(int formatIndex, FormatProfile.Bitrate primaryBitrate,
+                                         FormatProfile.SampleRate primarySampleRate, int channelIndex) {
+        FormatProfile format = formats.get(formatIndex);
+        List<FormatProfile.Bitrate> bitrates = format.bitrates();
+        FormatProfile.Bitrate bitrate = bitrates.contains(primaryBitrate) ? primaryBitrate : bitrates.get(bitrates.size() / 2);
+        FormatProfile.SampleRate sampleRate = format.supportsSampleRate(primarySampleRate.hertz())
+                ? primarySampleRate : format.sampleRates().get(0);
+        return new TargetProfile(formatIndex, bitrate.value(), sampleRate.hertz(), channelIndex);
+    }
+
+    /**
+     * Settings for a YouTube download saved as {@code format}: stereo at the
+     * first offered sample rate and a middle bitrate, as for extra formats.
+     */
+    private TargetProfile youtubeTargetFor(String format) {
+        FormatProfile profile = profileFor(format);
+        List<FormatProfile.Bitrate> bitrates = profile.bitrates();
+        return new TargetProfile(formatOptions.indexOf(format), bitrates.get(bitrates.size() / 2).value(),
+                profile.sampleRates().get(0).hertz(), channelOptions.indexOf("Stereo"));
+    }
+
+    private ConversionCache getConversionCache() {
+        if (conversionCache == null) {
+            try {
+                conversionCache = new ConversionCache(ConversionCache.defaultDirectory(), ConversionCache.DEFAULT_MAX_BYTES);
+            } catch (IOException e) {
+                System.err.println("Conversion cache disabled: " + e.getMessage());
+            }
+        }
+        return conversionCache;
+    }
+
+    /**
+     * The journal lets a batch that was interrupted by a crash skip the files
+     * it had already finished when it is started again.
+     */
+    private JobJournal getJobJournal() {
+        if (jobJournal == null) {
+            try {
+                jobJournal = new JobJournal(JobJournal.defaultFile());
+            } catch (IOException e) {
+                System.err.println("Job journal disabled: " + e.getMessage());
+            }
+        }
+        return jobJournal;
     }
 
     private void showErrorAlert(String fileName, String message) {
@@ -450,10 +669,16 @@ public class ConverterController {
             return;
         }
 
+        String format = youtubeFormatComboBox.getValue();
+        TargetProfile target = youtubeTargetFor(format);
+        String extension = profileFor(format).extension();
+        // MP3 is what the API serves, so it is saved as is
+        boolean saveAsServed = profileFor(format) == FormatRegistry.MP3;
+
         youtubeDownloadButton.setDisable(true);
         youtubeDownloadButton.setText("Processing...");
 
-        new Thread(() -> {
+        jobScheduler.submit("Resolve " + userUrl, JobKind.IO, JobScheduler.PRIORITY_HIGH, () -> {
             try {
                 String videoId = extractVideoId(userUrl);
                 if (videoId == null) {
@@ -471,9 +696,9 @@ public class ConverterController {
 
                 Platform.runLater(() -> {
                     FileChooser fileChooser = new FileChooser();
-                    fileChooser.setTitle("Save MP3 File");
-                    fileChooser.setInitialFileName(videoId + ".mp3");
-                    fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("MP3 Audio", "*.mp3"));
+                    fileChooser.setTitle("Save " + format + " File");
+                    fileChooser.setInitialFileName(videoId + "." + extension);
+                    fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter(format + " Audio", "*." + extension));
                     File file = fileChooser.showSaveDialog(youtubePane.getScene().getWindow());
 
                     if (file != null) {
@@ -492,27 +717,142 @@ public class ConverterController {
                             e.printStackTrace();
                         }
 
-                        new Thread(() -> {
-                            boolean success = downloadMp3(mp3Url, file.getAbsolutePath());
+                        JobKind kind = saveAsServed ? JobKind.IO : JobKind.CPU;
+                        jobScheduler.submit("Download " + videoId, kind, JobScheduler.PRIORITY_HIGH, () -> {
+                            // other formats are encoded while the download is running
+                            boolean success = saveAsServed
+                                    ? downloadMp3(mp3Url, file.getAbsolutePath())
+                                    : downloadAndConvert(mp3Url, file.getAbsolutePath(), target);
                             Platform.runLater(() -> {
                                 if (loadingStage[0] != null) loadingStage[0].close();
                                 if (success) {
-                                    showSuccessAlert("Download Complete", "Successfully downloaded MP3 to:\n" + file.getAbsolutePath());
+                                    showSuccessAlert("Download Complete", "Successfully downloaded " + format + " to:\n" + file.getAbsolutePath());
                                 } else {
                                     showErrorAlert("Download Failed", "An error occurred while downloading the file.");
                                 }
                             });
-                        }).start();
+                        });
                     }
                 });
             } finally {
                 Platform.runLater(() -> {
                     youtubeDownloadButton.setDisable(false);
-                    youtubeDownloadButton.setText("Download MP3");
+                    youtubeDownloadButton.setText("Download");
                 });
             }
-        }).start();
+        });
     }
+    /**
+     * Downloads every URL or video ID listed in a text file into one folder,
+     * showing each item's status in the queue list.
+     */
+    @FXML
+    protected void handleYoutubeImportAction() {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Import URL List");
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Text Files", "*.txt", "*.csv"));
+        File listFile = fileChooser.showOpenDialog(youtubePane.getScene().getWindow());
+        if (listFile == null) {
+            return;
+        }
+
+        Set<String> videoIds = new LinkedHashSet<>();
+        try {
+            for (String line : YoutubeDownloadCli.readLines(listFile.getPath())) {
+                String videoId = videoIdOf(line);
+                if (videoId != null) {
+                    videoIds.add(videoId);
+                }
+            }
+        } catch (IOException e) {
+            showErrorAlert(listFile.getName(), e.getMessage());
+            return;
+        }
+        if (videoIds.isEmpty()) {
+            showErrorAlert(listFile.getName(), "The file contains no YouTube URLs or video IDs.");
+            return;
+        }
+
+        DirectoryChooser directoryChooser = new DirectoryChooser();
+        directoryChooser.setTitle("Save " + videoIds.size() + " MP3 Files To");
+        File outputDirectory = directoryChooser.showDialog(youtubePane.getScene().getWindow());
+        if (outputDirectory == null) {
+            return;
+        }
+
+        List<DownloadItem> items = new ArrayList<>();
+        for (String videoId : videoIds) {
+            items.add(new DownloadItem(videoId, outputDirectory.toPath().resolve(videoId + ".mp3")));
+        }
+        youtubeQueueListView.getItems().setAll(items);
+        youtubeQueueListView.setVisible(true);
+        youtubeQueueListView.setManaged(true);
+        youtubeImportButton.setDisable(true);
+        youtubeCancelQueueButton.setDisable(false);
+
+        DownloadQueue queue = newDownloadQueue(DownloadQueue.DEFAULT_PARALLELISM, DEFAULT_API_REQUESTS_PER_SECOND);
+        downloadQueue = queue;
+        jobScheduler.submit("Download " + items.size() + " video(s)", JobKind.IO, JobScheduler.PRIORITY_NORMAL, () -> {
+            try {
+                // status changes arrive from several workers; repaint at most once per pulse
+                queue.run(items, item -> {
+                    if (queueRefreshPending.compareAndSet(false, true)) {
+                        Platform.runLater(() -> {
+                            queueRefreshPending.set(false);
+                            youtubeQueueListView.refresh();
+                        });
+                    }
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                long done = items.stream().filter(item -> item.getStatus() == DownloadStatus.DONE).count();
+                Platform.runLater(() -> {
+                    downloadQueue = null;
+                    youtubeQueueListView.refresh();
+                    youtubeImportButton.setDisable(false);
+                    youtubeCancelQueueButton.setDisable(true);
+                    showSuccessAlert("Downloads Finished", "Downloaded " + done + " of " + items.size()
+                            + " video(s) to:\n" + outputDirectory.getAbsolutePath());
+                });
+            }
+        });
+    }
+
+    /**
+     * Stops all background work when the window closes: encodes are aborted
+     * so their partial outputs get deleted, and downloads keep their partial
+     * files for resuming.
+     */
+    public void shutdown() {
+        BatchConverter batch = activeBatch;
+        if (batch != null) {
+            batch.cancelAll();
+        }
+        DownloadQueue queue = downloadQueue;
+        if (queue != null) {
+            queue.cancelAll();
+        }
+        if (!jobScheduler.shutdown(java.time.Duration.ofSeconds(5))) {
+            System.err.println("Some background jobs were still running at exit: " + jobScheduler.getActiveJobs());
+        }
+        if (jobJournal != null) {
+            try {
+                jobJournal.close();
+            } catch (IOException e) {
+                System.err.println("Could not close the job journal: " + e.getMessage());
+            }
+        }
+    }
+
+    @FXML
+    protected void handleYoutubeCancelQueueAction() {
+        DownloadQueue queue = downloadQueue;
+        if (queue != null) {
+            queue.cancelAll();
+        }
+    }
+
     private void showSuccessAlert(String title, String message) {
         Alert alert = new Alert(Alert.AlertType.INFORMATION);
         alert.setTitle(title);
@@ -0,0 +1,57 @@
+package se233.audioconverter.Downloader;
+
+import java.nio.file.Path;
+
+/**
+ * One video of a {@link DownloadQueue} run and where its MP3 goes. Status,
+ * attempt count and error are updated by the queue's workers.
+ */
+public class DownloadItem {
+    private final String videoId;
+    private final Path target;
+    private volatile DownloadStatus status = DownloadStatus.QUEUED;
+    private volatile int attempts;
+    private volatile Throwable error;
+
+    public DownloadItem(String videoId, Path target) {
+        this.videoId = videoId;
+        this.target = target;
+    }
+
+    public String getVideoId() {
+        return videoId;
+    }
+
+    public Path getTarget() {
+        return target;
+    }
+
+    public DownloadStatus getStatus() {
+        return status;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public Throwable getError() {
+        return error;
+    }
+
+    void setStatus(DownloadStatus status) {
+        this.status = status;
+    }
+
+    void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    void setError(Throwable error) {
+        this.error = error;
+    }
+
+    @Override
+    public String toString() {
+        return videoId + " " + status;
+    }
+}
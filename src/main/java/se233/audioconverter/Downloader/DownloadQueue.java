@@ -0,0 +1,188 @@
+package se233.audioconverter.Downloader;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Downloads many YouTube videos as MP3 with a bounded number running at once.
+ * Link lookups that have to hit the API wait for the shared
+ * {@link TokenBucket}, and failed items are retried with exponential backoff.
+ */
+public class DownloadQueue {
+
+    public interface Listener {
+        /**
+         * Called from the worker threads whenever an item changes status.
+         */
+        void itemChanged(DownloadItem item);
+    }
+
+    public static final int DEFAULT_PARALLELISM = 3;
+    public static final int DEFAULT_MAX_ATTEMPTS = 4;
+    private static final long BASE_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+
+    private final LinkResolver resolver;
+    private final ResumableDownloader downloader;
+    private final TokenBucket apiLimiter;
+    private final int parallelism;
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private volatile boolean cancelled;
+    private volatile ExecutorService activePool;
+
+    public DownloadQueue(LinkResolver resolver, ResumableDownloader downloader, TokenBucket apiLimiter, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1, was " + parallelism);
+        }
+        this.resolver = resolver;
+        this.downloader = downloader;
+        this.apiLimiter = apiLimiter;
+        this.parallelism = parallelism;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("Max attempts must be at least 1, was " + maxAttempts);
+        }
+        this.maxAttempts = maxAttempts;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Downloads every item and blocks until all of them are done, failed or
+     * cancelled. A failing item does not stop the others.
+     */
+    public void run(List<DownloadItem> items, Listener listener) throws InterruptedException {
+        cancelled = false;
+        // the workers mostly wait on the network, so virtual threads suffice
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, Math.max(items.size(), 1)),
+                Thread.ofVirtual().name("download-worker-", 1).factory());
+        activePool = pool;
+        try {
+            for (DownloadItem item : items) {
+                pool.execute(new Download(item, listener));
+            }
+            pool.shutdown();
+            while (!pool.awaitTermination(1, TimeUnit.SECONDS)) {
+                // keep waiting until every queued item has run
+            }
+        } finally {
+            cancelPending(pool.shutdownNow());
+            activePool = null;
+        }
+    }
+
+    /**
+     * Marks the items that have not started as cancelled and interrupts the
+     * running ones. Interrupted downloads keep their partial file and resume
+     * next time.
+     */
+    public void cancelAll() {
+        cancelled = true;
+        ExecutorService pool = activePool;
+        if (pool != null) {
+            cancelPending(pool.shutdownNow());
+        }
+    }
+
+    /**
+     * Reports the items whose downloads the pool dropped without running
+     * them, which would otherwise stay queued forever.
+     */
+    private static void cancelPending(List<Runnable> neverRan) {
+        for (Runnable runnable : neverRan) {
+            if (runnable instanceof Download pending) {
+                update(pending.item, DownloadStatus.CANCELLED, pending.listener);
+            }
+        }
+    }
+
+    private void download(DownloadItem item, Listener listener) {
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            if (cancelled || Thread.currentThread().isInterrupted()) {
+                update(item, DownloadStatus.CANCELLED, listener);
+                return;
+            }
+            item.setAttempts(attempt);
+            try {
+                update(item, DownloadStatus.RESOLVING, listener);
+                String link = resolver.cachedLink(item.getVideoId());
+                if (link == null) {
+                    apiLimiter.acquire();
+                    link = resolver.resolve(item.getVideoId());
+                }
+
+                update(item, DownloadStatus.DOWNLOADING, listener);
+                Path parent = item.getTarget().toAbsolutePath().getParent();
+                if (parent != null) {
+                    Files.createDirectories(parent);
+                }
+                try {
+                    downloader.download(URI.create(link), item.getTarget());
+                } catch (IOException e) {
+                    // the link may have expired, so the next attempt asks the API again
+                    resolver.invalidate(item.getVideoId());
+                    throw e;
+                }
+                item.setError(null);
+                update(item, DownloadStatus.DONE, listener);
+                return;
+            } catch (InterruptedException e) {
+                update(item, DownloadStatus.CANCELLED, listener);
+                return;
+            } catch (IOException | IllegalArgumentException e) {
+                item.setError(e);
+                if (e instanceof IllegalArgumentException || attempt == maxAttempts) {
+                    update(item, DownloadStatus.FAILED, listener);
+                    return;
+                }
+                update(item, DownloadStatus.WAITING_TO_RETRY, listener);
+                try {
+                    Thread.sleep(backoffMillis(attempt));
+                } catch (InterruptedException interrupted) {
+                    update(item, DownloadStatus.CANCELLED, listener);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Doubles the delay with every attempt, picking a random point in its
+     * upper half so that items which failed together do not retry together.
+     */
+    private static long backoffMillis(int attempt) {
+        long delay = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(attempt - 1, 20));
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    private static void update(DownloadItem item, DownloadStatus status, Listener listener) {
+        item.setStatus(status);
+        listener.itemChanged(item);
+    }
+
+    private final class Download implements Runnable {
+        private final DownloadItem item;
+        private final Listener listener;
+
+        Download(DownloadItem item, Listener listener) {
+            this.item = item;
+            this.listener = listener;
+        }
+
+        @Override
+        public void run() {
+            download(item, listener);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package se233.audioconverter.Downloader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Progress of a ranged download, saved next to the partial file so an
+ * interrupted download can continue where each connection stopped.
+ */
+final class DownloadState {
+    final String url;
+    final long length;
+    final String validator;
+    final long[] starts;
+    final long[] ends;
+    final long[] written;
+
+    private DownloadState(String url, long length, String validator, long[] starts, long[] ends, long[] written) {
+        this.url = url;
+        this.length = length;
+        this.validator = validator;
+        this.starts = starts;
+        this.ends = ends;
+        this.written = written;
+    }
+
+    /**
+     * Splits {@code length} bytes into {@code chunks} contiguous inclusive ranges.
+     */
+    static DownloadState split(String url, long length, String validator, int chunks) {
+        long[] starts = new long[chunks];
+        long[] ends = new long[chunks];
+        long chunkSize = length / chunks;
+        for (int i = 0; i < chunks; i++) {
+            starts[i] = i * chunkSize;
+            ends[i] = i == chunks - 1 ? length - 1 : (i + 1) * chunkSize - 1;
+        }
+        return new DownloadState(url, length, validator, starts, ends, new long[chunks]);
+    }
+
+    int chunkCount() {
+        return starts.length;
+    }
+
+    long remaining(int chunk) {
+        return ends[chunk] - starts[chunk] + 1 - written[chunk];
+    }
+
+    boolean matches(String url, long length, String validator) {
+        return this.url.equals(url) && this.length == length && this.validator.equals(validator);
+    }
+
+    static DownloadState load(Path file) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+            int chunks = Integer.parseInt(properties.getProperty("chunks"));
+            long[] starts = new long[chunks];
+            long[] ends = new long[chunks];
+            long[] written = new long[chunks];
+            for (int i = 0; i < chunks; i++) {
+                starts[i] = Long.parseLong(properties.getProperty("chunk." + i + ".start"));
+                ends[i] = Long.parseLong(properties.getProperty("chunk." + i + ".end"));
+                written[i] = Long.parseLong(properties.getProperty("chunk." + i + ".written"));
+            }
+            return new DownloadState(properties.getProperty("url"), Long.parseLong(properties.getProperty("length")),
+                    properties.getProperty("validator", ""), starts, ends, written);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ignoring unreadable download state " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    synchronized void save(Path file) throws IOException {
+        save(file, null);
+    }
+
+    /**
+     * Writes the state, first forcing {@code data} to disk so that the saved
+     * byte counts never run ahead of what is durable.
+     */
+    synchronized void save(Path file, FileChannel data) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("url", url);
+        properties.setProperty("length", String.valueOf(length));
+        properties.setProperty("validator", validator);
+        properties.setProperty("chunks", String.valueOf(starts.length));
+        for (int i = 0; i < starts.length; i++) {
+            properties.setProperty("chunk." + i + ".start", String.valueOf(starts[i]));
+            properties.setProperty("chunk." + i + ".end", String.valueOf(ends[i]));
+            properties.setProperty("chunk." + i + ".written", String.valueOf(written[i]));
+        }
+        if (data != null) {
+            data.force(false);
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            properties.store(out, "partial download");
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    synchronized void addWritten(int chunk, long bytes) {
+        written[chunk] += bytes;
+    }
+}
@@ -0,0 +1,11 @@
+package se233.audioconverter.Downloader;
+
+public enum DownloadStatus {
+    QUEUED,
+    RESOLVING,
+    DOWNLOADING,
+    WAITING_TO_RETRY,
+    DONE,
+    FAILED,
+    CANCELLED
+}
@@ -0,0 +1,278 @@
+package se233.audioconverter.Downloader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Looks up the MP3 link for a YouTube video ID through the RapidAPI
+ * youtube-mp36 endpoint. Links are remembered for a while, also across
+ * restarts, and concurrent lookups of the same ID share one request.
+ */
+public class LinkResolver {
+    public static final Duration DEFAULT_TTL = Duration.ofHours(1);
+
+    private final HttpClient client;
+    private final URI endpoint;
+    private final String apiKey;
+    private final Path storeFile;
+    private final Duration ttl;
+    private final Map<String, CachedLink> links = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    private record CachedLink(String link, long expiresAtMillis) {
+        boolean isExpired(long nowMillis) {
+            return nowMillis >= expiresAtMillis;
+        }
+    }
+
+    /**
+     * @param endpoint  the API's {@code /dl} URL; its host is also sent as {@code x-rapidapi-host}
+     * @param storeFile where links are kept between runs, or null to keep them in memory only
+     */
+    public LinkResolver(HttpClient client, URI endpoint, String apiKey, Path storeFile, Duration ttl) {
+        this.client = client;
+        this.endpoint = endpoint;
+        this.apiKey = apiKey;
+        this.storeFile = storeFile;
+        this.ttl = ttl;
+        load();
+    }
+
+    public static Path defaultStoreFile() {
+        return Paths.get(System.getProperty("user.home"), ".audioconverter", "links.properties");
+    }
+
+    /**
+     * Returns the download link for {@code videoId}, from the cache when a
+     * fresh one is known.
+     *
+     * @throws IOException if the API fails or has no link for the video
+     */
+    public String resolve(String videoId) throws IOException {
+        try {
+            return resolveAsync(videoId).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("Link lookup failed for " + videoId, e.getCause());
+        }
+    }
+
+    /**
+     * @return the remembered link, or null if a lookup would have to ask the API
+     */
+    public String cachedLink(String videoId) {
+        CachedLink cached = links.get(videoId);
+        return cached != null && !cached.isExpired(System.currentTimeMillis()) ? cached.link() : null;
+    }
+
+    /**
+     * Forgets the link for {@code videoId}, for example after the download
+     * server rejected it.
+     */
+    public void invalidate(String videoId) {
+        if (links.remove(videoId) != null) {
+            save();
+        }
+    }
+
+    public CompletableFuture<String> resolveAsync(String videoId) {
+        String cached = cachedLink(videoId);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        CompletableFuture<String> lookup = new CompletableFuture<>();
+        CompletableFuture<String> running = inFlight.putIfAbsent(videoId, lookup);
+        if (running != null) {
+            return running;
+        }
+        Thread.ofVirtual().name("link-" + videoId).start(() -> {
+            try {
+                String link = fetch(videoId);
+                links.put(videoId, new CachedLink(link, System.currentTimeMillis() + ttl.toMillis()));
+                save();
+                lookup.complete(link);
+            } catch (Throwable e) {
+                lookup.completeExceptionally(e);
+            } finally {
+                inFlight.remove(videoId, lookup);
+            }
+        });
+        return lookup;
+    }
+
+    private String fetch(String videoId) throws IOException, InterruptedException {
+        URI uri = URI.create(endpoint + "?id=" + URLEncoder.encode(videoId, StandardCharsets.UTF_8));
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .header("x-rapidapi-key", apiKey)
+                .header("x-rapidapi-host", endpoint.getHost())
+                .GET()
+                .build();
+        HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        Map<String, String> fields;
+        try (Reader body = new BufferedReader(new InputStreamReader(response.body(), StandardCharsets.UTF_8))) {
+            if (response.statusCode() != 200) {
+                throw new IOException("HTTP " + response.statusCode() + " from " + endpoint.getHost());
+            }
+            fields = readTopLevelStrings(body);
+        }
+        String link = fields.get("link");
+        if (link == null || link.isEmpty()) {
+            throw new IOException("No link for " + videoId + " (status: " + fields.get("status")
+                    + ", message: " + fields.get("msg") + ")");
+        }
+        return link;
+    }
+
+    /**
+     * Reads the string-valued members of a JSON object as the characters
+     * arrive, without collecting the body first. Nested values are skipped.
+     */
+    static Map<String, String> readTopLevelStrings(Reader in) throws IOException {
+        Map<String, String> fields = new HashMap<>();
+        int depth = 0;
+        String lastString = null;
+        String key = null;
+        int c;
+        while ((c = in.read()) != -1) {
+            switch (c) {
+                case '{', '[' -> {
+                    depth++;
+                    key = null;
+                }
+                case '}', ']' -> {
+                    depth--;
+                    key = null;
+                }
+                case ':' -> key = depth == 1 ? lastString : null;
+                case ',' -> key = null;
+                case '"' -> {
+                    String value = readString(in);
+                    if (key != null) {
+                        fields.put(key, value);
+                        key = null;
+                    }
+                    lastString = value;
+                }
+                default -> {
+                    if (!Character.isWhitespace(c)) {
+                        key = null;
+                    }
+                }
+            }
+        }
+        return fields;
+    }
+
+    private static String readString(Reader in) throws IOException {
+        StringBuilder value = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '"') {
+            if (c == -1) {
+                throw new IOException("Unterminated string in API response");
+            }
+            if (c != '\\') {
+                value.append((char) c);
+                continue;
+            }
+            int escaped = in.read();
+            switch (escaped) {
+                case 'b' -> value.append('\b');
+                case 'f' -> value.append('\f');
+                case 'n' -> value.append('\n');
+                case 'r' -> value.append('\r');
+                case 't' -> value.append('\t');
+                case 'u' -> {
+                    char[] hex = new char[4];
+                    for (int i = 0; i < hex.length; i++) {
+                        int digit = in.read();
+                        if (digit == -1) {
+                            throw new IOException("Unterminated escape in API response");
+                        }
+                        hex[i] = (char) digit;
+                    }
+                    value.append((char) Integer.parseInt(new String(hex), 16));
+                }
+                case -1 -> throw new IOException("Unterminated escape in API response");
+                default -> value.append((char) escaped);
+            }
+        }
+        return value.toString();
+    }
+
+    private void load() {
+        if (storeFile == null || !Files.isRegularFile(storeFile)) {
+            return;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(storeFile)) {
+            properties.load(in);
+        } catch (IOException e) {
+            System.err.println("Could not read saved links from " + storeFile + ": " + e.getMessage());
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (String videoId : properties.stringPropertyNames()) {
+            String value = properties.getProperty(videoId);
+            int separator = value.indexOf(' ');
+            if (separator <= 0) {
+                continue;
+            }
+            try {
+                CachedLink cached = new CachedLink(value.substring(separator + 1), Long.parseLong(value.substring(0, separator)));
+                if (!cached.isExpired(now)) {
+                    links.put(videoId, cached);
+                }
+            } catch (NumberFormatException ignored) {
+                // a damaged line only costs one extra lookup
+            }
+        }
+    }
+
+    /**
+     * Writes the fresh links to a temporary file and renames it over the
+     * store, so a crash never leaves a half-written file behind.
+     */
+    private synchronized void save() {
+        if (storeFile == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        links.values().removeIf(cached -> cached.isExpired(now));
+        Properties properties = new Properties();
+        links.forEach((videoId, cached) -> properties.setProperty(videoId, cached.expiresAtMillis() + " " + cached.link()));
+        try {
+            Files.createDirectories(storeFile.getParent());
+            Path temp = storeFile.resolveSibling(storeFile.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                properties.store(out, "video id = expiry millis and link");
+            }
+            Files.move(temp, storeFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Could not save links to " + storeFile + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package se233.audioconverter.Downloader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Downloads a file over several HTTP Range requests at once, writing each
+ * range straight to its offset in a {@code .part} file. The per-range
+ * progress is saved alongside, so a download interrupted by a crash or a
+ * network error continues instead of starting over. Servers that do not
+ * support ranges get a single plain GET.
+ */
+public class ResumableDownloader {
+    public static final int DEFAULT_CONNECTIONS = 4;
+    private static final long MIN_CHUNK_BYTES = 1L << 20;
+    private static final long STATE_SAVE_INTERVAL_BYTES = 1L << 20;
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final int ATTEMPTS_PER_CHUNK = 3;
+    private static final Pattern CONTENT_RANGE_TOTAL = Pattern.compile("bytes \\d+-\\d+/(\\d+)");
+
+    private final HttpClient client;
+    private final int connections;
+
+    public ResumableDownloader() {
+        this(HttpClient.newBuilder()
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofSeconds(15))
+                .build(), DEFAULT_CONNECTIONS);
+    }
+
+    public ResumableDownloader(HttpClient client, int connections) {
+        if (connections < 1) {
+            throw new IllegalArgumentException("Connections must be at least 1, was " + connections);
+        }
+        this.client = client;
+        this.connections = connections;
+    }
+
+    public void download(URI uri, Path target) throws IOException, InterruptedException {
+        Path partFile = target.resolveSibling(target.getFileName() + ".part");
+        Path stateFile = target.resolveSibling(target.getFileName() + ".part.state");
+
+        // a one-byte range request tells us the length and whether ranges work at all
+        HttpResponse<InputStream> probe = client.send(
+                HttpRequest.newBuilder(uri).header("Range", "bytes=0-0").GET().build(),
+                HttpResponse.BodyHandlers.ofInputStream());
+        long length = probe.statusCode() == 206 ? totalLength(probe.headers()) : -1;
+        if (probe.statusCode() != 206 || length <= 0) {
+            if (probe.statusCode() != 200) {
+                probe.body().close();
+                throw new IOException("HTTP " + probe.statusCode() + " for " + uri);
+            }
+            System.out.println("Server does not support ranges, downloading " + uri + " in one stream");
+            Files.deleteIfExists(stateFile);
+            writeWholeBody(probe.body(), partFile);
+            Files.move(partFile, target, StandardCopyOption.REPLACE_EXISTING);
+            return;
+        }
+        probe.body().close();
+
+        String validator = validatorOf(probe.headers());
+        DownloadState state = DownloadState.load(stateFile);
+        if (state == null || !state.matches(uri.toString(), length, validator) || !Files.exists(partFile)) {
+            int chunks = (int) Math.max(1, Math.min(connections, length / MIN_CHUNK_BYTES));
+            state = DownloadState.split(uri.toString(), length, validator, chunks);
+            Files.deleteIfExists(partFile);
+        } else {
+            System.out.println("Resuming download of " + target.getFileName());
+        }
+        state.save(stateFile);
+
+        try (FileChannel channel = FileChannel.open(partFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            downloadChunks(uri, state, stateFile, channel);
+            channel.force(true);
+        }
+        Files.move(partFile, target, StandardCopyOption.REPLACE_EXISTING);
+        Files.deleteIfExists(stateFile);
+    }
+
+    private void downloadChunks(URI uri, DownloadState state, Path stateFile, FileChannel channel)
+            throws IOException, InterruptedException {
+        ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < state.chunkCount(); i++) {
+                int chunk = i;
+                if (state.remaining(chunk) > 0) {
+                    results.add(workers.submit(() -> {
+                        downloadChunkWithRetries(uri, state, stateFile, chunk, channel);
+                        return null;
+                    }));
+                }
+            }
+            for (Future<?> result : results) {
+                try {
+                    result.get();
+                } catch (ExecutionException e) {
+                    for (Future<?> other : results) {
+                        other.cancel(true);
+                    }
+                    state.save(stateFile, channel);
+                    if (e.getCause() instanceof IOException io) {
+                        throw io;
+                    }
+                    throw new IOException("Download failed", e.getCause());
+                }
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private void downloadChunkWithRetries(URI uri, DownloadState state, Path stateFile, int chunk, FileChannel channel)
+            throws IOException, InterruptedException {
+        IOException lastError = null;
+        for (int attempt = 1; attempt <= ATTEMPTS_PER_CHUNK && state.remaining(chunk) > 0; attempt++) {
+            try {
+                downloadChunk(uri, state, stateFile, chunk, channel);
+                return;
+            } catch (IOException e) {
+                lastError = e;
+                System.err.println("Range " + chunk + " of " + uri + " failed (attempt " + attempt + "): " + e.getMessage());
+                Thread.sleep(500L * attempt);
+            }
+        }
+        if (state.remaining(chunk) > 0) {
+            throw lastError != null ? lastError : new IOException("Range " + chunk + " incomplete");
+        }
+    }
+
+    private void downloadChunk(URI uri, DownloadState state, Path stateFile, int chunk, FileChannel channel)
+            throws IOException, InterruptedException {
+        long from = state.starts[chunk] + state.written[chunk];
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri)
+                .header("Range", "bytes=" + from + "-" + state.ends[chunk])
+                .GET();
+        if (!state.validator.isEmpty()) {
+            request.header("If-Range", state.validator);
+        }
+        HttpResponse<InputStream> response = client.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+        try (InputStream body = response.body()) {
+            if (response.statusCode() != 206) {
+                throw new IOException("Expected HTTP 206 for range " + chunk + " but got " + response.statusCode());
+            }
+            byte[] bytes = new byte[BUFFER_BYTES];
+            long position = from;
+            long sinceSave = 0;
+            long remaining = state.remaining(chunk);
+            int read;
+            while (remaining > 0 && (read = body.read(bytes, 0, (int) Math.min(bytes.length, remaining))) != -1) {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, read);
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+                state.addWritten(chunk, read);
+                remaining -= read;
+                sinceSave += read;
+                if (sinceSave >= STATE_SAVE_INTERVAL_BYTES) {
+                    state.save(stateFile, channel);
+                    sinceSave = 0;
+                }
+            }
+        }
+        if (state.remaining(chunk) > 0) {
+            throw new IOException("Connection closed early, " + state.remaining(chunk) + " bytes left in range " + chunk);
+        }
+    }
+
+    private static void writeWholeBody(InputStream body, Path partFile) throws IOException {
+        try (InputStream in = body;
+             FileChannel channel = FileChannel.open(partFile, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            byte[] bytes = new byte[BUFFER_BYTES];
+            int read;
+            while ((read = in.read(bytes)) != -1) {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, read);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            channel.force(true);
+        }
+    }
+
+    private static long totalLength(HttpHeaders headers) {
+        Matcher matcher = CONTENT_RANGE_TOTAL.matcher(headers.firstValue("Content-Range").orElse(""));
+        return matcher.matches() ? Long.parseLong(matcher.group(1)) : -1;
+    }
+
+    /**
+     * An ETag or Last-Modified value; resuming with a different one would
+     * stitch two versions of the file together.
+     */
+    private static String validatorOf(HttpHeaders headers) {
+        return headers.firstValue("ETag")
+                .filter(etag -> !etag.startsWith("W/"))
+                .or(() -> headers.firstValue("Last-Modified"))
+                .orElse("");
+    }
+}
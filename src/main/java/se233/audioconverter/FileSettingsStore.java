@@ -0,0 +1,240 @@
+package se233.audioconverter;
+
+import se233.audioconverter.Converter.AudioMetadata;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * The per-file settings of the file list, kept in parallel arrays so that
+ * tens of thousands of files cost a few bytes each instead of a handful of
+ * property objects. Format, bitrate, sample rate and channels are stored as
+ * indexes into the option lists of the UI (-1 for none), and extra formats
+ * as a bit set over the format indexes. Files are found through an
+ * open-addressing hash index, so adding and removing take constant time.
+ *
+ * <p>All methods are synchronized: bulk adds run on a background thread
+ * while the cells read and edit the settings on the FX thread.
+ */
+final class FileSettingsStore {
+
+    /** The settings of one file at the time it was read. */
+    record Entry(int format, int bitrate, int sampleRate, int channels, int extraFormats,
+                 AudioMetadata metadata, String probeError) {
+    }
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int size;
+    private File[] files = new File[INITIAL_CAPACITY];
+    private byte[] formats = new byte[INITIAL_CAPACITY];
+    private byte[] bitrates = new byte[INITIAL_CAPACITY];
+    private byte[] sampleRates = new byte[INITIAL_CAPACITY];
+    private byte[] channels = new byte[INITIAL_CAPACITY];
+    private int[] extraFormats = new int[INITIAL_CAPACITY];
+    // filled in by the background probe; both stay null while it runs
+    private AudioMetadata[] metadata = new AudioMetadata[INITIAL_CAPACITY];
+    private String[] probeErrors = new String[INITIAL_CAPACITY];
+    // row + 1 of the file hashing to each slot, 0 for an empty slot; never more than half full
+    private int[] index = new int[INITIAL_CAPACITY * 2];
+
+    /**
+     * Adds {@code file} with the given settings. A file that is already
+     * present keeps its place and has its settings and probe result reset.
+     *
+     * @return true if the file was not present before
+     */
+    synchronized boolean put(File file, int format, int bitrate, int sampleRate, int channelIndex) {
+        int slot = slotOf(file);
+        int row = index[slot] - 1;
+        boolean added = row < 0;
+        if (added) {
+            if (size == files.length) {
+                grow();
+                slot = slotOf(file);
+            }
+            row = size++;
+            files[row] = file;
+            index[slot] = row + 1;
+        }
+        formats[row] = (byte) format;
+        bitrates[row] = (byte) bitrate;
+        sampleRates[row] = (byte) sampleRate;
+        channels[row] = (byte) channelIndex;
+        extraFormats[row] = 0;
+        metadata[row] = null;
+        probeErrors[row] = null;
+        return added;
+    }
+
+    /**
+     * @return the settings of {@code file}, or null if it is not in the list
+     */
+    synchronized Entry get(File file) {
+        int row = rowOf(file);
+        if (row < 0) {
+            return null;
+        }
+        return new Entry(formats[row], bitrates[row], sampleRates[row], channels[row], extraFormats[row],
+                metadata[row], probeErrors[row]);
+    }
+
+    synchronized boolean contains(File file) {
+        return rowOf(file) >= 0;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    synchronized void setFormat(File file, int format) {
+        int row = rowOf(file);
+        if (row >= 0) {
+            formats[row] = (byte) format;
+        }
+    }
+
+    synchronized void setBitrate(File file, int bitrate) {
+        int row = rowOf(file);
+        if (row >= 0) {
+            bitrates[row] = (byte) bitrate;
+        }
+    }
+
+    synchronized void setSampleRate(File file, int sampleRate) {
+        int row = rowOf(file);
+        if (row >= 0) {
+            sampleRates[row] = (byte) sampleRate;
+        }
+    }
+
+    synchronized void setChannels(File file, int channelIndex) {
+        int row = rowOf(file);
+        if (row >= 0) {
+            channels[row] = (byte) channelIndex;
+        }
+    }
+
+    synchronized void setExtraFormat(File file, int format, boolean selected) {
+        int row = rowOf(file);
+        if (row >= 0) {
+            extraFormats[row] = selected ? extraFormats[row] | 1 << format : extraFormats[row] & ~(1 << format);
+        }
+    }
+
+    /**
+     * Stores the outcome of probing {@code file}. Ignored if the file has
+     * been removed in the meantime.
+     */
+    synchronized void setProbeResult(File file, AudioMetadata result, String error) {
+        int row = rowOf(file);
+        if (row >= 0) {
+            metadata[row] = result;
+            probeErrors[row] = error;
+        }
+    }
+
+    /**
+     * Removes {@code file} by moving the last row into its place.
+     */
+    synchronized boolean remove(File file) {
+        int slot = slotOf(file);
+        int row = index[slot] - 1;
+        if (row < 0) {
+            return false;
+        }
+        deleteSlot(slot);
+        int last = --size;
+        if (row != last) {
+            files[row] = files[last];
+            formats[row] = formats[last];
+            bitrates[row] = bitrates[last];
+            sampleRates[row] = sampleRates[last];
+            channels[row] = channels[last];
+            extraFormats[row] = extraFormats[last];
+            metadata[row] = metadata[last];
+            probeErrors[row] = probeErrors[last];
+            index[slotOf(files[row])] = row + 1;
+        }
+        files[last] = null;
+        metadata[last] = null;
+        probeErrors[last] = null;
+        return true;
+    }
+
+    synchronized void clear() {
+        Arrays.fill(files, 0, size, null);
+        Arrays.fill(metadata, 0, size, null);
+        Arrays.fill(probeErrors, 0, size, null);
+        Arrays.fill(index, 0);
+        size = 0;
+    }
+
+    private int rowOf(File file) {
+        return index[slotOf(file)] - 1;
+    }
+
+    /**
+     * The slot holding {@code file}, or the empty slot where it belongs.
+     */
+    private int slotOf(File file) {
+        int mask = index.length - 1;
+        int slot = homeSlot(file, mask);
+        while (index[slot] != 0 && !files[index[slot] - 1].equals(file)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int homeSlot(File file, int mask) {
+        int hash = file.hashCode() * 0x9E3779B9;
+        return (hash ^ hash >>> 16) & mask;
+    }
+
+    /**
+     * Empties {@code slot} and shifts later entries of the same probe run
+     * back, so that lookups never stop early at the hole.
+     */
+    private void deleteSlot(int slot) {
+        int mask = index.length - 1;
+        int hole = slot;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            if (index[next] == 0) {
+                break;
+            }
+            int home = homeSlot(files[index[next] - 1], mask);
+            // the entry may fill the hole unless its home lies cyclically after the hole
+            boolean homeAfterHole = hole <= next ? hole < home && home <= next : hole < home || home <= next;
+            if (!homeAfterHole) {
+                index[hole] = index[next];
+                hole = next;
+            }
+        }
+        index[hole] = 0;
+    }
+
+    private void grow() {
+        int capacity = files.length + (files.length >> 1);
+        files = Arrays.copyOf(files, capacity);
+        formats = Arrays.copyOf(formats, capacity);
+        bitrates = Arrays.copyOf(bitrates, capacity);
+        sampleRates = Arrays.copyOf(sampleRates, capacity);
+        channels = Arrays.copyOf(channels, capacity);
+        extraFormats = Arrays.copyOf(extraFormats, capacity);
+        metadata = Arrays.copyOf(metadata, capacity);
+        probeErrors = Arrays.copyOf(probeErrors, capacity);
+        if (capacity * 2 > index.length) {
+            index = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+            int mask = index.length - 1;
+            for (int row = 0; row < size; row++) {
+                int slot = homeSlot(files[row], mask);
+                while (index[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                index[slot] = row + 1;
+            }
+        }
+    }
+}
@@ -4,19 +4,32 @@ import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
+import se233.audioconverter.Converter.FfmpegStartup;
 
 import java.io.IOException;
 
 public class HelloApplication extends Application {
+    private ConverterController controller;
+
     @Override
     public void start(Stage stage) throws IOException {
+        // find and warm up ffmpeg while the window is built and files are picked
+        FfmpegStartup.warmUp();
         FXMLLoader fxmlLoader = new FXMLLoader(HelloApplication.class.getResource("converter-view.fxml"));
         Scene scene = new Scene(fxmlLoader.load(), 900, 500);
+        controller = fxmlLoader.getController();
         stage.setTitle("Audio Converter");
         stage.setScene(scene);
         stage.show();
     }
 
+    @Override
+    public void stop() {
+        if (controller != null) {
+            controller.shutdown();
+        }
+    }
+
     public static void main(String[] args) {
         launch();
     }
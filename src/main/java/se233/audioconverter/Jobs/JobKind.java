@@ -0,0 +1,8 @@
+package se233.audioconverter.Jobs;
+
+public enum JobKind {
+    /** Work that mostly waits: network transfers, probes, coordinating other jobs. */
+    IO,
+    /** Work that keeps a core busy, such as an ffmpeg encode. */
+    CPU
+}
@@ -0,0 +1,153 @@
+package se233.audioconverter.Jobs;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the application's background work. CPU jobs share a pool with one
+ * platform thread per core; I/O jobs run on virtual threads, bounded so that
+ * a large import cannot start hundreds of processes or connections at once.
+ * Each lane takes its queued jobs in priority order.
+ */
+public class JobScheduler {
+    public static final int PRIORITY_HIGH = 0;
+    public static final int PRIORITY_NORMAL = 5;
+    public static final int PRIORITY_LOW = 10;
+    public static final int DEFAULT_IO_LIMIT = 16;
+
+    private final ThreadPoolExecutor cpuLane;
+    private final ThreadPoolExecutor ioLane;
+    private final Set<ScheduledJob<?>> activeJobs = ConcurrentHashMap.newKeySet();
+    private final AtomicLong sequence = new AtomicLong();
+
+    public JobScheduler() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_IO_LIMIT);
+    }
+
+    public JobScheduler(int cpuThreads, int ioLimit) {
+        if (cpuThreads < 1 || ioLimit < 1) {
+            throw new IllegalArgumentException("Lane sizes must be at least 1, were " + cpuThreads + " and " + ioLimit);
+        }
+        this.cpuLane = lane(cpuThreads, platformThreads("cpu-job-"));
+        this.ioLane = lane(ioLimit, Thread.ofVirtual().name("io-job-", 1).factory());
+    }
+
+    /**
+     * Queues {@code work}. Failures are logged and also delivered through
+     * the job's result.
+     */
+    public <T> ScheduledJob<T> submit(String name, JobKind kind, int priority, Callable<T> work) {
+        ScheduledJob<T> job = new ScheduledJob<>(name, kind, priority, sequence.incrementAndGet(), work);
+        activeJobs.add(job);
+        job.getResult().whenComplete((value, error) -> {
+            activeJobs.remove(job);
+            if (job.getState() == JobState.FAILED) {
+                System.err.println("Job \"" + name + "\" failed:");
+                error.printStackTrace();
+            }
+        });
+        try {
+            (kind == JobKind.CPU ? cpuLane : ioLane).execute(job);
+        } catch (RejectedExecutionException shutDown) {
+            job.cancel();
+        }
+        return job;
+    }
+
+    public ScheduledJob<Void> submit(String name, JobKind kind, int priority, Runnable work) {
+        return submit(name, kind, priority, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * An {@link Executor} view of one lane, for components that take an
+     * executor rather than knowing about jobs. Work that is a {@link Future},
+     * such as a {@link java.util.concurrent.FutureTask}, is cancelled when
+     * its job is dropped before it runs, so the caller learns it never will.
+     */
+    public Executor executor(String name, JobKind kind, int priority) {
+        return work -> {
+            ScheduledJob<Void> job = submit(name, kind, priority, work);
+            if (work instanceof Future<?> future) {
+                // a no-op once the work has run
+                job.getResult().whenComplete((value, error) -> future.cancel(false));
+            }
+        };
+    }
+
+    /**
+     * @return the jobs that are queued or running, highest priority first
+     */
+    public List<ScheduledJob<?>> getActiveJobs() {
+        List<ScheduledJob<?>> jobs = new ArrayList<>(activeJobs);
+        jobs.sort(null);
+        return jobs;
+    }
+
+    /**
+     * CPU lane threads not running a job at the moment.
+     */
+    public int getIdleCpuThreads() {
+        return cpuLane.getMaximumPoolSize() - cpuLane.getActiveCount();
+    }
+
+    /**
+     * Cancels queued jobs, gives running ones {@code grace} to finish and then
+     * interrupts them.
+     *
+     * @return true if every job had stopped when this returned
+     */
+    public boolean shutdown(Duration grace) {
+        for (ScheduledJob<?> job : activeJobs) {
+            if (job.getState() == JobState.QUEUED) {
+                job.cancel();
+            }
+        }
+        cpuLane.shutdown();
+        ioLane.shutdown();
+        long deadline = System.nanoTime() + grace.toNanos();
+        try {
+            boolean stopped = cpuLane.awaitTermination(grace.toNanos(), TimeUnit.NANOSECONDS)
+                    && ioLane.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            if (!stopped) {
+                cpuLane.shutdownNow();
+                ioLane.shutdownNow();
+            }
+            return stopped;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cpuLane.shutdownNow();
+            ioLane.shutdownNow();
+            return false;
+        }
+    }
+
+    private static ThreadPoolExecutor lane(int threads, ThreadFactory threadFactory) {
+        // a fixed-size pool never rejects, so the unbounded priority queue orders every waiting job
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS, new PriorityBlockingQueue<>(), threadFactory);
+    }
+
+    private static ThreadFactory platformThreads(String namePrefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,9 @@
+package se233.audioconverter.Jobs;
+
+public enum JobState {
+    QUEUED,
+    RUNNING,
+    DONE,
+    FAILED,
+    CANCELLED
+}
@@ -0,0 +1,108 @@
+package se233.audioconverter.Jobs;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A unit of work handed to the {@link JobScheduler}. Lower priority values
+ * run first; jobs of equal priority run in submission order.
+ */
+public final class ScheduledJob<T> implements Runnable, Comparable<ScheduledJob<?>> {
+    private final String name;
+    private final JobKind kind;
+    private final int priority;
+    private final long sequence;
+    private final Callable<T> work;
+    private final CompletableFuture<T> result = new CompletableFuture<>();
+    private final AtomicReference<JobState> state = new AtomicReference<>(JobState.QUEUED);
+    // guards runner, so cancel never interrupts a pool thread that has moved on to another job
+    private final Object runnerLock = new Object();
+    private Thread runner;
+
+    ScheduledJob(String name, JobKind kind, int priority, long sequence, Callable<T> work) {
+        this.name = name;
+        this.kind = kind;
+        this.priority = priority;
+        this.sequence = sequence;
+        this.work = work;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public JobKind getKind() {
+        return kind;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public JobState getState() {
+        return state.get();
+    }
+
+    /**
+     * Completes with the work's return value, exceptionally with what it
+     * threw, or is cancelled along with the job.
+     */
+    public CompletableFuture<T> getResult() {
+        return result;
+    }
+
+    /**
+     * Drops the job if it has not started and interrupts it if it has.
+     */
+    public void cancel() {
+        synchronized (runnerLock) {
+            if (state.compareAndSet(JobState.QUEUED, JobState.CANCELLED)) {
+                result.cancel(false);
+                return;
+            }
+            if (runner != null) {
+                runner.interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        synchronized (runnerLock) {
+            if (!state.compareAndSet(JobState.QUEUED, JobState.RUNNING)) {
+                return;
+            }
+            runner = Thread.currentThread();
+        }
+        try {
+            T value = work.call();
+            state.set(JobState.DONE);
+            result.complete(value);
+        } catch (InterruptedException | CancellationException e) {
+            state.set(JobState.CANCELLED);
+            result.cancel(false);
+        } catch (Throwable e) {
+            state.set(JobState.FAILED);
+            result.completeExceptionally(e);
+        } finally {
+            synchronized (runnerLock) {
+                runner = null;
+            }
+            // an interrupt from cancel can only have arrived before the line above
+            Thread.interrupted();
+        }
+    }
+
+    @Override
+    public int compareTo(ScheduledJob<?> other) {
+        int byPriority = Integer.compare(priority, other.priority);
+        return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + kind + ", " + state.get() + ")";
+    }
+}
@@ -3,13 +3,23 @@ package se233.audioconverter;
 import javafx.animation.KeyFrame;
 import javafx.animation.Timeline;
 import javafx.fxml.FXML;
+import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.ProgressBar;
 import javafx.scene.image.ImageView;
 import javafx.stage.Stage;
 import javafx.util.Duration;
 
+import java.util.concurrent.atomic.AtomicReference;
+
 public class LoadingController {
+    private static final double UI_FRAMES_PER_SECOND = 30;
+
+    // Written by worker threads, applied to the controls once per UI frame so
+    // bursts of progress events from parallel encodes collapse into one update.
+    private final AtomicReference<Double> pendingProgress = new AtomicReference<>();
+    private final AtomicReference<String> pendingStatus = new AtomicReference<>();
+    private Timeline uiRefresh;
 
     @FXML
     private Label statusLabel;
@@ -18,20 +28,75 @@ public class LoadingController {
     private ProgressBar progressBar;
     @FXML
     private Label titleLabel;
+    @FXML
+    private Button cancelButton;
+    private Runnable cancelAction;
 
     public void setTitle(String title) {
         titleLabel.setText(title);
     }
 
     public void updateProgress(double progress) {
+        pendingProgress.set(null);
         progressBar.setProgress(progress);
     }
 
     public void updateStatus(String message) {
+        pendingStatus.set(null);
         statusLabel.setText(message);
     }
 
+    /**
+     * Shows the cancel button; {@code action} runs once when it is pressed.
+     */
+    public void setOnCancel(Runnable action) {
+        cancelAction = action;
+        cancelButton.setVisible(action != null);
+        cancelButton.setManaged(action != null);
+    }
+
+    public void disableCancel() {
+        cancelButton.setDisable(true);
+    }
+
+    @FXML
+    private void handleCancelAction() {
+        cancelButton.setDisable(true);
+        cancelButton.setText("Cancelling...");
+        if (cancelAction != null) {
+            cancelAction.run();
+        }
+    }
+
+    /**
+     * Thread-safe variant of {@link #updateProgress(double)}. Only the latest
+     * value posted before the next UI frame is shown.
+     */
+    public void postProgress(double progress) {
+        pendingProgress.set(progress);
+    }
+
+    /**
+     * Thread-safe variant of {@link #updateStatus(String)}. Only the latest
+     * message posted before the next UI frame is shown.
+     */
+    public void postStatus(String message) {
+        pendingStatus.set(message);
+    }
+
+    private void applyPendingUpdates() {
+        Double progress = pendingProgress.getAndSet(null);
+        if (progress != null) {
+            progressBar.setProgress(progress);
+        }
+        String status = pendingStatus.getAndSet(null);
+        if (status != null) {
+            statusLabel.setText(status);
+        }
+    }
+
     public void closeWindow() {
+        uiRefresh.stop();
         Stage stage = (Stage) progressBar.getScene().getWindow();
         stage.close();
     }
@@ -43,6 +108,10 @@ public class LoadingController {
     private Timeline shakeAnimation;
 
     public void initialize() {
+        uiRefresh = new Timeline(new KeyFrame(Duration.seconds(1 / UI_FRAMES_PER_SECOND), e -> applyPendingUpdates()));
+        uiRefresh.setCycleCount(Timeline.INDEFINITE);
+        uiRefresh.play();
+
         spinAnimation = new Timeline(
                 new KeyFrame(Duration.millis(50), e -> {
                     leftFace.setRotate(leftFace.getRotate() + 1);
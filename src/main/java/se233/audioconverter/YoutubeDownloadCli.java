@@ -0,0 +1,224 @@
+package se233.audioconverter;
+
+import se233.audioconverter.Downloader.DownloadItem;
+import se233.audioconverter.Downloader.DownloadQueue;
+import se233.audioconverter.Downloader.DownloadStatus;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headless entry point for downloading many YouTube videos as MP3.
+ *
+ * <pre>
+ * java -cp ... se233.audioconverter.YoutubeDownloadCli -o music -i playlist.txt https://youtu.be/dQw4w9WgXcQ
+ * </pre>
+ */
+public class YoutubeDownloadCli {
+    private Path outputDirectory = Paths.get("");
+    private int parallelism = DownloadQueue.DEFAULT_PARALLELISM;
+    private double requestsPerSecond = YoutubeToMp3RapidApiUtil.DEFAULT_API_REQUESTS_PER_SECOND;
+    private int maxAttempts = DownloadQueue.DEFAULT_MAX_ATTEMPTS;
+    private final List<String> inputs = new ArrayList<>();
+    private final List<String> inputFiles = new ArrayList<>();
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    static int run(String[] args) {
+        YoutubeDownloadCli cli = new YoutubeDownloadCli();
+        try {
+            if (!cli.parseArguments(args)) {
+                printUsage();
+                return AudioConverterCli.EXIT_OK;
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            printUsage();
+            return AudioConverterCli.EXIT_USAGE;
+        }
+        return cli.downloadAll();
+    }
+
+    /**
+     * @return false when only the help text was requested
+     */
+    private boolean parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "-h":
+                case "--help":
+                    return false;
+                case "-o":
+                case "--output-dir":
+                    outputDirectory = Paths.get(requireValue(args, ++i, arg));
+                    break;
+                case "-i":
+                case "--input-file":
+                    inputFiles.add(requireValue(args, ++i, arg));
+                    break;
+                case "-j":
+                case "--jobs":
+                    parallelism = (int) parsePositive(requireValue(args, ++i, arg), arg);
+                    break;
+                case "--rate":
+                    requestsPerSecond = parsePositive(requireValue(args, ++i, arg), arg);
+                    break;
+                case "--attempts":
+                    maxAttempts = (int) parsePositive(requireValue(args, ++i, arg), arg);
+                    break;
+                default:
+                    if (arg.startsWith("-") && arg.length() > 1) {
+                        throw new IllegalArgumentException("Unknown option " + arg);
+                    }
+                    inputs.add(arg);
+            }
+        }
+        if (inputs.isEmpty() && inputFiles.isEmpty()) {
+            throw new IllegalArgumentException("No URLs or input files given.");
+        }
+        return true;
+    }
+
+    private int downloadAll() {
+        List<String> lines = new ArrayList<>(inputs);
+        for (String inputFile : inputFiles) {
+            try {
+                lines.addAll(readLines(inputFile));
+            } catch (IOException e) {
+                System.err.println("Error: cannot read " + inputFile + ": " + e.getMessage());
+                return AudioConverterCli.EXIT_NO_INPUT;
+            }
+        }
+        Set<String> videoIds = new LinkedHashSet<>();
+        for (String line : lines) {
+            String videoId = YoutubeToMp3RapidApiUtil.videoIdOf(line);
+            if (videoId == null) {
+                System.err.println("Warning: no video ID in \"" + line + "\", skipping.");
+            } else {
+                videoIds.add(videoId);
+            }
+        }
+        if (videoIds.isEmpty()) {
+            System.err.println("Error: no video IDs found in the given inputs.");
+            return AudioConverterCli.EXIT_NO_INPUT;
+        }
+
+        List<DownloadItem> items = new ArrayList<>();
+        for (String videoId : videoIds) {
+            items.add(new DownloadItem(videoId, outputDirectory.resolve(videoId + ".mp3")));
+        }
+        DownloadQueue queue = YoutubeToMp3RapidApiUtil.newDownloadQueue(parallelism, requestsPerSecond);
+        queue.setMaxAttempts(maxAttempts);
+
+        CountDownLatch finished = new CountDownLatch(1);
+        // on Ctrl-C, stop the workers; their partial files resume on the next run
+        Thread interruptHook = new Thread(() -> {
+            queue.cancelAll();
+            try {
+                finished.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+        }, "cli-cancel");
+        Runtime.getRuntime().addShutdownHook(interruptHook);
+
+        int total = items.size();
+        try {
+            queue.run(items, item -> {
+                switch (item.getStatus()) {
+                    case DONE -> System.out.println("OK      " + item.getVideoId() + " -> " + item.getTarget());
+                    case WAITING_TO_RETRY -> System.err.println("RETRY   " + item.getVideoId() + " after attempt "
+                            + item.getAttempts() + ": " + item.getError().getMessage());
+                    case FAILED, CANCELLED -> System.err.println(item.getStatus() + "  " + item.getVideoId()
+                            + (item.getError() != null ? ": " + item.getError().getMessage() : ""));
+                    default -> {
+                    }
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return AudioConverterCli.EXIT_FAILED;
+        } finally {
+            finished.countDown();
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(interruptHook);
+        } catch (IllegalStateException alreadyShuttingDown) {
+            // the hook is running, nothing to remove
+        }
+
+        long failed = items.stream().filter(item -> item.getStatus() != DownloadStatus.DONE).count();
+        System.out.println("Downloaded " + (total - failed) + " of " + total + " video(s).");
+        return failed == 0 ? AudioConverterCli.EXIT_OK : AudioConverterCli.EXIT_FAILED;
+    }
+
+    /**
+     * Reads one URL or video ID per line, ignoring blank lines and lines
+     * starting with '#'. A file name of "-" reads standard input.
+     */
+    static List<String> readLines(String inputFile) throws IOException {
+        BufferedReader reader = inputFile.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(inputFile), StandardCharsets.UTF_8);
+        List<String> lines = new ArrayList<>();
+        try (reader) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    lines.add(line);
+                }
+            }
+        }
+        return lines;
+    }
+
+    private static String requireValue(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[index];
+    }
+
+    private static double parsePositive(String value, String option) {
+        try {
+            double parsed = Double.parseDouble(value.trim());
+            if (parsed <= 0) {
+                throw new IllegalArgumentException(option + " must be positive, was " + value);
+            }
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for " + option + ": " + value);
+        }
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: YoutubeDownloadCli [options] <url|video id>...");
+        System.out.println();
+        System.out.println("Options:");
+        System.out.println("  -o, --output-dir <dir>    where the MP3 files go (default: current directory)");
+        System.out.println("  -i, --input-file <file>   read URLs or IDs, one per line; - reads standard input");
+        System.out.println("  -j, --jobs <n>            parallel downloads (default " + DownloadQueue.DEFAULT_PARALLELISM + ")");
+        System.out.println("  --rate <n>                API lookups per second (default "
+                + YoutubeToMp3RapidApiUtil.DEFAULT_API_REQUESTS_PER_SECOND + ")");
+        System.out.println("  --attempts <n>            tries per video before giving up (default "
+                + DownloadQueue.DEFAULT_MAX_ATTEMPTS + ")");
+        System.out.println("  -h, --help                show this help");
+        System.out.println();
+        System.out.println("Exit status: 0 all downloaded, 1 some downloads failed, 2 bad arguments, 3 no input.");
+    }
+}
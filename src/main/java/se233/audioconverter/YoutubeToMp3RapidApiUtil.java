@@ -1,11 +1,33 @@
 package se233.audioconverter;
 
+import se233.audioconverter.Converter.AudioConverter;
+import se233.audioconverter.Converter.TargetProfile;
+import se233.audioconverter.Downloader.DownloadQueue;
+import se233.audioconverter.Downloader.LinkResolver;
+import se233.audioconverter.Downloader.ResumableDownloader;
+import se233.audioconverter.Downloader.TokenBucket;
+
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import java.io.*;
-import java.net.URL;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.regex.Pattern;
 
 public class YoutubeToMp3RapidApiUtil {
+    public static final double DEFAULT_API_REQUESTS_PER_SECOND = 1.0;
+    private static final Pattern BARE_VIDEO_ID = Pattern.compile("[A-Za-z0-9_-]{11}");
+    private static final HttpClient HTTP_CLIENT = HttpClient.newBuilder()
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(Duration.ofSeconds(15))
+            .build();
+    private static final LinkResolver LINK_RESOLVER = new LinkResolver(HTTP_CLIENT,
+            URI.create("https://youtube-mp36.p.rapidapi.com/dl"), "44145a5eadmsh2d73a0120be904dp1a471cjsn43769ce8f00b",
+            LinkResolver.defaultStoreFile(), LinkResolver.DEFAULT_TTL);
 
     public static void main(String[] args) {
         String userUrl = "https://www.youtube.com/watch?v=dQw4w9WgXcQ";
@@ -86,24 +108,32 @@ public class YoutubeToMp3RapidApiUtil {
         return null;
     }
 
+    /**
+     * Like {@link #extractVideoId} but also accepts a bare 11 character ID,
+     * as found in playlist exports.
+     */
+    public static String videoIdOf(String urlOrId) {
+        String trimmed = urlOrId.trim();
+        if (BARE_VIDEO_ID.matcher(trimmed).matches()) {
+            return trimmed;
+        }
+        String videoId = extractVideoId(trimmed);
+        return videoId == null || videoId.isEmpty() ? null : videoId;
+    }
+
+    /**
+     * A queue for many downloads that shares this class's HTTP client and
+     * link cache, with API lookups limited to {@code requestsPerSecond}.
+     */
+    public static DownloadQueue newDownloadQueue(int parallelism, double requestsPerSecond) {
+        TokenBucket apiLimiter = new TokenBucket(requestsPerSecond, Math.max(1, (int) requestsPerSecond));
+        return new DownloadQueue(LINK_RESOLVER, new ResumableDownloader(HTTP_CLIENT, ResumableDownloader.DEFAULT_CONNECTIONS),
+                apiLimiter, parallelism);
+    }
+
     public static String fetchMp3LinkFromApi(String videoId) {
         try {
-            String apiUrl = "https://youtube-mp36.p.rapidapi.com/dl?id=" + videoId;
-            java.net.HttpURLConnection conn = (java.net.HttpURLConnection) new URL(apiUrl).openConnection();
-            conn.setRequestMethod("GET");
-            conn.setRequestProperty("x-rapidapi-key", "44145a5eadmsh2d73a0120be904dp1a471cjsn43769ce8f00b");
-            conn.setRequestProperty("x-rapidapi-host", "youtube-mp36.p.rapidapi.com");
-
-            StringBuilder json = new StringBuilder();
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) json.append(line);
-            }
-            String result = json.toString();
-
-            if (result.contains("\"link\":\"")) {
-                return result.split("\"link\":\"")[1].split("\"")[0].replace("\\/", "/");
-            }
+            return LINK_RESOLVER.resolve(videoId);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -111,15 +141,34 @@ public class YoutubeToMp3RapidApiUtil {
     }
 
     public static boolean downloadMp3(String mp3Url, String saveAs) {
-        try (InputStream in = new URL(mp3Url).openStream();
-             FileOutputStream fos = new FileOutputStream(saveAs)) {
-            byte[] buffer = new byte[8192];
-            int length;
-            while ((length = in.read(buffer)) != -1) fos.write(buffer, 0, length);
+        try {
+            new ResumableDownloader(HTTP_CLIENT, ResumableDownloader.DEFAULT_CONNECTIONS).download(URI.create(mp3Url), Paths.get(saveAs));
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Transcodes the MP3 while it downloads: the response body is piped
+     * straight into ffmpeg, so only the converted file ever touches the disk.
+     */
+    public static boolean downloadAndConvert(String mp3Url, String saveAs, TargetProfile target) {
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(mp3Url)).GET().build();
+            HttpResponse<InputStream> response = HTTP_CLIENT.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            try (InputStream body = response.body()) {
+                if (response.statusCode() != 200) {
+                    System.err.println("Download failed with HTTP " + response.statusCode());
+                    return false;
+                }
+                new AudioConverter().convertStream(body, mp3Url, new File(saveAs), target, null);
+            }
             return true;
         } catch (Exception e) {
             e.printStackTrace();
             return false;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,143 @@
+package se233.audioconverter.Converter;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SegmentedEncoderTest {
+    private static final long MINUTE = 60 * 1000;
+
+    @Test
+    void shortInputsAreNotSplit() {
+        assertEquals(1, SegmentedEncoder.segmentCount(0, 8));
+        assertEquals(1, SegmentedEncoder.segmentCount(SegmentedEncoder.MIN_SEGMENT_MILLIS - 1, 8));
+        assertEquals(1, SegmentedEncoder.segmentCount(3 * MINUTE, 8));
+    }
+
+    @Test
+    void segmentsAreAtLeastTheMinimumLong() {
+        assertEquals(2, SegmentedEncoder.segmentCount(4 * MINUTE, 8));
+        assertEquals(5, SegmentedEncoder.segmentCount(11 * MINUTE, 8));
+    }
+
+    @Test
+    void segmentCountIsCappedByFreeSlots() {
+        assertEquals(4, SegmentedEncoder.segmentCount(180 * MINUTE, 4));
+        assertEquals(1, SegmentedEncoder.segmentCount(180 * MINUTE, 1));
+        assertEquals(1, SegmentedEncoder.segmentCount(180 * MINUTE, 0));
+        assertEquals(1, SegmentedEncoder.segmentCount(180 * MINUTE, -3));
+    }
+
+    @Test
+    void mp3FrameLengths() throws IOException {
+        // 128 kbps at 44.1 kHz, without and with the padding byte
+        assertEquals(417, SegmentedEncoder.MP3_FRAMES.frameLength(mp3Header(9, 0, false)));
+        assertEquals(418, SegmentedEncoder.MP3_FRAMES.frameLength(mp3Header(9, 0, true)));
+        // 320 kbps at 48 kHz
+        assertEquals(960, SegmentedEncoder.MP3_FRAMES.frameLength(mp3Header(14, 1, false)));
+        // 32 kbps at 32 kHz
+        assertEquals(144, SegmentedEncoder.MP3_FRAMES.frameLength(mp3Header(1, 2, false)));
+    }
+
+    @Test
+    void mp3HeadersThatAreNotFramesAreRejected() {
+        byte[] badSync = mp3Header(9, 0, false);
+        badSync[0] = 0x7F;
+        byte[] layerTwo = mp3Header(9, 0, false);
+        layerTwo[1] = (byte) 0xFD;
+        assertThrows(IOException.class, () -> SegmentedEncoder.MP3_FRAMES.frameLength(badSync));
+        assertThrows(IOException.class, () -> SegmentedEncoder.MP3_FRAMES.frameLength(layerTwo));
+        // free format, the invalid bitrate index and the reserved sample rate
+        assertThrows(IOException.class, () -> SegmentedEncoder.MP3_FRAMES.frameLength(mp3Header(0, 0, false)));
+        assertThrows(IOException.class, () -> SegmentedEncoder.MP3_FRAMES.frameLength(mp3Header(15, 0, false)));
+        assertThrows(IOException.class, () -> SegmentedEncoder.MP3_FRAMES.frameLength(mp3Header(9, 3, false)));
+    }
+
+    @Test
+    void adtsFrameLengths() throws IOException {
+        assertEquals(7, SegmentedEncoder.ADTS_FRAMES.frameLength(adtsHeader(7)));
+        assertEquals(371, SegmentedEncoder.ADTS_FRAMES.frameLength(adtsHeader(371)));
+        assertEquals(8191, SegmentedEncoder.ADTS_FRAMES.frameLength(adtsHeader(8191)));
+
+        byte[] badSync = adtsHeader(371);
+        badSync[1] = (byte) 0xE1;
+        assertThrows(IOException.class, () -> SegmentedEncoder.ADTS_FRAMES.frameLength(badSync));
+    }
+
+    @Test
+    void copyFramesSkipsAndKeepsWholeFrames() throws IOException {
+        byte[][] frames = {adtsFrame(20, 1), adtsFrame(31, 2), adtsFrame(9, 3), adtsFrame(17, 4), adtsFrame(26, 5)};
+        byte[] stream = concat(frames);
+
+        assertArrayEquals(stream, copy(stream, 0, Long.MAX_VALUE));
+        assertArrayEquals(concat(frames[1], frames[2]), copy(stream, 1, 2));
+        assertArrayEquals(concat(frames[3], frames[4]), copy(stream, 3, 10));
+        assertArrayEquals(new byte[0], copy(stream, 5, 1));
+        assertArrayEquals(new byte[0], copy(stream, 0, 0));
+    }
+
+    @Test
+    void copyFramesStopsAtATruncatedHeader() throws IOException {
+        byte[] stream = concat(adtsFrame(20, 1), adtsFrame(31, 2));
+        byte[] cut = Arrays.copyOf(stream, 20 + 4);
+        assertArrayEquals(Arrays.copyOf(stream, 20), copy(cut, 0, Long.MAX_VALUE));
+    }
+
+    @Test
+    void copyFramesRejectsAFrameShorterThanItsHeader() {
+        byte[] stream = concat(adtsFrame(20, 1), adtsHeader(3));
+        assertThrows(IOException.class, () -> copy(stream, 0, Long.MAX_VALUE));
+    }
+
+    @Test
+    void losslessSegmentsKeepTheSourceWidth() {
+        assertEquals("pcm_s16le", SegmentedEncoder.losslessSegmentCodec(source("pcm_s16le", "s16")));
+        assertEquals("pcm_s16le", SegmentedEncoder.losslessSegmentCodec(source("pcm_u8", "")));
+        assertEquals("pcm_s16le", SegmentedEncoder.losslessSegmentCodec(source("flac", "s16")));
+        assertEquals("pcm_s32le", SegmentedEncoder.losslessSegmentCodec(source("pcm_s24le", "s32")));
+        assertEquals("pcm_s32le", SegmentedEncoder.losslessSegmentCodec(source("pcm_f32le", "")));
+        assertEquals("pcm_s32le", SegmentedEncoder.losslessSegmentCodec(source("mp3", "fltp")));
+    }
+
+    private static byte[] copy(byte[] stream, long skip, long keep) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SegmentedEncoder.copyFrames(new ByteArrayInputStream(stream), out, SegmentedEncoder.ADTS_FRAMES, skip, keep,
+                new CancelSignal());
+        return out.toByteArray();
+    }
+
+    private static byte[] mp3Header(int bitrateIndex, int rateIndex, boolean padding) {
+        return new byte[]{(byte) 0xFF, (byte) 0xFB, (byte) (bitrateIndex << 4 | rateIndex << 2 | (padding ? 2 : 0)),
+                (byte) 0xC4};
+    }
+
+    private static byte[] adtsHeader(int length) {
+        return new byte[]{(byte) 0xFF, (byte) 0xF1, 0x50, (byte) (0x80 | length >> 11 & 0x3),
+                (byte) (length >> 3), (byte) ((length & 0x7) << 5 | 0x1F), (byte) 0xFC};
+    }
+
+    private static byte[] adtsFrame(int length, int fill) {
+        byte[] frame = Arrays.copyOf(adtsHeader(length), length);
+        Arrays.fill(frame, 7, length, (byte) fill);
+        return frame;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.writeBytes(part);
+        }
+        return out.toByteArray();
+    }
+
+    private static AudioMetadata source(String codec, String sampleFormat) {
+        return new AudioMetadata(60_000, codec, 44100, 2, 0, sampleFormat);
+    }
+}
@@ -0,0 +1,213 @@
+package se233.audioconverter.Downloader;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs {@link ResumableDownloader} against a local {@link HttpServer} that
+ * serves one generated file and records the Range header of every request.
+ */
+class ResumableDownloaderTest {
+    private static final int CONNECTIONS = 4;
+    // big enough for four ranges of at least the downloader's 1 MiB minimum, with an uneven tail
+    private static final byte[] CONTENT = new byte[(4 << 20) + 123];
+    private static final String ETAG = "\"v1\"";
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+    static {
+        new Random(42).nextBytes(CONTENT);
+    }
+
+    @TempDir
+    Path directory;
+
+    private HttpServer server;
+    private URI uri;
+    private final List<String> ranges = new CopyOnWriteArrayList<>();
+    private volatile boolean ignoreRanges;
+    private volatile int status = 200;
+    private volatile long failRangesFrom = -1;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/file.bin", this::serve);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.start();
+        uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/file.bin");
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void downloadsInParallelRanges() throws Exception {
+        Path target = directory.resolve("file.bin");
+        downloader().download(uri, target);
+
+        assertArrayEquals(CONTENT, Files.readAllBytes(target));
+        // the one-byte probe, then one request per range
+        assertEquals(1 + CONNECTIONS, ranges.size());
+        assertEquals("bytes=0-0", ranges.get(0));
+        assertNoLeftovers(target);
+    }
+
+    @Test
+    void resumesFromPartialFile() throws Exception {
+        Path target = directory.resolve("file.bin");
+        DownloadState state = DownloadState.split(uri.toString(), CONTENT.length, ETAG, CONNECTIONS);
+        long rangeLength = state.ends[0] + 1;
+        // the first range finished, the second stopped after 1000 bytes
+        byte[] partial = new byte[CONTENT.length];
+        System.arraycopy(CONTENT, 0, partial, 0, (int) rangeLength + 1000);
+        Files.write(partFile(target), partial);
+        state.addWritten(0, rangeLength);
+        state.addWritten(1, 1000);
+        state.save(stateFile(target));
+
+        downloader().download(uri, target);
+
+        assertArrayEquals(CONTENT, Files.readAllBytes(target));
+        assertFalse(ranges.stream().anyMatch(range -> range.startsWith("bytes=0-") && !range.equals("bytes=0-0")),
+                "the finished range was fetched again: " + ranges);
+        assertTrue(ranges.contains("bytes=" + (rangeLength + 1000) + "-" + state.ends[1]),
+                "the stopped range did not continue where it stopped: " + ranges);
+        assertNoLeftovers(target);
+    }
+
+    @Test
+    void restartsWhenTheFileChangedOnTheServer() throws Exception {
+        Path target = directory.resolve("file.bin");
+        DownloadState state = DownloadState.split(uri.toString(), CONTENT.length, "\"v0\"", CONNECTIONS);
+        Files.write(partFile(target), new byte[CONTENT.length]);
+        state.addWritten(0, state.ends[0] + 1);
+        state.save(stateFile(target));
+
+        downloader().download(uri, target);
+
+        assertArrayEquals(CONTENT, Files.readAllBytes(target));
+        assertEquals(1 + CONNECTIONS, ranges.size());
+        assertNoLeftovers(target);
+    }
+
+    @Test
+    void fallsBackToOneStreamWhenRangesAreIgnored() throws Exception {
+        ignoreRanges = true;
+        Path target = directory.resolve("file.bin");
+        downloader().download(uri, target);
+
+        assertArrayEquals(CONTENT, Files.readAllBytes(target));
+        assertEquals(1, ranges.size());
+        assertNoLeftovers(target);
+    }
+
+    @Test
+    void failedRangeKeepsProgressForTheNextAttempt() throws Exception {
+        Path target = directory.resolve("file.bin");
+        DownloadState expected = DownloadState.split(uri.toString(), CONTENT.length, ETAG, CONNECTIONS);
+        failRangesFrom = expected.starts[2];
+
+        assertThrows(IOException.class, () -> downloader().download(uri, target));
+        assertFalse(Files.exists(target));
+        assertTrue(Files.exists(partFile(target)));
+        DownloadState saved = DownloadState.load(stateFile(target));
+        assertEquals(0, saved.remaining(0));
+        assertEquals(0, saved.remaining(1));
+        assertTrue(saved.remaining(2) > 0);
+
+        failRangesFrom = -1;
+        ranges.clear();
+        downloader().download(uri, target);
+
+        assertArrayEquals(CONTENT, Files.readAllBytes(target));
+        assertFalse(ranges.stream().anyMatch(range -> range.startsWith("bytes=" + expected.starts[1] + "-")),
+                "a finished range was fetched again: " + ranges);
+        assertNoLeftovers(target);
+    }
+
+    @Test
+    void httpErrorLeavesNothingBehind() {
+        status = 404;
+        Path target = directory.resolve("file.bin");
+
+        assertThrows(IOException.class, () -> downloader().download(uri, target));
+        assertFalse(Files.exists(target));
+        assertNoLeftovers(target);
+    }
+
+    private ResumableDownloader downloader() {
+        return new ResumableDownloader(HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build(),
+                CONNECTIONS);
+    }
+
+    private static Path partFile(Path target) {
+        return target.resolveSibling(target.getFileName() + ".part");
+    }
+
+    private static Path stateFile(Path target) {
+        return target.resolveSibling(target.getFileName() + ".part.state");
+    }
+
+    private static void assertNoLeftovers(Path target) {
+        assertFalse(Files.exists(partFile(target)), "partial file left behind");
+        assertFalse(Files.exists(stateFile(target)), "download state left behind");
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            ranges.add(String.valueOf(range));
+            if (status != 200) {
+                exchange.sendResponseHeaders(status, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("ETag", ETAG);
+            Matcher matcher = range == null ? null : RANGE.matcher(range);
+            if (ignoreRanges || matcher == null || !matcher.matches()) {
+                send(exchange, 200, 0, CONTENT.length);
+                return;
+            }
+            int from = Integer.parseInt(matcher.group(1));
+            int to = Math.min(Integer.parseInt(matcher.group(2)), CONTENT.length - 1);
+            if (failRangesFrom >= 0 && from >= failRangesFrom && from > 0) {
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + from + "-" + to + "/" + CONTENT.length);
+            send(exchange, 206, from, to - from + 1);
+        }
+    }
+
+    private static void send(HttpExchange exchange, int code, int offset, int length) throws IOException {
+        exchange.sendResponseHeaders(code, length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(CONTENT, offset, length);
+        }
+    }
+}
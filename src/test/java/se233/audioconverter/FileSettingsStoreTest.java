@@ -0,0 +1,145 @@
+package se233.audioconverter;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks {@link FileSettingsStore}'s open-addressing index against a plain
+ * map, with files whose hash codes all collide so that every entry lands in
+ * one long probe run.
+ */
+class FileSettingsStoreTest {
+
+    @Test
+    void putGetAndUpdate() {
+        FileSettingsStore store = new FileSettingsStore();
+        File file = new File("/music/a.wav");
+
+        assertTrue(store.put(file, 1, 2, 3, 1));
+        store.setExtraFormat(file, 4, true);
+        FileSettingsStore.Entry entry = store.get(file);
+        assertEquals(1, entry.format());
+        assertEquals(2, entry.bitrate());
+        assertEquals(3, entry.sampleRate());
+        assertEquals(1, entry.channels());
+        assertEquals(1 << 4, entry.extraFormats());
+
+        // putting it again keeps one row and resets the settings
+        assertFalse(store.put(file, 0, 0, 0, 0));
+        assertEquals(1, store.size());
+        assertEquals(0, store.get(file).extraFormats());
+        assertNull(store.get(new File("/music/b.wav")));
+    }
+
+    @Test
+    void collidingFilesSurviveGrowthAndRemoval() {
+        List<File> files = collidingFiles(300);
+        assertEquals(files.get(0).hashCode(), files.get(files.size() - 1).hashCode());
+        checkAgainstModel(files, new Random(1));
+    }
+
+    @Test
+    void spreadFilesSurviveGrowthAndRemoval() {
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            files.add(new File("/music/track-" + i + ".flac"));
+        }
+        checkAgainstModel(files, new Random(2));
+    }
+
+    @Test
+    void clearEmptiesTheIndex() {
+        FileSettingsStore store = new FileSettingsStore();
+        List<File> files = collidingFiles(100);
+        for (File file : files) {
+            store.put(file, 1, 1, 1, 1);
+        }
+        store.clear();
+        assertEquals(0, store.size());
+        for (File file : files) {
+            assertFalse(store.contains(file));
+        }
+        assertTrue(store.put(files.get(7), 2, 2, 2, 0));
+        assertEquals(2, store.get(files.get(7)).format());
+    }
+
+    /**
+     * Adds every file, removes them in random order with re-adds mixed in,
+     * and compares every lookup with a map after each step.
+     */
+    private static void checkAgainstModel(List<File> files, Random random) {
+        FileSettingsStore store = new FileSettingsStore();
+        Map<File, Integer> model = new HashMap<>();
+        for (int i = 0; i < files.size(); i++) {
+            assertTrue(store.put(files.get(i), i % 7, i % 5, i % 3, i % 2));
+            model.put(files.get(i), i);
+        }
+        assertMatches(store, model, files);
+
+        List<File> order = new ArrayList<>(files);
+        Collections.shuffle(order, random);
+        for (int step = 0; step < order.size(); step++) {
+            File file = order.get(step);
+            assertTrue(store.remove(file));
+            assertFalse(store.remove(file));
+            model.remove(file);
+            if (step % 10 == 0) {
+                // a re-added file reuses the index slots freed by the removals
+                File back = order.get(random.nextInt(step + 1));
+                int i = files.indexOf(back);
+                assertEquals(!model.containsKey(back), store.put(back, i % 7, i % 5, i % 3, i % 2));
+                model.put(back, i);
+            }
+            if (step % 25 == 0) {
+                assertMatches(store, model, files);
+            }
+        }
+        assertMatches(store, model, files);
+    }
+
+    private static void assertMatches(FileSettingsStore store, Map<File, Integer> model, List<File> files) {
+        assertEquals(model.size(), store.size());
+        for (File file : files) {
+            Integer i = model.get(file);
+            FileSettingsStore.Entry entry = store.get(file);
+            if (i == null) {
+                assertNull(entry, file + " should be gone");
+            } else {
+                assertNotNull(entry, file + " went missing");
+                assertEquals(i % 7, entry.format());
+                assertEquals(i % 5, entry.bitrate());
+                assertEquals(i % 3, entry.sampleRate());
+                assertEquals(i % 2, entry.channels());
+            }
+        }
+    }
+
+    /**
+     * "Aa" and "BB" have the same String hash code, so every path built from
+     * them collides with every other of the same length.
+     */
+    private static List<File> collidingFiles(int count) {
+        List<File> files = new ArrayList<>();
+        for (int bits = 0; files.size() < count; bits++) {
+            StringBuilder name = new StringBuilder("/music/");
+            for (int b = 0; b < 10; b++) {
+                name.append((bits >> b & 1) == 0 ? "Aa" : "BB");
+            }
+            files.add(new File(name.append(".wav").toString()));
+        }
+        return files;
+    }
+}
@@ -0,0 +1,171 @@
+package se233.audioconverter.Converter.Dsp;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The kernels on the platform's preferred vector size. Interleaved stereo is
+ * split and merged with lane shuffles, and sample format conversions
+ * use short and int species with as many lanes as the float one. Only
+ * loaded through {@link Kernels#SELECTED}.
+ */
+final class VectorKernels extends ScalarKernels {
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS = VectorSpecies.of(int.class, FLOATS.vectorShape());
+    private static final VectorSpecies<Short> SHORTS =
+            VectorSpecies.of(short.class, VectorShape.forBitSize(FLOATS.vectorBitSize() / 2));
+    private static final int LANES = FLOATS.length();
+    // stereo is shuffled within single vectors and the halves merged with a blend,
+    // which compiles to plain permutes where two-vector rearranges do not
+    private static final VectorShuffle<Float> EVEN = VectorShuffle.fromOp(FLOATS, i -> 2 * i % LANES);
+    private static final VectorShuffle<Float> ODD = VectorShuffle.fromOp(FLOATS, i -> (2 * i + 1) % LANES);
+    private static final VectorShuffle<Float> REPEAT_LOW = VectorShuffle.fromOp(FLOATS, i -> i / 2);
+    private static final VectorShuffle<Float> REPEAT_HIGH = VectorShuffle.fromOp(FLOATS, i -> LANES / 2 + i / 2);
+    private static final VectorMask<Float> UPPER_HALF = VectorMask.fromLong(FLOATS, -1L << (LANES / 2));
+    private static final VectorMask<Float> ODD_LANES = VectorMask.fromLong(FLOATS, 0xAAAAAAAAAAAAAAAAL);
+
+    @Override
+    public float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        int bound = FLOATS.loopBound(length);
+        FloatVector sum = FloatVector.zero(FLOATS);
+        for (int i = 0; i < bound; i += LANES) {
+            sum = FloatVector.fromArray(FLOATS, a, aOffset + i).fma(FloatVector.fromArray(FLOATS, b, bOffset + i), sum);
+        }
+        return sum.reduceLanes(VectorOperators.ADD) + super.dot(a, aOffset + bound, b, bOffset + bound, length - bound);
+    }
+
+    @Override
+    public void stereoToMono(float[] stereo, int stereoOffset, float[] mono, int monoOffset, int frames) {
+        int bound = FLOATS.loopBound(frames);
+        for (int i = 0; i < bound; i += LANES) {
+            FloatVector first = FloatVector.fromArray(FLOATS, stereo, stereoOffset + 2 * i);
+            FloatVector second = FloatVector.fromArray(FLOATS, stereo, stereoOffset + 2 * i + LANES);
+            FloatVector left = first.rearrange(EVEN).blend(second.rearrange(EVEN), UPPER_HALF);
+            FloatVector right = first.rearrange(ODD).blend(second.rearrange(ODD), UPPER_HALF);
+            left.add(right).mul(0.5f).intoArray(mono, monoOffset + i);
+        }
+        super.stereoToMono(stereo, stereoOffset + 2 * bound, mono, monoOffset + bound, frames - bound);
+    }
+
+    @Override
+    public void monoToStereo(float[] mono, int monoOffset, float[] stereo, int stereoOffset, int frames) {
+        int bound = FLOATS.loopBound(frames);
+        for (int i = 0; i < bound; i += LANES) {
+            FloatVector samples = FloatVector.fromArray(FLOATS, mono, monoOffset + i);
+            samples.rearrange(REPEAT_LOW).intoArray(stereo, stereoOffset + 2 * i);
+            samples.rearrange(REPEAT_HIGH).intoArray(stereo, stereoOffset + 2 * i + LANES);
+        }
+        super.monoToStereo(mono, monoOffset + bound, stereo, stereoOffset + 2 * bound, frames - bound);
+    }
+
+    @Override
+    public void deinterleave(float[] stereo, int stereoOffset, float[] left, float[] right, int planarOffset, int frames) {
+        int bound = FLOATS.loopBound(frames);
+        for (int i = 0; i < bound; i += LANES) {
+            FloatVector first = FloatVector.fromArray(FLOATS, stereo, stereoOffset + 2 * i);
+            FloatVector second = FloatVector.fromArray(FLOATS, stereo, stereoOffset + 2 * i + LANES);
+            first.rearrange(EVEN).blend(second.rearrange(EVEN), UPPER_HALF).intoArray(left, planarOffset + i);
+            first.rearrange(ODD).blend(second.rearrange(ODD), UPPER_HALF).intoArray(right, planarOffset + i);
+        }
+        super.deinterleave(stereo, stereoOffset + 2 * bound, left, right, planarOffset + bound, frames - bound);
+    }
+
+    @Override
+    public void interleave(float[] left, float[] right, int planarOffset, float[] stereo, int stereoOffset, int frames) {
+        int bound = FLOATS.loopBound(frames);
+        for (int i = 0; i < bound; i += LANES) {
+            FloatVector l = FloatVector.fromArray(FLOATS, left, planarOffset + i);
+            FloatVector r = FloatVector.fromArray(FLOATS, right, planarOffset + i);
+            l.rearrange(REPEAT_LOW).blend(r.rearrange(REPEAT_LOW), ODD_LANES).intoArray(stereo, stereoOffset + 2 * i);
+            l.rearrange(REPEAT_HIGH).blend(r.rearrange(REPEAT_HIGH), ODD_LANES)
+                    .intoArray(stereo, stereoOffset + 2 * i + LANES);
+        }
+        super.interleave(left, right, planarOffset + bound, stereo, stereoOffset + 2 * bound, frames - bound);
+    }
+
+    @Override
+    public void toFloat(short[] in, int inOffset, float[] out, int outOffset, int count) {
+        int bound = FLOATS.loopBound(count);
+        for (int i = 0; i < bound; i += LANES) {
+            ((FloatVector) ShortVector.fromArray(SHORTS, in, inOffset + i).convertShape(VectorOperators.S2F, FLOATS, 0))
+                    .mul(1f / 32768).intoArray(out, outOffset + i);
+        }
+        super.toFloat(in, inOffset + bound, out, outOffset + bound, count - bound);
+    }
+
+    @Override
+    public void toFloat(int[] in, int inOffset, float[] out, int outOffset, int count, int bits) {
+        float scale = 1f / (1L << (bits - 1));
+        int bound = FLOATS.loopBound(count);
+        for (int i = 0; i < bound; i += LANES) {
+            ((FloatVector) IntVector.fromArray(INTS, in, inOffset + i).convert(VectorOperators.I2F, 0))
+                    .mul(scale).intoArray(out, outOffset + i);
+        }
+        super.toFloat(in, inOffset + bound, out, outOffset + bound, count - bound, bits);
+    }
+
+    @Override
+    public void quantize(float[] in, int inOffset, short[] out, int outOffset, int count, int[] ditherState) {
+        int bound = FLOATS.loopBound(count);
+        IntVector state = ditherState != null ? IntVector.fromArray(INTS, ditherState, 0) : null;
+        for (int i = 0; i < bound; i += LANES) {
+            FloatVector samples = FloatVector.fromArray(FLOATS, in, inOffset + i);
+            if (state != null) {
+                state = xorshift(state);
+            }
+            quantize(samples, 16, state).convertShape(VectorOperators.I2S, SHORTS, 0)
+                    .reinterpretAsShorts().intoArray(out, outOffset + i);
+        }
+        if (state != null) {
+            state.intoArray(ditherState, 0);
+        }
+        super.quantize(in, inOffset + bound, out, outOffset + bound, count - bound, ditherState);
+    }
+
+    @Override
+    public void quantize(float[] in, int inOffset, int[] out, int outOffset, int count, int bits, int[] ditherState) {
+        int bound = FLOATS.loopBound(count);
+        IntVector state = ditherState != null ? IntVector.fromArray(INTS, ditherState, 0) : null;
+        for (int i = 0; i < bound; i += LANES) {
+            FloatVector samples = FloatVector.fromArray(FLOATS, in, inOffset + i);
+            if (state != null) {
+                state = xorshift(state);
+            }
+            quantize(samples, bits, state).intoArray(out, outOffset + i);
+        }
+        if (state != null) {
+            state.intoArray(ditherState, 0);
+        }
+        super.quantize(in, inOffset + bound, out, outOffset + bound, count - bound, bits, ditherState);
+    }
+
+    /**
+     * Scales, dithers with the triangular noise of {@code random} if not
+     * null, clips and rounds to the nearest step.
+     */
+    private static IntVector quantize(FloatVector samples, int bits, IntVector random) {
+        float full = 1L << (bits - 1);
+        FloatVector value = samples.mul(full);
+        if (random != null) {
+            IntVector difference = random.and(0xFFFF).sub(random.lanewise(VectorOperators.LSHR, 16));
+            value = value.add(((FloatVector) difference.convert(VectorOperators.I2F, 0)).mul(1f / 65536));
+        }
+        value = value.max(-full).min(full - 1).add(0.5f);
+        IntVector truncated = (IntVector) value.convert(VectorOperators.F2I, 0);
+        // conversion truncates towards zero; step the negative fractions down to get floor
+        VectorMask<Float> above = ((FloatVector) truncated.convert(VectorOperators.I2F, 0)).compare(VectorOperators.GT, value);
+        return truncated.sub(1, above.cast(INTS));
+    }
+
+    private static IntVector xorshift(IntVector x) {
+        x = x.lanewise(VectorOperators.XOR, x.lanewise(VectorOperators.LSHL, 13));
+        x = x.lanewise(VectorOperators.XOR, x.lanewise(VectorOperators.LSHR, 17));
+        return x.lanewise(VectorOperators.XOR, x.lanewise(VectorOperators.LSHL, 5));
+    }
+}